@@ -1,12 +1,55 @@
 #!/bin/sh
+# Usage: ./create_executable.sh [DIR]   (creates DIR/infer, DIR defaults to .)
+DIR=$(readlink -f "${1:-.}") || exit 1
+INFER="$DIR/infer"
 mvn clean package || exit 1
-cat > infer <<EOF
+cat > "$INFER" <<'EOF'
 #!/bin/sh
 
-exec java -jar "\$0" "\$@"
+# Major version of the java in PATH. Reads the release file of its JDK, since running
+# java -version would cost as much as the startup time saved by the archive.
+java_major() {
+  BIN=$(readlink -f "$(command -v java)" 2>/dev/null)
+  V=
+  for R in "${BIN%/bin/java}/release" "${BIN%/jre/bin/java}/release"; do
+    [ -n "$BIN" ] && [ -f "$R" ] && V=$(sed -n 's/^JAVA_VERSION="\(.*\)"/\1/p' "$R") && break
+  done
+  [ -n "$V" ] || V=$(java -version 2>&1 | sed -n '1s/.*version "\([^"]*\)".*/\1/p')
+  case "$V" in 1.*) V=${V#1.} ;; esac
+  echo "${V%%[!0-9]*}"
+}
 
+SELF=$(readlink -f "$0" 2>/dev/null || echo "$0")
+# -Xlog and dynamic archives need JDK 13+, older JVMs refuse to start with -Xlog
+if [ -f "$SELF.jsa" ] && [ "$(java_major)" -ge 13 ] 2>/dev/null; then
+  exec java -XX:SharedArchiveFile="$SELF.jsa" -Xshare:auto -Xlog:cds=off \
+       -Xlog:cds+dynamic=off $JAVA_OPTS -jar "$SELF" "$@"
+fi
+exec java $JAVA_OPTS -jar "$SELF" "$@"
+
+EOF
+cat target/infer-*.jar >> "$INFER" || exit 1
+chmod +x "$INFER"
+"$INFER" --help > /dev/null 2>&1 \
+    || { echo "Failed to produce a runnable file!"; exit 1; }
+
+# Class-data sharing archive of the classes loaded by a small run (JDK 13+). The JVM
+# silently ignores it if infer is moved or modified or if another JDK runs it.
+rm -f "$INFER.jsa"
+CDS_DIR=$(mktemp -d) || exit 1
+cat > "$CDS_DIR/bg.ttl" <<EOF
+@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .
+@prefix owl: <http://www.w3.org/2002/07/owl#> .
+@prefix : <urn:infer:cds#> .
+:B rdfs:subClassOf :A .
+:p a owl:TransitiveProperty ; rdfs:domain :A .
+EOF
+cat > "$CDS_DIR/main.ttl" <<EOF
+@prefix : <urn:infer:cds#> .
+:x a :B ; :p :y .
+:y :p :z .
 EOF
-cat target/infer-*.jar >> infer || exit 1
-chmod +x infer
-./infer --help &> /dev/null \
-    || (echo "Failed to produce a runnable file!"; exit 1)
\ No newline at end of file
+java -XX:ArchiveClassesAtExit="$INFER.jsa" -jar "$INFER" --split -D \
+    -b "$CDS_DIR/bg.ttl" -i "$CDS_DIR/main.ttl" -o "$CDS_DIR/out.ttl" > /dev/null 2>&1
+rm -rf "$CDS_DIR"
+[ -f "$INFER.jsa" ] || echo "No class-data sharing archive, infer will start slower"
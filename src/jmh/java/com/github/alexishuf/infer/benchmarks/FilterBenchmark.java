@@ -0,0 +1,62 @@
+package com.github.alexishuf.infer.benchmarks;
+
+import com.github.alexishuf.infer.reasoners.BoundBackground;
+import com.github.alexishuf.infer.reasoners.JenaSplitReasoner;
+import com.github.alexishuf.infer.utils.GraphDifference;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removal of background and (without echo) main triples from a materialized split
+ * inference, as done by JenaSplitReasoner.apply(BoundBackground, ...).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+    @Param({"false", "true"})
+    public boolean echo;
+    @Param({"rdfs"})
+    public String profile;
+    @Param({"5000"})
+    public int individuals;
+    @Param({"4"})
+    public int depth;
+
+    private Graph inferred, closure, main;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticData data = new SyntheticData().withIndividuals(individuals).withDepth(depth);
+        Model abox = data.abox();
+        JenaSplitReasoner reasoner = new JenaSplitReasoner();
+        reasoner.setProfile(profile);
+        BoundBackground bound = reasoner.bindBackground(data.tbox());
+        /* echo the background closure too, so that filtering has work to do */
+        reasoner.setEchoEnabled(true);
+        Model out = ModelFactory.createDefaultModel().add(bound.getClosure());
+        reasoner.apply(bound, abox, out);
+        inferred = GraphFactory.createDefaultGraph();
+        GraphUtil.addInto(inferred, out.getGraph());
+        closure = bound.getClosure().getGraph();
+        main = abox.getGraph();
+    }
+
+    @Benchmark
+    public int filter() {
+        GraphDifference diff = new GraphDifference().minus(closure);
+        if (!echo) diff.minus(main);
+        Graph out = GraphFactory.createDefaultGraph();
+        diff.apply(inferred, out);
+        return out.size();
+    }
+}
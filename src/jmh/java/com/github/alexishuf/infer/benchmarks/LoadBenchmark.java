@@ -0,0 +1,56 @@
+package com.github.alexishuf.infer.benchmarks;
+
+import com.github.alexishuf.infer.utils.ModelLoader;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ModelLoader.files() on a synthetic TBox+ABox written in each syntax.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+    /** File extension of the syntax */
+    @Param({"ttl", "nt", "rdf", "jsonld"})
+    public String syntax;
+    @Param({"false", "true"})
+    public boolean compactStore;
+    @Param({"20000"})
+    public int individuals;
+    @Param({"4"})
+    public int depth;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticData data = new SyntheticData().withIndividuals(individuals).withDepth(depth);
+        Model model = data.tbox().add(data.abox());
+        file = Files.createTempFile("infer-bench", "." + syntax).toFile();
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            RDFDataMgr.write(os, model, RDFLanguages.filenameToLang(file.getName()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (file != null && !file.delete())
+            file.deleteOnExit();
+    }
+
+    @Benchmark
+    public long load() {
+        return new ModelLoader().withAutoImport(false).withCompactStore(compactStore)
+                .files(file).getMain().size();
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.alexishuf.infer.benchmarks;
+
+import com.github.alexishuf.infer.reasoners.BoundBackground;
+import com.github.alexishuf.infer.reasoners.ReasonerRegistry;
+import com.github.alexishuf.infer.reasoners.SplitReasoner;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SplitReasoner.apply() over a synthetic TBox (background) and ABox (main), either on the
+ * union of both (union) or against a background bound during setup (split).
+ *
+ * Other reasoners can be compared on the same workload with -p reasoner=rl -p profile=rdfs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ReasonBenchmark {
+    @Param({"jena"})
+    public String reasoner;
+    @Param({"owl-fb", "trans", "rdfs"})
+    public String profile;
+    @Param({"union", "split"})
+    public String mode;
+    @Param({"false"})
+    public boolean echo;
+    @Param({"1000"})
+    public int individuals;
+    @Param({"4"})
+    public int depth;
+
+    private SplitReasoner splitReasoner;
+    private Model tbox, abox, union;
+    private BoundBackground bound;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticData data = new SyntheticData().withIndividuals(individuals).withDepth(depth);
+        tbox = data.tbox();
+        abox = data.abox();
+        union = ModelFactory.createDefaultModel().add(tbox).add(abox);
+        splitReasoner = ReasonerRegistry.getReasoner(reasoner);
+        splitReasoner.setProfile(profile);
+        splitReasoner.setEchoEnabled(echo);
+        if (mode.equals("split"))
+            bound = splitReasoner.bindBackground(tbox);
+    }
+
+    @Benchmark
+    public long apply() {
+        if (bound == null)
+            return splitReasoner.apply(union).listStatements().toList().size();
+        Model out = ModelFactory.createDefaultModel();
+        splitReasoner.apply(bound, abox, out);
+        return out.size();
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.alexishuf.infer.benchmarks;
+
+import org.apache.jena.rdf.model.*;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a synthetic ontology (TBox) and instance data (ABox) of tunable size.
+ *
+ * The TBox is a class tree with the given depth and branching factor and chains of
+ * sub-properties with domains and ranges, plus one transitive, one symmetric and one
+ * inverse property. The ABox types each individual with a leaf class and links it to
+ * random individuals. Generation is deterministic for a given seed.
+ */
+public class SyntheticData {
+    public static final String NS = "http://example.org/synthetic#";
+
+    private int depth = 4;
+    private int branching = 3;
+    private int properties = 8;
+    private int individuals = 10000;
+    private int links = 3;
+    private long seed = 7;
+
+    /** Depth of the class tree (root is at depth 0). */
+    public @Nonnull SyntheticData withDepth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    /** Number of sub-classes of each non-leaf class. */
+    public @Nonnull SyntheticData withBranching(int branching) {
+        this.branching = branching;
+        return this;
+    }
+
+    /** Number of object properties, besides the transitive, symmetric and inverse ones. */
+    public @Nonnull SyntheticData withProperties(int properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    public @Nonnull SyntheticData withIndividuals(int individuals) {
+        this.individuals = individuals;
+        return this;
+    }
+
+    /** Number of object property assertions having each individual as subject. */
+    public @Nonnull SyntheticData withLinks(int links) {
+        this.links = links;
+        return this;
+    }
+
+    public @Nonnull SyntheticData withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public @Nonnull Model tbox() {
+        Model m = ModelFactory.createDefaultModel();
+        m.setNsPrefix("", NS);
+        m.setNsPrefix("owl", OWL.NS);
+        m.setNsPrefix("rdfs", RDFS.getURI());
+        Random random = new Random(seed);
+        List<Resource> classes = classes(m);
+        for (Resource c : classes) m.add(c, RDF.type, OWL.Class);
+        for (int i = 1; i < classes.size(); i++)
+            m.add(classes.get(i), RDFS.subClassOf, classes.get((i - 1) / branching));
+
+        List<Resource> properties = properties(m);
+        for (int i = 0; i < properties.size(); i++) {
+            Resource p = properties.get(i);
+            m.add(p, RDF.type, OWL.ObjectProperty);
+            if (i % 4 != 0) m.add(p, RDFS.subPropertyOf, properties.get(i - 1));
+            m.add(p, RDFS.domain, classes.get(random.nextInt(classes.size())));
+            m.add(p, RDFS.range, classes.get(random.nextInt(classes.size())));
+        }
+        m.add(property(m, "partOf"), RDF.type, OWL.TransitiveProperty);
+        m.add(property(m, "knows"), RDF.type, OWL.SymmetricProperty);
+        m.add(property(m, "hasPart"), OWL.inverseOf, property(m, "partOf"));
+        return m;
+    }
+
+    public @Nonnull Model abox() {
+        Model m = ModelFactory.createDefaultModel();
+        m.setNsPrefix("", NS);
+        Random random = new Random(seed + 1);
+        List<Resource> classes = classes(m), properties = properties(m);
+        properties.add(property(m, "partOf"));
+        properties.add(property(m, "knows"));
+        int leaves = (int) Math.pow(branching, depth), firstLeaf = classes.size() - leaves;
+        for (int i = 0; i < individuals; i++) {
+            Resource ind = individual(m, i);
+            m.add(ind, RDF.type, classes.get(firstLeaf + random.nextInt(leaves)));
+            m.add(ind, RDFS.label, "Individual " + i);
+            for (int j = 0; j < links; j++) {
+                Property p = m.createProperty(properties.get(random.nextInt(properties.size()))
+                                                        .getURI());
+                m.add(ind, p, individual(m, random.nextInt(individuals)));
+            }
+        }
+        return m;
+    }
+
+    private @Nonnull List<Resource> classes(@Nonnull Model m) {
+        int count = 0;
+        for (int level = 0, width = 1; level <= depth; level++, width *= branching)
+            count += width;
+        List<Resource> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) list.add(m.createResource(NS + "C" + i));
+        return list;
+    }
+
+    private @Nonnull List<Resource> properties(@Nonnull Model m) {
+        List<Resource> list = new ArrayList<>(properties);
+        for (int i = 0; i < properties; i++) list.add(property(m, "p" + i));
+        return list;
+    }
+
+    private static @Nonnull Property property(@Nonnull Model m, @Nonnull String name) {
+        return m.createProperty(NS + name);
+    }
+
+    private static @Nonnull Resource individual(@Nonnull Model m, int i) {
+        return m.createResource(NS + "i" + i);
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.alexishuf.infer.benchmarks;
+
+import com.github.alexishuf.infer.reasoners.JenaSplitReasoner;
+import com.github.alexishuf.infer.utils.StreamingWriter;
+import com.google.common.io.ByteStreams;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing the split output of a synthetic workload in each output format, taking the same
+ * paths as Main.write() with and without --stream-output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+    /** Name of a field in RDFFormat */
+    @Param({"TURTLE_PRETTY", "NTRIPLES", "RDFXML_PLAIN", "JSONLD", "RDF_THRIFT"})
+    public String format;
+    @Param({"false", "true"})
+    public boolean stream;
+    @Param({"5000"})
+    public int individuals;
+    @Param({"4"})
+    public int depth;
+
+    private RDFFormat fmt;
+    private Model model;
+
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException {
+        fmt = (RDFFormat) RDFFormat.class.getField(format).get(null);
+        SyntheticData data = new SyntheticData().withIndividuals(individuals).withDepth(depth);
+        JenaSplitReasoner reasoner = new JenaSplitReasoner();
+        reasoner.setProfile("rdfs");
+        reasoner.setEchoEnabled(true);
+        model = ModelFactory.createDefaultModel();
+        reasoner.apply(reasoner.bindBackground(data.tbox()), data.abox(), model);
+    }
+
+    @Benchmark
+    public void write() {
+        OutputStream os = ByteStreams.nullOutputStream();
+        if (stream && StreamingWriter.streamingFormat(fmt) != null)
+            StreamingWriter.write(os, model.getGraph(), model, fmt);
+        else
+            RDFDataMgr.write(os, model, fmt);
+    }
+}
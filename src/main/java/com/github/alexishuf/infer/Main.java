@@ -1,12 +1,36 @@
 package com.github.alexishuf.infer;
 
+import com.github.alexishuf.infer.reasoners.BoundBackground;
+import com.github.alexishuf.infer.reasoners.ClosureCache;
 import com.github.alexishuf.infer.reasoners.SplitReasoner;
 import com.github.alexishuf.infer.reasoners.ReasonerRegistry;
+import com.github.alexishuf.infer.reasoners.SameAsRewritingReasoner;
+import com.github.alexishuf.infer.server.ReasoningClient;
+import com.github.alexishuf.infer.server.ReasoningServer;
+import com.github.alexishuf.infer.store.TDBGraph;
+import com.github.alexishuf.infer.store.TDBStore;
+import com.github.alexishuf.infer.utils.ImportCache;
 import com.github.alexishuf.infer.utils.ModelLoader;
+import com.github.alexishuf.infer.utils.ParallelLineWriter;
+import com.github.alexishuf.infer.utils.RunStats;
+import com.github.alexishuf.infer.utils.StreamingWriter;
+import com.github.alexishuf.infer.utils.Utils;
 import com.google.common.base.Stopwatch;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.reasoner.InfGraph;
 import org.apache.jena.riot.*;
+import org.apache.jena.riot.resultset.ResultSetLang;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.shared.PrefixMapping;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
@@ -15,14 +39,15 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.*;
 import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import static com.github.alexishuf.infer.utils.Utils.union;
 import static org.apache.jena.riot.RDFWriterRegistry.defaultSerialization;
@@ -32,8 +57,9 @@ public class Main {
 
     @Option(name = "--reasoner", aliases = {"-r"}, usage = "Use the specified reasoner")
     private  String reasoner = "jena";
-    @Option(name = "--profile", aliases = {"-p"}, usage = "Set reasoner profile")
-    private String profile = "owl-fb";
+    @Option(name = "--profile", aliases = {"-p"}, usage = "Set reasoner profile. Default " +
+            "depends on the reasoner: owl-fb for jena and owl-rl for rl")
+    private String profile = null;
     @Option(name = "--split", aliases = {"-s"}, usage = "Splits inferences from background inputs " +
             "and inferences from the union of main and background files. The latter does not " +
             "include triples in the former.")
@@ -50,6 +76,59 @@ public class Main {
     @Option(name = "--exclude-uri-rx", aliases = {"-X"}, metaVar = "RX",
             usage = "Same as --exclude-uri, but uses a regular expression (Java syntax)")
     private String[] excludesURIRegexps = {};
+    @Option(name = "--fetch-threads", metaVar = "N",
+            usage = "Maximum number of owl:imports documents fetched and parsed concurrently")
+    private int fetchThreads = 4;
+    @Option(name = "--parse-threads", metaVar = "N",
+            usage = "Maximum number of input files (or chunks of large files) parsed " +
+                    "concurrently. 0 uses the number of processors")
+    private int parseThreads = 0;
+    @Option(name = "--parse-chunk-size", metaVar = "BYTES",
+            usage = "N-Triples and N-Quads files larger than this are split into chunks of " +
+                    "this size that are parsed in parallel")
+    private long parseChunkSize = ModelLoader.DEFAULT_CHUNK_SIZE;
+    @Option(name = "--partitions", metaVar = "N", depends = {"--split"},
+            usage = "Reason the main inputs as up to N independent partitions (connected " +
+                    "components) in parallel, sharing the bound background. Main inputs " +
+                    "with schema triples are reasoned as a whole. 0 uses the number of " +
+                    "processors")
+    private int partitions = 1;
+    @Option(name = "--prune-rules",
+            usage = "Only use the rules of the jena owl-fb (or OWL micro) profile that can " +
+                    "fire on the vocabulary (properties and classes) of the inputs")
+    private boolean pruneRules = false;
+    @Option(name = "--same-as-rewriting",
+            usage = "Reason over a single representative of each set of individuals related " +
+                    "by owl:sameAs, instead of copying all triples to all aliases. Outputs " +
+                    "are expanded back to all aliases, unless --no-same-as-expansion")
+    private boolean sameAsRewriting = false;
+    @Option(name = "--no-same-as-expansion", depends = {"--same-as-rewriting"},
+            usage = "With --same-as-rewriting, write the triples over the representatives " +
+                    "only. The owl:sameAs triples are still written")
+    private boolean noSameAsExpansion = false;
+    @Option(name = "--compact-store",
+            usage = "Keep input triples in a dictionary-encoded store, which uses less memory " +
+                    "than Jena's default in-memory graph")
+    private boolean compactStore = false;
+    @Option(name = "--tdb", metaVar = "DIR", forbids = {"--compact-store", "--batch", "--server",
+            "--client", "--query", "--previous"},
+            usage = "Load the inputs into a TDB2 store in DIR, which is created if missing, " +
+                    "write the inferences to it and stream the output from there. Later runs " +
+                    "with the same inputs and DIR do not parse them again")
+    private File tdbDir = null;
+    @Option(name = "--cache-dir", metaVar = "DIR",
+            usage = "Keep pre-parsed copies of dereferenced http(s) documents in this directory")
+    private File cacheDir = null;
+    @Option(name = "--closure-cache", metaVar = "DIR",
+            usage = "With --split, store the background closure in this directory and reuse " +
+                    "it in later runs with the same background, reasoner and profile")
+    private File closureCacheDir = null;
+    @Option(name = "--cache-ttl", metaVar = "SECONDS", depends = {"--cache-dir"},
+            usage = "Cached documents older than this are revalidated with the server")
+    private long cacheTTL = ImportCache.DEFAULT_TTL;
+    @Option(name = "--offline", depends = {"--cache-dir"},
+            usage = "Never use the network, only documents in --cache-dir are dereferenced")
+    private boolean offline = false;
 
 
     @Option(name = "--input-language", aliases = {"-l"}, metaVar = "LANG",
@@ -62,6 +141,25 @@ public class Main {
                     "org.apache.jena.riot.RDFFormat. Default is to use the default RDFFormat " +
                     "of the input language")
     private String outputFormat = null;
+    @Option(name = "--stream-output",
+            usage = "Write output while iterating the inferences, without grouping triples " +
+                    "in memory. Turtle and TriG are written in the \"blocks\" variant. " +
+                    "Unless --tdb, --previous or --same-as-rewriting are given, inferences " +
+                    "are written as the reasoner derives them")
+    private boolean streamOutput = false;
+    @Option(name = "--stream-threshold", metaVar = "TRIPLES",
+            usage = "Use --stream-output automatically for outputs with at least this " +
+                    "many triples. Negative values disable this")
+    private long streamThreshold = 1000000;
+    @Option(name = "--write-threads", metaVar = "N",
+            usage = "N-Triples and N-Quads outputs are formatted (and compressed) in chunks " +
+                    "by up to N threads. 0 uses the number of processors")
+    private int writeThreads = 0;
+    @Option(name = "--gzip-output", aliases = {"-z"},
+            usage = "Compress outputs with gzip, which is implied by output file names " +
+                    "ending in .gz. N-Triples and N-Quads are compressed in parallel, as " +
+                    "concatenated gzip members")
+    private boolean gzipOutput = false;
 
 
     @Option(name = "--input-bg", aliases = {"-b"}, metaVar = "FILE",
@@ -70,6 +168,13 @@ public class Main {
     @Option(name = "--input-bg-uri", aliases = {"-B"}, metaVar = "URI",
             usage = "Same as --input-bg, but takes a URI")
     private String[] inputBgURIs = {};
+    @Option(name = "--layer", metaVar = "FILES", depends = {"--split"},
+            forbids = {"--tdb", "--server", "--client", "--same-as-rewriting"},
+            usage = "Adds a layer of comma-separated files or URIs between the background " +
+                    "and main inputs. Repeat for more layers, from bottom to top. Each layer " +
+                    "is reasoned on top of the layers below it and its closure is kept in " +
+                    "--closure-cache, if given")
+    private String[] inputLayers = {};
     @Option(name = "--input", aliases = {"-i"}, metaVar = "FILE",
             usage = "Use the given file as background triples. Has effect on split reasoning.")
     private File[] inputMainFiles = {};
@@ -84,6 +189,76 @@ public class Main {
     @Option(name = "--output-bg", aliases = {"-O"}, depends = {"--split"}, metaVar = "FILE",
             usage = "Output file for the background triples")
     private File outputBg;
+    @Option(name = "--output-layer", depends = {"--layer"}, metaVar = "FILE",
+            usage = "Output file for the triples of the --layer at the same position that are " +
+                    "not entailed by the layers below it")
+    private File[] outputLayers = {};
+
+
+    @Option(name = "--query", aliases = {"-q"}, metaVar = "QUERY",
+            forbids = {"--previous", "--batch", "--server", "--client"},
+            usage = "Instead of writing all entailments, write the results of a SPARQL query " +
+                    "(or of a file with it) or of triple patterns (e.g., \"?x a :Person\") " +
+                    "over the background, main inputs and their entailments. The jena " +
+                    "reasoner only derives what the query needs. Results are streamed to " +
+                    "--output, as N-Triples or SELECT/ASK results as TSV, unless " +
+                    "--output-format says otherwise (json, xml, csv, tsv or text for results)")
+    private String query = null;
+
+
+    @Option(name = "--previous", metaVar = "FILE", depends = {"--split"},
+            usage = "Output (-o) of a previous run with the same background, reasoner, profile " +
+                    "and main inputs. Instead of reasoning from scratch, that output is " +
+                    "updated with the changes in --add and --remove")
+    private File[] previousFiles = {};
+    @Option(name = "--add", metaVar = "FILE", depends = {"--previous"},
+            usage = "Triples added to the main inputs since --previous")
+    private File[] addFiles = {};
+    @Option(name = "--remove", metaVar = "FILE", depends = {"--previous"},
+            usage = "Triples removed from the main inputs since --previous")
+    private File[] removeFiles = {};
+
+
+    @Option(name = "--batch", forbids = {"--server", "--client"},
+            usage = "Reason each main input (-i, -I, INPUT) as an independent job against the " +
+                    "background, as in --split. Results are written to --batch-output-dir. " +
+                    "owl:imports of main inputs are not followed")
+    private boolean batch = false;
+    @Option(name = "--batch-output-dir", metaVar = "DIR", depends = {"--batch"},
+            usage = "Directory for --batch results. Each input is written to a file with the " +
+                    "same name (and the --output-format extension, if given)")
+    private File batchOutputDir = null;
+    @Option(name = "--jobs", metaVar = "N", depends = {"--batch"},
+            usage = "Maximum number of --batch inputs processed concurrently. 0 uses the " +
+                    "number of processors")
+    private int jobs = 0;
+
+
+    @Option(name = "--server", metaVar = "PORT", forbids = {"--client"},
+            usage = "Load and bind the background (-b, -B) once and serve reasoning jobs " +
+                    "(as in --split) on http://localhost:PORT/reason. 0 chooses any free port")
+    private int serverPort = -1;
+    @Option(name = "--server-threads", metaVar = "N", depends = {"--server"},
+            usage = "Maximum number of jobs processed concurrently by --server. 0 uses the " +
+                    "number of processors")
+    private int serverThreads = 0;
+    @Option(name = "--client", metaVar = "URL",
+            usage = "Send the main inputs as a job to a --server at URL (e.g., " +
+                    "http://localhost:8080) and write its results to --output")
+    private String clientURL = null;
+
+
+    @Option(name = "--stats", metaVar = "FILE",
+            usage = "Write timings and triple counts of each phase (parse, fetch, bind, " +
+                    "inference, filter, write), peak heap and GC time as JSON to FILE")
+    private File statsFile = null;
+    @Option(name = "--stats-rules", depends = {"--stats"},
+            usage = "Also count rule firings for --stats. This makes jena reasoners log " +
+                    "derivations, which is slower and uses more memory")
+    private boolean statsRules = false;
+    @Option(name = "--progress", metaVar = "SECONDS",
+            usage = "Log running phases and heap usage every SECONDS. 0 disables")
+    private long progress = 0;
 
 
     @Option(name = "--help", aliases = {"-h"}, help = true,
@@ -106,8 +281,13 @@ public class Main {
             "that are considered under the main inputs (-i, -I).")
     private String[] inputs = {};
 
-    private static Map<String, RDFFormat> formatMap;
-    private static List<String> formatList;
+    private static final Pattern SPARQL_RX = Pattern.compile(
+            "^\\s*(?:#.*\\R\\s*)*(?:PREFIX|BASE|SELECT|CONSTRUCT|ASK|DESCRIBE)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private @Nonnull RunStats stats = RunStats.DISABLED;
+    private @Nullable SameAsRewritingReasoner sameAsReasoner = null;
+    private @Nullable TDBStore store = null;
 
     public static void main( String[] args ) throws Exception {
         Main main = new Main();
@@ -134,21 +314,250 @@ public class Main {
         assert reasoner != null;
 
         reasoner.setProfile(profile);
-        ModelLoader ldr = new ModelLoader().withHintLang(asLang(inputLanguage))
+        reasoner.setPruneRules(pruneRules);
+        reasoner.setPartitions(partitions == 0 ? Runtime.getRuntime().availableProcessors()
+                                               : partitions);
+        if (statsFile != null || progress > 0) {
+            stats = new RunStats().withRuleFirings(statsRules);
+            stats.startProgress(progress);
+            reasoner.setStats(stats);
+        }
+        try {
+            if (clientURL != null)
+                runClient();
+            else
+                run(reasoner);
+        } finally {
+            stats.close();
+            if (statsFile != null) stats.write(statsFile);
+        }
+    }
+
+    private void run(@Nonnull SplitReasoner reasoner) throws IOException {
+        ModelLoader ldr = new ModelLoader().withCompactStore(compactStore)
+                .withStats(stats)
+                .withHintLang(asLang(inputLanguage))
                 .withAutoImport(!noFollowImports)
+                .withFetchThreads(fetchThreads)
+                .withParseThreads(parseThreads)
+                .withChunkSize(parseChunkSize)
+                .withCache(cacheDir == null ? null
+                        : new ImportCache(cacheDir).withTTL(cacheTTL).withOffline(offline))
                 .withBlacklist(excludesURIs)
                 .withBlacklistRegExp(excludesURIRegexps);
-        ldr.toMain().files(inputMainFiles).uris(inputMainURIs).guess(inputs)
-                .toBackground().files(inputBgFiles).uris(inputBgURIs);
-        reason(reasoner, ldr);
+        store = tdbDir == null ? null : new TDBStore(tdbDir);
+        try {
+            String sources = store == null ? null : sources();
+            if (store != null && store.isLoaded(sources)) {
+                logger.info("Using the inputs already loaded into {}", tdbDir);
+                ldr.withStore(store);
+            } else {
+                if (store != null) {
+                    store.unload();
+                    ldr.withStore(store);
+                }
+                if (!batch)
+                    ldr.toMain().files(inputMainFiles).uris(inputMainURIs).guess(inputs);
+                ldr.toBackground().files(inputBgFiles).uris(inputBgURIs);
+                for (int i = 0; i < inputLayers.length; i++)
+                    ldr.toLayer(i).guess(inputLayers[i].split(","));
+                if (store != null) store.setLoaded(sources, ldr.getFirstLang());
+            }
+            if (serverPort >= 0)
+                serve(reasoner, ldr);
+            else if (query != null)
+                query(reasoner, ldr);
+            else if (batch)
+                batch(reasoner, ldr);
+            else
+                reason(reasoner, ldr);
+        } finally {
+            if (store != null) store.close();
+        }
+    }
+
+    /**
+     * Describes the inputs and loading options, including the size and modification time of
+     * input files, so that a --tdb store is only reused if nothing changed.
+     */
+    private @Nonnull String sources() {
+        StringBuilder b = new StringBuilder();
+        b.append("imports=").append(!noFollowImports).append(" lang=").append(inputLanguage)
+                .append(" exclude=").append(Arrays.toString(excludesURIs))
+                .append(Arrays.toString(excludesURIRegexps)).append('\n');
+        for (String source : mainSources())
+            b.append("main ").append(describe(source)).append('\n');
+        for (File file : inputBgFiles)
+            b.append("bg ").append(describe(file.getPath())).append('\n');
+        for (String uri : inputBgURIs)
+            b.append("bg ").append(uri).append('\n');
+        return b.toString();
+    }
+
+    private static @Nonnull String describe(@Nonnull String source) {
+        File file = new File(source);
+        if (!file.isFile()) return source;
+        return file.getAbsolutePath() + " " + file.length() + " " + file.lastModified();
+    }
+
+    private void batch(@Nonnull SplitReasoner reasoner,
+                       @Nonnull ModelLoader ldr) throws IOException {
+        if (batchOutputDir == null) {
+            logger.error("--batch requires --batch-output-dir");
+            return;
+        }
+        Map<String, File> outputs = new LinkedHashMap<>();
+        Set<File> files = new HashSet<>();
+        for (String source : mainSources()) {
+            File file = batchOutput(source);
+            if (!files.add(file)) {
+                logger.error("More than one input would be written to {}. Halt.", file);
+                return;
+            }
+            outputs.put(source, file);
+        }
+        Files.createDirectories(batchOutputDir.toPath());
+
+        Stopwatch sw = Stopwatch.createStarted();
+        BoundBackground background = bind(reasoner, ldr.getBackground());
+        logger.info("Bound background in {}", sw);
+        if (outputBg != null) {
+            Model bg = ModelFactory.createDefaultModel();
+            reasoner.writeBackground(background, bg);
+            write(bg, outputBg, ldr.getFirstLang());
+        }
+        BoundBackground bound = stack(reasoner, ldr, background);
+
+        sw.reset().start();
+        List<Long> results = Utils.parallelMap(jobs > 0 ? jobs
+                                                        : Runtime.getRuntime().availableProcessors(),
+                new ArrayList<>(outputs.keySet()), source -> {
+            try {
+                Model in = newLoader().guess(source).getMain(),
+                     out = ModelFactory.createDefaultModel();
+                reasoner.apply(bound, in, out);
+                write(out, outputs.get(source), RDFLanguages.filenameToLang(source));
+                return out.size();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to process {}.", source, e);
+                return -1L;
+            }
+        });
+        long failed = results.stream().filter(n -> n < 0).count();
+        logger.info("Processed {} inputs ({} failed) into {} triples in {}", results.size(),
+                    failed, results.stream().filter(n -> n > 0).mapToLong(n -> n).sum(), sw);
+    }
+
+    private @Nonnull File batchOutput(@Nonnull String source) {
+        String name = source.replaceAll("[?#].*$", "").replaceAll("/+$", "")
+                .replaceAll("^.*[/\\\\]", "");
+        if (name.isEmpty()) name = "output";
+        RDFFormat fmt = outputFormat == null ? null : requestedFormat();
+        if (fmt != null && !fmt.getLang().getFileExtensions().isEmpty())
+            name = name.replaceAll("\\.[^.]*$", "") + "." + fmt.getLang().getFileExtensions().get(0);
+        if (gzipOutput && !name.endsWith(".gz")) name += ".gz";
+        return new File(batchOutputDir, name);
+    }
+
+    private @Nonnull List<String> mainSources() {
+        List<String> sources = new ArrayList<>();
+        Arrays.stream(inputMainFiles).map(File::getPath).forEach(sources::add);
+        sources.addAll(Arrays.asList(inputMainURIs));
+        sources.addAll(Arrays.asList(inputs));
+        return sources;
+    }
+
+    private @Nonnull BoundBackground bind(@Nonnull SplitReasoner reasoner,
+                                          @Nonnull Model background) {
+        return closureCacheDir == null ? reasoner.bindBackground(background)
+                : new ClosureCache(closureCacheDir).withStats(stats).bind(reasoner, background);
+    }
+
+    /**
+     * Stacks the layers of ldr on background and writes their triples to --output-layer.
+     *
+     * @return the top layer, or background if there are no layers
+     */
+    private @Nonnull BoundBackground stack(@Nonnull SplitReasoner reasoner,
+                                           @Nonnull ModelLoader ldr,
+                                           @Nonnull BoundBackground background)
+            throws IOException {
+        BoundBackground bound = background;
+        List<Model> layers = ldr.getLayers();
+        for (int i = 0; i < layers.size(); i++) {
+            Stopwatch sw = Stopwatch.createStarted();
+            BoundBackground below = bound;
+            bound = closureCacheDir == null ? reasoner.bindLayer(below, layers.get(i))
+                    : new ClosureCache(closureCacheDir).withStats(stats)
+                                                       .bindLayer(reasoner, below, layers.get(i));
+            logger.info("Bound layer {} in {}", i, sw);
+            if (i < outputLayers.length) {
+                Model out = ModelFactory.createDefaultModel();
+                reasoner.writeLayer(below, bound, layers.get(i), out);
+                write(out, outputLayers[i], ldr.getFirstLang());
+            }
+        }
+        return bound;
+    }
+
+    private void serve(@Nonnull SplitReasoner reasoner,
+                       @Nonnull ModelLoader ldr) throws IOException {
+        if (!ldr.getMain().isEmpty())
+            logger.warn("Ignoring main inputs given to --server. Main inputs come from jobs.");
+        ReasoningServer server = new ReasoningServer(ldr.getBackground())
+                .withClosureCache(closureCacheDir == null ? null
+                        : new ClosureCache(closureCacheDir).withStats(stats))
+                .withThreads(serverThreads > 0 ? serverThreads
+                                               : Runtime.getRuntime().availableProcessors());
+        server.bind(this.reasoner, reasoner);
+        server.start(serverPort);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        try {
+            server.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runClient() throws IOException {
+        if (inputBgFiles.length > 0 || inputBgURIs.length > 0)
+            logger.warn("Ignoring background inputs, the --server background is used.");
+        List<String> sources = mainSources();
+        Stopwatch sw = Stopwatch.createStarted();
+        Model main = ModelFactory.createDefaultModel();
+        new ReasoningClient(clientURL).withReasoner(reasoner).withProfile(profile)
+                .withEcho(!noEcho).withHintLang(asLang(inputLanguage))
+                .reason(sources, main);
+        logger.info("Got {} triples from {} in {}", main.size(), clientURL, sw);
+        Lang firstLang = sources.isEmpty() ? null : RDFLanguages.filenameToLang(sources.get(0));
+        write(main, output, firstLang);
     }
 
     private void reason(SplitReasoner reasoner, ModelLoader ldr) throws IOException {
-        Model main, bg = ModelFactory.createDefaultModel();;
+        if (streamOutput && store == null && sameAsReasoner == null && previousFiles.length == 0
+                && pipe(reasoner, ldr)) {
+            return;
+        }
+        Model main, bg = newOutput(TDBStore.OUTPUT_BG);
         Stopwatch sw;
         if (split) {
+            boolean update = previousFiles.length > 0;
+            Model previous = update ? load(previousFiles) : null;
+            Model added = update ? load(addFiles) : null, removed = update ? load(removeFiles) : null;
             sw = Stopwatch.createStarted();
-            main = reasoner.apply(ldr.getBackground(), ldr.getMain(), bg);
+            if (closureCacheDir != null || update || store != null
+                    || !ldr.getLayers().isEmpty()) {
+                BoundBackground background = bind(reasoner, ldr.getBackground());
+                reasoner.writeBackground(background, bg);
+                BoundBackground bound = stack(reasoner, ldr, background);
+                main = newOutput(TDBStore.OUTPUT);
+                if (update)
+                    reasoner.update(bound, ldr.getMain(), previous, added, removed, main);
+                else
+                    reasoner.apply(bound, ldr.getMain(), main);
+            } else {
+                main = reasoner.apply(ldr.getBackground(), ldr.getMain(), bg);
+            }
             long mainTriples = noEcho ? main.size() : main.size() - ldr.getMain().size(),
                    bgTriples = noEcho ? bg.size()   : bg.size()   - ldr.getBackground().size();
             logger.info("Inferred {} triples for main and {} for background in {}",
@@ -159,13 +568,249 @@ public class Main {
             Model union = union(ldr.getBackground(), ldr.getMain());
             sw = Stopwatch.createStarted();
             main = reasoner.apply(union);
-            long triples = noEcho ? main.size() : main.size() - union.size();
-            logger.info("Inferred {} triples in {}", triples, sw);
+            if (main.getGraph() instanceof InfGraph) {
+                logger.info("Prepared inferences in {}, the remaining are derived while " +
+                            "writing", sw);
+            } else {
+                long triples = noEcho ? main.size() : main.size() - union.size();
+                logger.info("Inferred {} triples in {}", triples, sw);
+            }
+            if (store != null) {
+                Model out = newOutput(TDBStore.OUTPUT);
+                out.setNsPrefixes(main);
+                out.add(sameAsOutput(main)); // the copy is not an output of sameAsReasoner
+                main = out;
+            }
         }
 
         write(main, output, ldr.getFirstLang());
     }
 
+    /**
+     * Sends the inferences straight to the output writers, as they are derived, instead of
+     * collecting them in models.
+     *
+     * @return false, without doing anything, if an output format has no streaming writer
+     */
+    private boolean pipe(@Nonnull SplitReasoner reasoner,
+                         @Nonnull ModelLoader ldr) throws IOException {
+        RDFFormat fmt = StreamingWriter.streamingFormat(format(output, ldr.getFirstLang()));
+        RDFFormat bgFmt = split && outputBg != null
+                ? StreamingWriter.streamingFormat(format(outputBg, ldr.getFirstLang())) : null;
+        if (fmt == null || (split && outputBg != null && bgFmt == null))
+            return false;
+        Model inBg = ldr.getBackground(), inMain = ldr.getMain();
+        Model union = split ? null : union(inBg, inMain);
+        PrefixMapping prefixes = union != null ? union
+                : PrefixMapping.Factory.create().setNsPrefixes(inMain).withDefaultMappings(inBg);
+        Stopwatch sw = Stopwatch.createStarted();
+        try (OutputStream os = open(output, fmt);
+             OutputStream bgOs = bgFmt == null ? null : open(outputBg, bgFmt)) {
+            Counter main = new Counter(start(os, output, prefixes, fmt));
+            Counter bg = new Counter(bgOs == null ? StreamRDFLib.sinkNull()
+                                                  : start(bgOs, outputBg, inBg, bgFmt));
+            if (union != null) {
+                reasoner.apply(union, main);
+            } else if (closureCacheDir != null || !ldr.getLayers().isEmpty()) {
+                BoundBackground background = bind(reasoner, inBg);
+                reasoner.writeBackground(background, bg);
+                reasoner.apply(stack(reasoner, ldr, background), inMain, main);
+            } else {
+                reasoner.apply(inBg, inMain, bg, main);
+            }
+            main.finish();
+            bg.finish();
+            if (union != null) {
+                logger.info("Inferred {} triples in {}",
+                            noEcho ? main.triples : main.triples - union.size(), sw);
+            } else {
+                logger.info("Inferred {} triples for main and {} for background in {}",
+                            noEcho ? main.triples : main.triples - inMain.size(),
+                            noEcho ? bg.triples : bg.triples - inBg.size(), sw);
+            }
+        }
+        return true;
+    }
+
+    private boolean isGzip(@Nullable File file) {
+        return gzipOutput || (file != null && file.getName().endsWith(".gz"));
+    }
+
+    /**
+     * Whether writing fmt to file (or stdout, if null) is done by a ParallelLineWriter.
+     */
+    private boolean isParallel(@Nullable File file, @Nonnull RDFFormat fmt) {
+        return ParallelLineWriter.supports(fmt) && (isGzip(file) || writeThreads() > 1);
+    }
+
+    private int writeThreads() {
+        return writeThreads == 0 ? Runtime.getRuntime().availableProcessors() : writeThreads;
+    }
+
+    /**
+     * Same as open(file), but compressing with gzip, if requested and if the writer for fmt
+     * will not compress by itself.
+     */
+    private @Nonnull OutputStream open(@Nullable File file,
+                                       @Nonnull RDFFormat fmt) throws IOException {
+        OutputStream os = open(file);
+        return isGzip(file) && !isParallel(file, fmt) ? new GZIPOutputStream(os, 65536) : os;
+    }
+
+    /**
+     * A started stream writer of fmt for os, obtained with open(file, fmt).
+     */
+    private @Nonnull StreamRDF start(@Nonnull OutputStream os, @Nullable File file,
+                                     @Nonnull PrefixMapping prefixes, @Nonnull RDFFormat fmt) {
+        if (isParallel(file, fmt))
+            return new ParallelLineWriter(os, fmt, writeThreads(), isGzip(file));
+        return StreamingWriter.start(os, prefixes, fmt);
+    }
+
+    /**
+     * A buffered stream to file or, if null, to stdout, which is flushed but not closed.
+     */
+    private static @Nonnull OutputStream open(@Nullable File file) throws IOException {
+        if (file != null)
+            return new BufferedOutputStream(new FileOutputStream(file));
+        return new BufferedOutputStream(System.out) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    private void query(@Nonnull SplitReasoner reasoner,
+                       @Nonnull ModelLoader ldr) throws IOException {
+        Model model = split || closureCacheDir != null
+                ? reasoner.infer(stack(reasoner, ldr, bind(reasoner, ldr.getBackground())),
+                                 ldr.getMain())
+                : reasoner.infer(union(ldr.getBackground(), ldr.getMain()));
+        PrefixMapping prefixes = PrefixMapping.Factory.create()
+                .setNsPrefixes(ldr.getBackground()).setNsPrefixes(ldr.getMain());
+        Query parsed;
+        try {
+            parsed = parseQuery(prefixes);
+        } catch (QueryParseException e) {
+            logger.error("Bad --query: {}", e.getMessage());
+            return;
+        }
+        long results;
+        try (RunStats.Phase phase = stats.begin("query");
+             QueryExecution execution = QueryExecutionFactory.create(parsed, model)) {
+            Stopwatch sw = Stopwatch.createStarted();
+            try (OutputStream os = isGzip(output) ? new GZIPOutputStream(open(output), 65536)
+                                                  : open(output)) {
+                results = query(os, parsed, execution, prefixes);
+            }
+            phase.triples(results);
+            logger.info("Wrote {} query results in {}", results, sw);
+        }
+    }
+
+    /**
+     * Parses --query, which may be a file, a SPARQL query or triple patterns.
+     */
+    private @Nonnull Query parseQuery(@Nonnull PrefixMapping prefixes) throws IOException {
+        String text = query;
+        File file = new File(query);
+        if (file.isFile())
+            text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        if (!SPARQL_RX.matcher(text).find())
+            text = "CONSTRUCT WHERE { " + text + " }";
+        Query parsed = new Query();
+        parsed.setPrefixMapping(prefixes);
+        return QueryFactory.parse(parsed, text, null, Syntax.syntaxARQ);
+    }
+
+    /**
+     * Writes the query results into os, as they are produced.
+     *
+     * @return number of results (triples or solutions)
+     */
+    private long query(@Nonnull OutputStream os, @Nonnull Query parsed,
+                       @Nonnull QueryExecution execution, @Nonnull PrefixMapping prefixes) {
+        if (parsed.isSelectType() || parsed.isAskType()) {
+            Lang lang = resultsLang();
+            if (parsed.isAskType()) {
+                ResultSetMgr.write(os, execution.execAsk(), lang);
+                return 1;
+            }
+            ResultSet results = execution.execSelect();
+            ResultSetMgr.write(os, results, lang);
+            return results.getRowNumber();
+        }
+        Iterator<Triple> it = parsed.isConstructType() ? execution.execConstructTriples()
+                                                       : execution.execDescribeTriples();
+        RDFFormat fmt = outputFormat != null ? requestedFormat()
+                : defaultSerialization(output == null ? RDFLanguages.NTRIPLES
+                    : RDFLanguages.filenameToLang(output.getName(), RDFLanguages.NTRIPLES));
+        RDFFormat streaming = StreamingWriter.streamingFormat(fmt);
+        if (streaming == null) {
+            Model model = ModelFactory.createDefaultModel();
+            model.setNsPrefixes(prefixes);
+            while (it.hasNext()) model.getGraph().add(it.next());
+            RDFDataMgr.write(os, model, fmt);
+            return model.size();
+        }
+        Set<Triple> seen = new HashSet<>();
+        StreamRDF out = StreamRDFWriter.getWriterStream(os, streaming);
+        out.start();
+        prefixes.getNsPrefixMap().forEach(out::prefix);
+        while (it.hasNext()) {
+            Triple triple = it.next();
+            if (seen.add(triple)) out.triple(triple);
+        }
+        out.finish();
+        return seen.size();
+    }
+
+    /**
+     * Language for SELECT and ASK results, from --output-format or --output.
+     */
+    private @Nonnull Lang resultsLang() {
+        List<Lang> langs = Arrays.asList(ResultSetLang.SPARQLResultSetTSV,
+                ResultSetLang.SPARQLResultSetCSV, ResultSetLang.SPARQLResultSetJSON,
+                ResultSetLang.SPARQLResultSetXML, ResultSetLang.SPARQLResultSetText);
+        String name = outputFormat != null ? outputFormat.toLowerCase()
+                : (output != null ? output.getName().replaceAll("^.*\\.", "").toLowerCase()
+                                  : "tsv");
+        for (Lang lang : langs) {
+            if (lang.getFileExtensions().contains(name)
+                    || lang.getLabel().toLowerCase().endsWith(name))
+                return lang;
+        }
+        if (outputFormat != null)
+            logger.warn("{} is not a format for query results, using TSV", outputFormat);
+        return ResultSetLang.SPARQLResultSetTSV;
+    }
+
+    /**
+     * An empty model for an output, which is the given graph of the --tdb store, if any.
+     */
+    private @Nonnull Model newOutput(@Nonnull Node name) {
+        if (store == null) return ModelFactory.createDefaultModel();
+        store.clear(name);
+        return store.getModel(name);
+    }
+
+    private @Nonnull Model load(@Nonnull File[] files) {
+        return newLoader().files(files).getMain();
+    }
+
+    /**
+     * A ModelLoader for inputs whose owl:imports are not followed.
+     */
+    private @Nonnull ModelLoader newLoader() {
+        return new ModelLoader().withCompactStore(compactStore)
+                .withStats(stats)
+                .withHintLang(asLang(inputLanguage))
+                .withAutoImport(false)
+                .withParseThreads(parseThreads)
+                .withChunkSize(parseChunkSize);
+    }
+
     private void doListProfiles(SplitReasoner reasoner) {
         list(String.format("Profiles for \"%s\" reasoner", this.reasoner),
                 new ArrayList<>(reasoner.getProfiles()));
@@ -180,7 +825,7 @@ public class Main {
     }
 
     private void doListOutputFormats() {
-        list("Output Formats", formatList);
+        list("Output Formats", Formats.list);
     }
 
     private void doListReasoners() {
@@ -194,31 +839,79 @@ public class Main {
     }
 
 
+    /**
+     * The triples of model to be written, which are expanded or only filtered if model is an
+     * output of sameAsReasoner.
+     */
+    private @Nonnull Model sameAsOutput(@Nonnull Model model) {
+        if (sameAsReasoner == null) return model;
+        return noSameAsExpansion ? sameAsReasoner.representatives(model)
+                                 : sameAsReasoner.expand(model);
+    }
+
     private void write(@Nonnull Model model, @Nullable File file,
                        @Nullable Lang mainLanguage) throws IOException {
-        RDFFormat fmt;
-        if (outputFormat != null) {
-            fmt = asRDFFormat(outputFormat);
-            if (fmt == null)
-                fmt = defaultSerialization(asLang(outputFormat));
-        } else {
-            fmt = defaultSerialization(inputLanguage != null ? asLang(inputLanguage)
-                    : (mainLanguage != null ? mainLanguage : RDFLanguages.TURTLE));
-            Lang lang = file == null ? fmt.getLang()
-                    : RDFLanguages.filenameToLang(file.getName(), fmt.getLang());
-            fmt = fmt.getLang() == lang ? fmt : defaultSerialization(lang);
+        model = sameAsOutput(model);
+        RDFFormat fmt = format(file, mainLanguage);
+        Graph graph = model.getGraph();
+        boolean stream = streamOutput || graph instanceof TDBGraph || isParallel(file, fmt)
+                || (streamThreshold >= 0 && sizeEstimate(graph) >= streamThreshold);
+        if (stream && StreamingWriter.streamingFormat(fmt) == null) {
+            if (streamOutput)
+                logger.warn("{} cannot be written as a stream, will buffer output", fmt);
+            stream = false;
         }
-        if (file != null) {
-            try (FileOutputStream os = new FileOutputStream(file)) {
+        try (RunStats.Phase phase = stats.begin("write");
+             OutputStream os = open(file, fmt)) {
+            if (stream) {
+                Counter counter = new Counter(start(os, file, model, fmt));
+                StreamingWriter.write(graph, counter);
+                phase.triples(counter.triples);
+            } else {
+                if (graph instanceof InfGraph) {
+                    // derive each triple once, instead of at every find() of the writer
+                    Model copy = ModelFactory.createDefaultModel();
+                    copy.setNsPrefixes(model);
+                    GraphUtil.addInto(copy.getGraph(), graph);
+                    model = copy;
+                }
                 RDFDataMgr.write(os, model, fmt);
+                phase.triples(model.size());
             }
-        } else {
-            RDFDataMgr.write(System.out, model, fmt);
         }
     }
 
+    /**
+     * Size of graph, without deriving the triples of an InfGraph (the size of its data
+     * is used instead).
+     */
+    private static long sizeEstimate(@Nonnull Graph graph) {
+        return graph instanceof InfGraph ? ((InfGraph) graph).getRawGraph().size() : graph.size();
+    }
+
+    /**
+     * The format for writing to file (or stdout, if null).
+     */
+    private @Nonnull RDFFormat format(@Nullable File file, @Nullable Lang mainLanguage) {
+        if (outputFormat != null)
+            return requestedFormat();
+        RDFFormat fmt = defaultSerialization(inputLanguage != null ? asLang(inputLanguage)
+                : (mainLanguage != null ? mainLanguage : RDFLanguages.TURTLE));
+        Lang lang = file == null ? fmt.getLang()
+                : RDFLanguages.filenameToLang(file.getName(), fmt.getLang());
+        return fmt.getLang() == lang ? fmt : defaultSerialization(lang);
+    }
+
+    /**
+     * The format given in --output-format.
+     */
+    private @Nonnull RDFFormat requestedFormat() {
+        RDFFormat fmt = asRDFFormat(outputFormat);
+        return fmt != null ? fmt : defaultSerialization(asLang(outputFormat));
+    }
+
     private @Nullable RDFFormat asRDFFormat(@Nonnull String string) {
-        RDFFormat fmt = formatMap.getOrDefault(string.toLowerCase(), null);
+        RDFFormat fmt = Formats.map.getOrDefault(string.toLowerCase(), null);
         if (fmt == null) {
             Lang lang = asLang(string);
             if (lang != null) new RDFFormat(lang);
@@ -240,26 +933,50 @@ public class Main {
     SplitReasoner setupReasoner() {
         SplitReasoner reasoner = ReasonerRegistry.getReasoner(this.reasoner);
         reasoner.setEchoEnabled(!noEcho);
+        if (sameAsRewriting)
+            reasoner = sameAsReasoner = new SameAsRewritingReasoner(reasoner);
         return reasoner;
     }
 
-    static {
-        formatMap = new HashMap<>();
-        formatList = new ArrayList<>();
-        Arrays.stream(RDFFormat.class.getFields())
-                .filter(f -> (f.getModifiers() & (Modifier.PUBLIC | Modifier.STATIC)) > 0
-                        && RDFFormat.class.isAssignableFrom(f.getType()))
-                .forEach(f -> {
-                    try {
-                        RDFFormat format = (RDFFormat) f.get(null);
-                        formatMap.put(f.getName().toLowerCase(), format);
-                        formatMap.put(format.toString().toLowerCase(), format);
-                        formatList.add(f.getName());
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-        formatList = formatList.stream().map(String::toUpperCase).sorted().distinct()
-                .collect(Collectors.toList());
+    /**
+     * RDFFormat constants by name. Separate from Main, so that Jena is only initialized when
+     * (and if) formats are needed.
+     */
+    private static class Formats {
+        static final Map<String, RDFFormat> map = new HashMap<>();
+        static final List<String> list;
+
+        static {
+            List<String> names = new ArrayList<>();
+            Arrays.stream(RDFFormat.class.getFields())
+                    .filter(f -> (f.getModifiers() & (Modifier.PUBLIC | Modifier.STATIC)) > 0
+                            && RDFFormat.class.isAssignableFrom(f.getType()))
+                    .forEach(f -> {
+                        try {
+                            RDFFormat format = (RDFFormat) f.get(null);
+                            map.put(f.getName().toLowerCase(), format);
+                            map.put(format.toString().toLowerCase(), format);
+                            names.add(f.getName());
+                        } catch (IllegalAccessException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+            list = names.stream().map(String::toUpperCase).sorted().distinct()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static class Counter extends StreamRDFWrapper {
+        long triples = 0;
+
+        Counter(@Nonnull StreamRDF other) {
+            super(other);
+        }
+
+        @Override
+        public void triple(Triple triple) {
+            ++triples;
+            super.triple(triple);
+        }
     }
 }
@@ -0,0 +1,22 @@
+package com.github.alexishuf.infer.reasoners;
+
+import org.apache.jena.rdf.model.Model;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Background triples already materialized by a SplitReasoner, ready to be used with any
+ * number of main models. Instances are specific to the reasoner (and profile) that created
+ * them.
+ */
+public interface BoundBackground {
+    /**
+     * Explicit background triples.
+     */
+    @Nonnull Model getInput();
+
+    /**
+     * All background triples, explicit and inferred. Must not be modified.
+     */
+    @Nonnull Model getClosure();
+}
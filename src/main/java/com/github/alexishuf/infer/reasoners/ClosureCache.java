@@ -0,0 +1,185 @@
+package com.github.alexishuf.infer.reasoners;
+
+import com.github.alexishuf.infer.store.DictionaryGraph;
+import com.github.alexishuf.infer.utils.GraphDigest;
+import com.github.alexishuf.infer.utils.RunStats;
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.Hashing;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.*;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * On-disk cache of background closures (see SplitReasoner.bindBackground()).
+ *
+ * Closures are stored as RDF Thrift, keyed by the reasoner class, profile and a
+ * GraphDigest of the background input (and of the layer, for stacked layers). Blank nodes of the input are stored under their
+ * canonical GraphDigest labels, and are mapped back to the blank nodes of the current input
+ * when the closure is loaded. Backgrounds whose blank nodes have no canonical labels are not
+ * cached.
+ */
+public class ClosureCache {
+    private static Logger logger = LoggerFactory.getLogger(ClosureCache.class);
+    private static final String VERSION = "1";
+    private static final String INPUT_BLANK = "i", OTHER_BLANK = "o";
+
+    private final @Nonnull File dir;
+    private @Nonnull RunStats stats = RunStats.DISABLED;
+
+    public ClosureCache(@Nonnull File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Record reading and writing of closures as the closure-cache phase.
+     */
+    public @Nonnull ClosureCache withStats(@Nonnull RunStats stats) {
+        this.stats = stats;
+        return this;
+    }
+
+    /**
+     * Gets the bound background from the cache or, if not cached, binds it with the
+     * reasoner and stores its closure.
+     */
+    public @Nonnull BoundBackground bind(@Nonnull SplitReasoner reasoner,
+                                         @Nonnull Model inBackground) {
+        return bind(reasoner, inBackground, null, () -> reasoner.bindBackground(inBackground));
+    }
+
+    /**
+     * Same as bind(), but for SplitReasoner.bindLayer(). Entries are keyed by the union of
+     * the inputs of background and inLayer and by inLayer itself.
+     */
+    public @Nonnull BoundBackground bindLayer(@Nonnull SplitReasoner reasoner,
+                                              @Nonnull BoundBackground background,
+                                              @Nonnull Model inLayer) {
+        Model input = ModelFactory.createUnion(background.getInput(), inLayer);
+        return bind(reasoner, input, inLayer, () -> reasoner.bindLayer(background, inLayer));
+    }
+
+    private @Nonnull BoundBackground bind(@Nonnull SplitReasoner reasoner, @Nonnull Model input,
+                                          @Nullable Model inLayer,
+                                          @Nonnull Supplier<BoundBackground> binder) {
+        GraphDigest digest = new GraphDigest(input.getGraph());
+        if (!digest.isCanonical()) {
+            logger.warn("Blank nodes in background cannot be labeled consistently, will not " +
+                        "use the closure cache.");
+            return binder.get();
+        }
+        String layerDigest = inLayer == null ? ""
+                : "\nlayer " + new GraphDigest(inLayer.getGraph()).getDigest();
+        String key = Hashing.sha256().hashString(VERSION + "\n" + reasoner.getClass().getName()
+                + "\n" + reasoner.getProfile() + "\n" + digest.getDigest() + layerDigest,
+                StandardCharsets.UTF_8).toString();
+        File file = new File(dir, key + ".rt");
+        if (file.exists()) {
+            Stopwatch sw = Stopwatch.createStarted();
+            try {
+                Model closure;
+                try (RunStats.Phase phase = stats.begin("closure-cache")) {
+                    closure = read(file, digest.getBlankNodes());
+                    phase.triples(closure.size());
+                }
+                BoundBackground bound = reasoner.loadBackground(input, closure);
+                logger.info("Loaded {} closure with {} triples from {} in {}.",
+                            inLayer == null ? "background" : "layer", closure.size(), file, sw);
+                return bound;
+            } catch (IOException | RiotException e) {
+                logger.warn("Ignoring unreadable closure cache entry {}.", file, e);
+            }
+        }
+        BoundBackground bound = binder.get();
+        try (RunStats.Phase phase = stats.begin("closure-cache")) {
+            write(file, bound.getClosure(), digest);
+            phase.triples(bound.getClosure().size());
+        } catch (IOException | RiotException e) {
+            logger.warn("Failed to store background closure into {}.", file, e);
+        }
+        return bound;
+    }
+
+    private @Nonnull Model read(@Nonnull File file,
+                                @Nonnull Map<String, Node> blanks) throws IOException {
+        /* rl copies rows straight from a DictionaryGraph, and it is also more compact */
+        Model closure = ModelFactory.createModelForGraph(new DictionaryGraph());
+        StreamRDF sink = StreamRDFLib.graph(closure.getGraph());
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+            RDFParser.create().source(is).lang(Lang.RDFTHRIFT).context(null)
+                    .labelToNode(LabelToNode.createUseLabelAsGiven())
+                    .parse(new StreamRDFWrapper(sink) {
+                        @Override
+                        public void triple(Triple t) {
+                            super.triple(Triple.create(map(t.getSubject()), t.getPredicate(),
+                                                       map(t.getObject())));
+                        }
+
+                        private @Nonnull Node map(@Nonnull Node node) {
+                            if (!node.isBlank()) return node;
+                            String label = node.getBlankNodeLabel();
+                            if (label.startsWith(INPUT_BLANK)) {
+                                Node mapped = blanks.get(label.substring(INPUT_BLANK.length()));
+                                if (mapped == null)
+                                    throw new RiotException("Unknown blank node " + label);
+                                return mapped;
+                            }
+                            return node;
+                        }
+                    });
+        }
+        return closure;
+    }
+
+    private void write(@Nonnull File file, @Nonnull Model closure,
+                       @Nonnull GraphDigest digest) throws IOException {
+        Files.createDirectories(dir.toPath());
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            StreamRDF thrift = StreamRDFWriter.getWriterStream(os, RDFFormat.RDF_THRIFT);
+            thrift.start();
+            ExtendedIterator<Triple> it = closure.getGraph().find();
+            try {
+                while (it.hasNext()) {
+                    Triple t = it.next();
+                    thrift.triple(Triple.create(label(t.getSubject(), digest), t.getPredicate(),
+                                                label(t.getObject(), digest)));
+                }
+            } finally {
+                it.close();
+            }
+            thrift.finish();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw e;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static @Nonnull Node label(@Nonnull Node node, @Nonnull GraphDigest digest) {
+        if (!node.isBlank()) return node;
+        String label = digest.getLabel(node);
+        return NodeFactory.createBlankNode(label != null ? INPUT_BLANK + label
+                                                         : OTHER_BLANK + node.getBlankNodeLabel());
+    }
+}
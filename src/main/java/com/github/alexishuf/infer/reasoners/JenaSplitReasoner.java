@@ -1,24 +1,55 @@
 package com.github.alexishuf.infer.reasoners;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Suppliers;
+import com.github.alexishuf.infer.reasoners.RulePruner.Vocabulary;
+import com.github.alexishuf.infer.reasoners.hierarchy.HierarchyClosure;
+import com.github.alexishuf.infer.utils.GraphDifference;
+import com.github.alexishuf.infer.utils.GraphPartitioner;
+import com.github.alexishuf.infer.utils.RunStats;
+import com.github.alexishuf.infer.utils.Utils;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.Union;
 import org.apache.jena.ontology.OntModelSpec;
 import org.apache.jena.rdf.model.*;
+import org.apache.jena.reasoner.Derivation;
+import org.apache.jena.reasoner.InfGraph;
 import org.apache.jena.reasoner.Reasoner;
+import org.apache.jena.reasoner.ReasonerFactory;
+import org.apache.jena.reasoner.rulesys.OWLFBRuleReasoner;
+import org.apache.jena.reasoner.rulesys.Rule;
+import org.apache.jena.reasoner.rulesys.RuleDerivation;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
+import static java.util.Arrays.asList;
 import static java.util.Arrays.stream;
-import static org.apache.jena.rdf.model.ModelFactory.createModelForGraph;
+import static java.util.Collections.singletonList;
 
 @ReasonerName("jena")
 public class JenaSplitReasoner implements SplitReasoner {
-    private static Map<String, OntModelSpec> profileMap;
+    private static Logger logger = LoggerFactory.getLogger(JenaSplitReasoner.class);
+    /* profile name -> name of the OntModelSpec field, which is only read when used, since
+     * initializing OntModelSpec initializes Jena */
+    private static Map<String, String> profileMap;
 
     private boolean echoEnabled;
     private String profile = "owl-fb";
+    private @Nonnull RunStats stats = RunStats.DISABLED;
+    private int partitions = 1;
+    private boolean pruneRules = false;
 
     @Nonnull
     @Override
@@ -34,6 +65,7 @@ public class JenaSplitReasoner implements SplitReasoner {
 
     @Override
     public void setProfile(String name) throws IllegalArgumentException {
+        if (name == null) name = "owl-fb";
         Preconditions.checkArgument(profileMap.containsKey(name));
         profile = name;
     }
@@ -48,56 +80,543 @@ public class JenaSplitReasoner implements SplitReasoner {
         this.echoEnabled = enabled;
     }
 
+    /**
+     * Jena reasoners are lazy: the inference phase covers the forward rules (prepare()) and
+     * backward rules are evaluated during the filter phase (or while writing, with echo).
+     * Rule firings are counted from derivation logging, as the derivations of each output
+     * triple.
+     */
+    @Override
+    public void setStats(@Nonnull RunStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Partitions (see GraphPartitioner) are bound to the same schema-bound reasoner and
+     * reasoned concurrently. If main has schema triples, it is reasoned as a whole.
+     */
+    @Override
+    public void setPartitions(int partitions) {
+        this.partitions = Math.max(1, partitions);
+    }
+
+    /**
+     * Only the owl-fb and OWL micro reasoners (including their OntModelSpec names) are
+     * pruned, see RulePruner. For split reasoning, the background is bound with the rules
+     * that its vocabulary enables. If a main input enables more rules, the background is
+     * bound again with those, once for each distinct selection of rules.
+     */
+    @Override
+    public void setPruneRules(boolean pruneRules) {
+        this.pruneRules = pruneRules;
+    }
+
+    @Override
+    public boolean isEqualityReasoning() {
+        return spec().getReasoner().getClass().equals(OWLFBRuleReasoner.class);
+    }
+
     @Nonnull
     @Override
     public Model apply(@Nonnull Model main) {
-        return ModelFactory.createInfModel(profileMap.get(profile).getReasoner(), main);
+        HierarchyClosure hierarchyClosure = hierarchyClosure();
+        if (hierarchyClosure != null) {
+            List<Graph> parts;
+            try (RunStats.Phase phase = stats.begin("inference")) {
+                parts = closure(hierarchyClosure, null, main.getGraph());
+                phase.triples(main.size());
+            }
+            if (parts != null) {
+                Model out = ModelFactory.createDefaultModel();
+                try (RunStats.Phase phase = stats.begin("filter")) {
+                    GraphDifference difference = new GraphDifference();
+                    if (!isEchoEnabled()) difference.minus(main.getGraph());
+                    for (Graph part : parts) difference.apply(part, out.getGraph());
+                    phase.triples(out.size());
+                }
+                out.setNsPrefixes(main);
+                return out;
+            }
+        }
+        InfModel inf;
+        try (RunStats.Phase phase = stats.begin("inference")) {
+            inf = ModelFactory.createInfModel(newReasoner(main.getGraph()), main);
+            inf.prepare();
+            phase.triples(main.size());
+        }
+        if (isEchoEnabled()) {
+            countFirings(inf.getGraph(), inf.getGraph());
+            return inf;
+        }
+        Model out = ModelFactory.createDefaultModel();
+        try (RunStats.Phase phase = stats.begin("filter")) {
+            new GraphDifference().minus(main.getGraph()).apply(inf.getGraph(), out.getGraph());
+            phase.triples(out.size());
+        }
+        countFirings(inf.getGraph(), out.getGraph());
+        out.setNsPrefixes(main);
+        return out;
+    }
+
+    /**
+     * Triples are sent during the filter phase, as Jena derives them (backward rules are
+     * evaluated at that point). The trans and rdfs profiles and rule firing counts use
+     * apply(Model) instead.
+     */
+    @Override
+    public void apply(@Nonnull Model main, @Nonnull StreamRDF out) {
+        if (hierarchyClosure() != null || stats.isRuleFirings()) {
+            SplitReasoner.super.apply(main, out);
+            return;
+        }
+        InfGraph inf = prepare(newReasoner(main.getGraph()), main.getGraph());
+        try (RunStats.Phase phase = stats.begin("filter")) {
+            GraphDifference difference = new GraphDifference();
+            if (!isEchoEnabled()) difference.minus(main.getGraph());
+            phase.triples(difference.apply(inf, out));
+        }
+    }
+
+    /**
+     * An InfModel: backward rules are only evaluated for the patterns that are queried.
+     */
+    @Nonnull
+    @Override
+    public Model infer(@Nonnull Model main) {
+        return ModelFactory.createInfModel(newReasoner(main.getGraph()), main);
     }
 
+    @Nonnull
+    @Override
+    public Model infer(@Nonnull BoundBackground background, @Nonnull Model inMain) {
+        Preconditions.checkArgument(background instanceof Background
+                && ((Background) background).profile.equals(profile));
+        Graph data = data((Background) background, inMain.getGraph());
+        return ModelFactory.createInfModel(reasoner((Background) background, data).bind(data));
+    }
 
+    @Nonnull
     @Override
-    public void apply(@Nonnull Model inBackground, @Nonnull Model inMain,
-                      @Nonnull Model outBackground, @Nonnull Model outMain) {
-        Reasoner r = profileMap.get(profile).getReasoner();
-        r = r.bindSchema(inBackground.getGraph());
-        Model bg = createModelForGraph(r.bind(GraphFactory.createDefaultGraph()));
-        if (isEchoEnabled())
-            filterStatements(outBackground, bg);
-        else
-            filterStatements(outBackground, bg, inBackground);
-        outBackground.setNsPrefixes(inBackground);
+    public BoundBackground bindBackground(@Nonnull Model inBackground) {
+        try (RunStats.Phase phase = stats.begin("bind")) {
+            Background bg = newBackground(inBackground, ModelFactory.createDefaultModel());
+            Reasoner r = bg.reasoner.get();
+            Model closure = bg.closure;
+            HierarchyClosure hierarchyClosure = hierarchyClosure();
+            List<Graph> parts = hierarchyClosure == null ? null
+                    : closure(hierarchyClosure, null, inBackground.getGraph());
+            if (parts != null) {
+                for (Graph part : parts) new GraphDifference().apply(part, closure.getGraph());
+                phase.triples(closure.size());
+                return bg;
+            }
+            InfGraph inf = r.bind(GraphFactory.createDefaultGraph());
+            new GraphDifference().apply(inf, closure.getGraph());
+            countFirings(inf, closure.getGraph());
+            phase.triples(closure.size());
+            return bg;
+        }
+    }
 
-        Model inf = createModelForGraph(r.bind(inMain.getGraph()));
-        if (isEchoEnabled())
-            filterStatements(outMain, inf, bg);
-        else
-            filterStatements(outMain, inf, bg, inMain);
+    @Nonnull
+    @Override
+    public BoundBackground loadBackground(@Nonnull Model inBackground, @Nonnull Model closure) {
+        /* Jena's bound schema (forward deductions, generated backward rules and RETE state)
+         * cannot be restored from the closure and bindSchema() eagerly runs the rules, thus
+         * the schema is only bound from inBackground when a main input needs it. Outputting
+         * the background, the trans profile and rdfs inputs without schema triples never do. */
+        try (RunStats.Phase ignored = stats.begin("bind")) {
+            return newBackground(inBackground, closure);
+        }
+    }
+
+    /**
+     * A bound Jena reasoner cannot bind more schema, and binding a schema over the bound
+     * schema of another reasoner loses entailments. Thus, a layer with schema triples is
+     * bound again from the union of the inputs below it. A layer with only instance triples
+     * (see GraphPartitioner.hasSchema()) keeps the reasoner of the layer below and is bound
+     * as data together with each main input, which gives the same entailments.
+     */
+    @Nonnull
+    @Override
+    public BoundBackground bindLayer(@Nonnull BoundBackground background,
+                                     @Nonnull Model inLayer) {
+        Preconditions.checkArgument(background instanceof Background
+                && ((Background) background).profile.equals(profile));
+        if (GraphPartitioner.hasSchema(inLayer.getGraph()))
+            return SplitReasoner.super.bindLayer(background, inLayer);
+        Background below = (Background) background;
+        Model added = ModelFactory.createDefaultModel();
+        boolean echo = isEchoEnabled();
+        setEchoEnabled(true);
+        try {
+            apply(below, inLayer, added);
+        } finally {
+            setEchoEnabled(echo);
+        }
+        return new Background(profile, below.reasoner, Utils.union(below.input, inLayer),
+                              Utils.union(below.closure, added), below.vocabulary,
+                              below.selection, data(below, inLayer.getGraph()));
+    }
+
+    @Override
+    public void apply(@Nonnull BoundBackground background, @Nonnull Model inMain,
+                      @Nonnull Model outMain) {
+        Preconditions.checkArgument(background instanceof Background
+                && ((Background) background).profile.equals(profile));
+        Background bg = (Background) background;
+        HierarchyClosure hierarchyClosure = hierarchyClosure();
+        List<Graph> parts = null;
+        if (hierarchyClosure != null) {
+            try (RunStats.Phase phase = stats.begin("inference")) {
+                parts = closure(hierarchyClosure, bg, inMain.getGraph());
+                phase.triples(inMain.size());
+            }
+        }
+        if (parts != null) {
+            try (RunStats.Phase phase = stats.begin("filter")) {
+                GraphDifference mainDiff = new GraphDifference().minus(bg.closure.getGraph());
+                if (!isEchoEnabled()) mainDiff.minus(inMain.getGraph());
+                for (Graph part : parts) mainDiff.apply(part, outMain.getGraph());
+                phase.triples(outMain.size());
+            }
+            outMain.setNsPrefixes(inMain);
+            outMain.withDefaultMappings(bg.input);
+            return;
+        }
+        Graph data = data(bg, inMain.getGraph());
+        Reasoner reasoner = reasoner(bg, data);
+        /* partitions of main would each have to be bound with the instance layers */
+        List<Graph> partitions = bg.data != null ? null
+                : new GraphPartitioner(this.partitions)
+                        .partition(inMain.getGraph(), bg.closure.getGraph());
+        if (partitions != null) {
+            apply(bg, reasoner, partitions, inMain, outMain);
+            return;
+        }
+        InfGraph inf = prepare(reasoner, data);
+        try (RunStats.Phase phase = stats.begin("filter")) {
+            GraphDifference mainDiff = new GraphDifference().minus(bg.closure.getGraph());
+            if (!isEchoEnabled()) mainDiff.minus(inMain.getGraph());
+            mainDiff.apply(inf, outMain.getGraph());
+            phase.triples(outMain.size());
+        }
+        countFirings(inf, outMain.getGraph());
         outMain.setNsPrefixes(inMain);
-        outMain.withDefaultMappings(inBackground);
+        outMain.withDefaultMappings(bg.input);
     }
 
-    private void filterStatements(@Nonnull Model out, @Nonnull Model in,
-                                  @Nonnull Model... blacklist) {
-        for (StmtIterator it = in.listStatements(); it.hasNext(); ) {
-            Statement s = it.next();
-            if (Arrays.stream(blacklist).noneMatch(m -> m.contains(s))) out.add(s);
+    /**
+     * Sends triples as apply(Model, StreamRDF) does. Partitions and the trans and rdfs
+     * profiles use apply(BoundBackground, Model, Model) instead.
+     */
+    @Override
+    public void apply(@Nonnull BoundBackground background, @Nonnull Model inMain,
+                      @Nonnull StreamRDF outMain) {
+        Preconditions.checkArgument(background instanceof Background
+                && ((Background) background).profile.equals(profile));
+        if (hierarchyClosure() != null || partitions > 1 || stats.isRuleFirings()) {
+            SplitReasoner.super.apply(background, inMain, outMain);
+            return;
+        }
+        Background bg = (Background) background;
+        Graph data = data(bg, inMain.getGraph());
+        InfGraph inf = prepare(reasoner(bg, data), data);
+        try (RunStats.Phase phase = stats.begin("filter")) {
+            GraphDifference mainDiff = new GraphDifference().minus(bg.closure.getGraph());
+            if (!isEchoEnabled()) mainDiff.minus(inMain.getGraph());
+            phase.triples(mainDiff.apply(inf, outMain));
+        }
+    }
+
+    /**
+     * Binds data and runs the forward rules, in the inference phase.
+     */
+    private @Nonnull InfGraph prepare(@Nonnull Reasoner reasoner, @Nonnull Graph data) {
+        try (RunStats.Phase phase = stats.begin("inference")) {
+            InfGraph inf = reasoner.bind(data);
+            inf.prepare();
+            phase.triples(data.size());
+            return inf;
+        }
+    }
+
+    private void apply(@Nonnull Background bg, @Nonnull Reasoner reasoner,
+                       @Nonnull List<Graph> partitions, @Nonnull Model inMain,
+                       @Nonnull Model outMain) {
+        /* prepare the shared schema before concurrent binds */
+        reasoner.bind(GraphFactory.createDefaultGraph()).prepare();
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < partitions.size(); i++) indices.add(i);
+        List<Graph> outputs = Utils.parallelMap(partitions.size(), indices, i -> {
+            Graph partition = partitions.get(i);
+            InfGraph inf;
+            try (RunStats.Phase phase = stats.begin("inference")) {
+                inf = reasoner.bind(partition);
+                inf.prepare();
+                phase.triples(partition.size());
+            }
+            Graph out = GraphFactory.createDefaultGraph();
+            try (RunStats.Phase phase = stats.begin("filter")) {
+                new GraphDifference().minus(bg.closure.getGraph()).minus(partition)
+                        .apply(inf, out);
+                if (i > 0) removeDetached(out, partition, bg.input.getGraph());
+                phase.triples(out.size());
+            }
+            countFirings(inf, out);
+            return out;
+        });
+        try (RunStats.Phase phase = stats.begin("filter")) {
+            GraphDifference merge = new GraphDifference();
+            if (isEchoEnabled()) {
+                new GraphDifference().minus(bg.closure.getGraph())
+                        .apply(inMain.getGraph(), outMain.getGraph());
+            } else {
+                merge.minus(inMain.getGraph());
+            }
+            for (Graph out : outputs) merge.apply(out, outMain.getGraph());
+            phase.triples(outMain.size());
+        }
+        outMain.setNsPrefixes(inMain);
+        outMain.withDefaultMappings(bg.input);
+    }
+
+    /**
+     * Removes from out the triples of blank nodes created by the reasoner (e.g., owl-fb
+     * prototypes) that are not linked to any instance of partition. Such nodes only carry
+     * schema entailments, which every partition would repeat with new blank nodes.
+     */
+    private static void removeDetached(@Nonnull Graph out, @Nonnull Graph partition,
+                                       @Nonnull Graph bgInput) {
+        Set<Node> detached = new HashSet<>();
+        ExtendedIterator<Triple> it = out.find();
+        try {
+            while (it.hasNext()) {
+                Node s = it.next().getSubject();
+                if (s.isBlank() && !detached.contains(s) && !mentions(partition, s)
+                        && !mentions(bgInput, s) && isDetached(out, partition, s)) {
+                    detached.add(s);
+                }
+            }
+        } finally {
+            it.close();
+        }
+        for (Node node : detached) out.remove(node, Node.ANY, Node.ANY);
+    }
+
+    private static boolean mentions(@Nonnull Graph graph, @Nonnull Node node) {
+        return graph.contains(node, Node.ANY, Node.ANY)
+                || graph.contains(Node.ANY, Node.ANY, node);
+    }
+
+    private static boolean isDetached(@Nonnull Graph out, @Nonnull Graph partition,
+                                      @Nonnull Node node) {
+        return out.find(Node.ANY, Node.ANY, node)
+                  .filterDrop(t -> t.getSubject().equals(node)).toList().isEmpty()
+            && out.find(node, Node.ANY, Node.ANY)
+                  .filterKeep(t -> partition.contains(t.getObject(), Node.ANY, Node.ANY))
+                  .toList().isEmpty();
+    }
+
+    /**
+     * The specialized algorithms for the trans and rdfs profiles, or null if the profile
+     * (including the OntModelSpec names) must be handled by Jena's reasoners or if rule
+     * firings are counted.
+     */
+    private @Nullable HierarchyClosure hierarchyClosure() {
+        if (stats.isRuleFirings()) return null;
+        if (profile.equals("trans")) return new HierarchyClosure(false);
+        if (profile.equals("rdfs")) return new HierarchyClosure(true);
+        return null;
+    }
+
+    /**
+     * Graphs whose union is the closure of main (and bg, if non-null), or null if
+     * hierarchyClosure does not support the schema.
+     */
+    private @Nullable List<Graph> closure(@Nonnull HierarchyClosure hierarchyClosure,
+                                          @Nullable Background bg, @Nonnull Graph main) {
+        Graph schema = hierarchyClosure.schema(main);
+        Graph derived = GraphFactory.createDefaultGraph();
+        if (!hierarchyClosure.isRDFS()) {
+            List<Graph> hierarchies = bg == null ? singletonList(schema)
+                                                 : asList(bg.closure.getGraph(), schema);
+            if (!hierarchyClosure.supports(hierarchies)) return null;
+            hierarchyClosure.trans(hierarchies, derived);
+            return bg == null ? asList(main, derived)
+                              : asList(bg.closure.getGraph(), main, derived);
+        }
+        Graph schemaClosure;
+        if (bg != null && schema.isEmpty()) {
+            schemaClosure = bg.closure.getGraph();
+        } else {
+            Reasoner reasoner = bg != null ? bg.reasoner.get() : newReasoner();
+            schemaClosure = GraphFactory.createDefaultGraph();
+            new GraphDifference().apply(reasoner.bind(schema), schemaClosure);
+        }
+        if (!hierarchyClosure.supports(singletonList(schemaClosure))) return null;
+        hierarchyClosure.rdfs(schemaClosure, main, derived);
+        return asList(schemaClosure, main, derived);
+    }
+
+    private @Nonnull Background newBackground(@Nonnull Model inBackground,
+                                              @Nonnull Model closure) {
+        RulePruner pruner = pruner();
+        if (pruner == null) {
+            Reasoner r = newReasoner();
+            return new Background(profile, bind(r, inBackground), inBackground, closure,
+                                  null, null, null);
+        }
+        Vocabulary vocabulary = new Vocabulary().addAll(inBackground.getGraph());
+        BitSet selection = select(pruner, vocabulary);
+        Reasoner r = pruner.reasoner(selection, stats.isRuleFirings());
+        return new Background(profile, bind(r, inBackground), inBackground, closure,
+                              vocabulary, selection, null);
+    }
+
+    /**
+     * r bound to the schema in inBackground on the first get(), which runs the rules.
+     */
+    private static @Nonnull Supplier<Reasoner> bind(@Nonnull Reasoner r,
+                                                    @Nonnull Model inBackground) {
+        return Suppliers.memoize(() -> r.bindSchema(inBackground.getGraph()));
+    }
+
+    /**
+     * The graph to bind to the reasoner of bg for inMain: inMain and the instance layers
+     * of bg, if any.
+     */
+    private static @Nonnull Graph data(@Nonnull Background bg, @Nonnull Graph inMain) {
+        return bg.data == null ? inMain : new Union(bg.data, inMain);
+    }
+
+    /**
+     * The reasoner of bg, or, if inMain enables more rules than the background, the
+     * background bound to a reasoner with those rules.
+     */
+    private @Nonnull Reasoner reasoner(@Nonnull Background bg, @Nonnull Graph inMain) {
+        RulePruner pruner = pruner();
+        if (pruner == null || bg.vocabulary == null) return bg.reasoner.get();
+        BitSet selection = select(pruner, new Vocabulary().addAll(bg.vocabulary)
+                                                          .addAll(inMain));
+        if (selection.equals(bg.selection)) return bg.reasoner.get();
+        return bg.pruned.computeIfAbsent(selection, k -> pruner.reasoner(k, stats.isRuleFirings())
+                                                               .bindSchema(bg.input.getGraph()));
+    }
+
+    private @Nullable RulePruner pruner() {
+        return pruneRules ? RulePruner.forReasoner(spec().getReasoner()) : null;
+    }
+
+    private @Nonnull BitSet select(@Nonnull RulePruner pruner, @Nonnull Vocabulary vocabulary) {
+        BitSet selection = pruner.select(vocabulary);
+        logger.debug("Selected {} of {} rules of profile {}", selection.cardinality(),
+                     pruner.getRuleCount(), profile);
+        return selection;
+    }
+
+    /**
+     * A reasoner for the profile with only the rules that can fire on input, if pruning rules.
+     */
+    private @Nonnull Reasoner newReasoner(@Nonnull Graph input) {
+        RulePruner pruner = pruner();
+        if (pruner == null) return newReasoner();
+        return pruner.reasoner(select(pruner, new Vocabulary().addAll(input)),
+                               stats.isRuleFirings());
+    }
+
+    /**
+     * The OntModelSpec of the profile, initializing Jena on first use.
+     */
+    private @Nonnull OntModelSpec spec() {
+        try {
+            return (OntModelSpec) OntModelSpec.class.getField(profileMap.get(profile)).get(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A reasoner for the profile. If rule firings are counted, this is a new instance with
+     * derivation logging, since the instances held by OntModelSpecs are shared.
+     */
+    private @Nonnull Reasoner newReasoner() {
+        OntModelSpec spec = spec();
+        ReasonerFactory factory = spec.getReasonerFactory();
+        if (!stats.isRuleFirings() || factory == null)
+            return spec.getReasoner();
+        Reasoner reasoner = factory.create(null);
+        reasoner.setDerivationLogging(true);
+        return reasoner;
+    }
+
+    /**
+     * Counts, for each rule, the derivations of triples in graph that were logged by inf.
+     */
+    private void countFirings(@Nonnull Graph inf, @Nonnull Graph graph) {
+        if (!stats.isRuleFirings() || !(inf instanceof InfGraph)) return;
+        Map<String, Long> counts = new HashMap<>();
+        ExtendedIterator<Triple> it = graph.find();
+        try {
+            while (it.hasNext()) {
+                Iterator<Derivation> derivations = ((InfGraph) inf).getDerivation(it.next());
+                while (derivations != null && derivations.hasNext()) {
+                    Derivation d = derivations.next();
+                    if (!(d instanceof RuleDerivation)) continue;
+                    Rule rule = ((RuleDerivation) d).getRule();
+                    String name = rule.getName() != null ? rule.getName() : rule.toShortString();
+                    counts.merge(name, 1L, Long::sum);
+                }
+            }
+        } finally {
+            it.close();
+        }
+        counts.forEach(stats::addFirings);
+    }
+
+    private static class Background implements BoundBackground {
+        final @Nonnull String profile;
+        final @Nonnull Supplier<Reasoner> reasoner;
+        final @Nonnull Model input, closure;
+        final @Nullable Vocabulary vocabulary;
+        final @Nullable BitSet selection;
+        /* instance layers, which reasoner was not bound to */
+        final @Nullable Graph data;
+        final @Nonnull Map<BitSet, Reasoner> pruned = new ConcurrentHashMap<>();
+
+        Background(@Nonnull String profile, @Nonnull Supplier<Reasoner> reasoner,
+                   @Nonnull Model input, @Nonnull Model closure,
+                   @Nullable Vocabulary vocabulary, @Nullable BitSet selection,
+                   @Nullable Graph data) {
+            this.profile = profile;
+            this.reasoner = reasoner;
+            this.input = input;
+            this.closure = closure;
+            this.vocabulary = vocabulary;
+            this.selection = selection;
+            this.data = data;
+        }
+
+        @Override
+        public @Nonnull Model getInput() {
+            return input;
+        }
+
+        @Override
+        public @Nonnull Model getClosure() {
+            return closure;
         }
     }
 
     static {
         profileMap = new LinkedHashMap<>();
-        profileMap.put("owl-fb", OntModelSpec.OWL_MEM_RULE_INF);
-        profileMap.put("trans", OntModelSpec.OWL_MEM_TRANS_INF);
-        profileMap.put("rdfs", OntModelSpec.OWL_MEM_RDFS_INF);
-        stream(OntModelSpec.class.getDeclaredFields())
-                .filter(f -> (f.getModifiers() & Modifier.STATIC) > 0)
-                .forEach(f -> {
-                    try {
-                        profileMap.put(f.getName(), (OntModelSpec) f.get(null));
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
+        profileMap.put("owl-fb", "OWL_MEM_RULE_INF");
+        profileMap.put("trans", "OWL_MEM_TRANS_INF");
+        profileMap.put("rdfs", "OWL_MEM_RDFS_INF");
+        stream(OntModelSpec.class.getFields())
+                .filter(f -> (f.getModifiers() & Modifier.STATIC) > 0
+                        && OntModelSpec.class.isAssignableFrom(f.getType()))
+                .forEach(f -> profileMap.put(f.getName(), f.getName()));
         profileMap = Collections.unmodifiableMap(profileMap);
     }
 
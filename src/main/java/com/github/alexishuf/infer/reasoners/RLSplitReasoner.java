@@ -0,0 +1,376 @@
+package com.github.alexishuf.infer.reasoners;
+
+import com.github.alexishuf.infer.reasoners.rl.Materializer;
+import com.github.alexishuf.infer.reasoners.rl.RuleSet;
+import com.github.alexishuf.infer.store.DictionaryGraph;
+import com.github.alexishuf.infer.store.NodeDictionary;
+import com.github.alexishuf.infer.store.TripleTable;
+import com.github.alexishuf.infer.utils.RunStats;
+import com.github.alexishuf.infer.utils.Utils;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.Polyadic;
+import com.google.common.base.Preconditions;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.graph.GraphWrapper;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Forward-chaining materialization of the RDFS and OWL 2 RL rule sets using a dictionary
+ * encoded triple table. See RuleSet for the rules of each profile.
+ */
+@ReasonerName("rl")
+public class RLSplitReasoner implements SplitReasoner {
+    private static Logger logger = LoggerFactory.getLogger(RLSplitReasoner.class);
+    private boolean echoEnabled;
+    private String profile = RuleSet.OWL_RL;
+    private @Nonnull RunStats stats = RunStats.DISABLED;
+
+    @Nonnull
+    @Override
+    public Set<String> getProfiles() {
+        return RuleSet.getProfiles();
+    }
+
+    @Nonnull
+    @Override
+    public String getProfile() {
+        return profile;
+    }
+
+    @Override
+    public void setProfile(String name) throws IllegalArgumentException {
+        if (name == null) name = RuleSet.OWL_RL;
+        Preconditions.checkArgument(RuleSet.getProfiles().contains(name));
+        profile = name;
+    }
+
+    @Override
+    public boolean isEqualityReasoning() {
+        return profile.equals(RuleSet.OWL_RL);
+    }
+
+    @Override
+    public boolean isEchoEnabled() {
+        return echoEnabled;
+    }
+
+    @Override
+    public void setEchoEnabled(boolean enabled) {
+        echoEnabled = enabled;
+    }
+
+    /**
+     * The filter phase is the copy of rows into the output. Rule firings are the number of
+     * new rows derived by each rule.
+     */
+    @Override
+    public void setStats(@Nonnull RunStats stats) {
+        this.stats = stats;
+    }
+
+    @Nonnull
+    @Override
+    public Model apply(@Nonnull Model main) {
+        Materializer m = newMaterializer(main.getGraph());
+        m.addAll(main.getGraph());
+        int explicit = m.getTable().size();
+        int size = run(m, "inference");
+        Model out = ModelFactory.createDefaultModel();
+        copy(m, isEchoEnabled() ? 0 : explicit, size, r -> true, out.getGraph());
+        out.setNsPrefixes(main);
+        return out;
+    }
+
+    /**
+     * Triples are sent as soon as the rule that derived them fires, during the inference
+     * phase. There is no filter phase.
+     */
+    @Override
+    public void apply(@Nonnull Model main, @Nonnull StreamRDF out) {
+        Materializer m = newMaterializer(main.getGraph());
+        m.addAll(main.getGraph());
+        if (isEchoEnabled()) send(m, 0, m.getTable().size(), out);
+        run(m, "inference", out);
+    }
+
+    @Override
+    public void apply(@Nonnull Model inBackground, @Nonnull Model inMain,
+                      @Nonnull Model outBackground, @Nonnull Model outMain) {
+        Materializer m = newMaterializer(inBackground.getGraph());
+        m.addAll(inBackground.getGraph());
+        int bgExplicit = m.getTable().size();
+        int bgEnd = run(m, "bind");
+        copy(m, isEchoEnabled() ? 0 : bgExplicit, bgEnd, r -> true, outBackground.getGraph());
+        outBackground.setNsPrefixes(inBackground);
+
+        m.addAll(inMain.getGraph());
+        int mainExplicit = m.getTable().size();
+        int mainEnd = run(m, "inference");
+        copy(m, isEchoEnabled() ? bgEnd : mainExplicit, mainEnd, r -> true, outMain.getGraph());
+        outMain.setNsPrefixes(inMain);
+        outMain.withDefaultMappings(inBackground);
+    }
+
+    @Override
+    public void apply(@Nonnull Model inBackground, @Nonnull Model inMain,
+                      @Nonnull StreamRDF outBackground, @Nonnull StreamRDF outMain) {
+        Materializer m = newMaterializer(inBackground.getGraph());
+        m.addAll(inBackground.getGraph());
+        if (isEchoEnabled()) send(m, 0, m.getTable().size(), outBackground);
+        int bgEnd = run(m, "bind", outBackground);
+        m.addAll(inMain.getGraph());
+        if (isEchoEnabled()) send(m, bgEnd, m.getTable().size(), outMain);
+        run(m, "inference", outMain);
+    }
+
+    @Nonnull
+    @Override
+    public BoundBackground bindBackground(@Nonnull Model inBackground) {
+        Materializer m = newMaterializer(inBackground.getGraph());
+        m.addAll(inBackground.getGraph());
+        run(m, "bind");
+        return new Background(profile, m.getDictionary(), m.getTable(), inBackground);
+    }
+
+    @Nonnull
+    @Override
+    public BoundBackground loadBackground(@Nonnull Model inBackground, @Nonnull Model closure) {
+        try (RunStats.Phase phase = stats.begin("bind")) {
+            Materializer m = newMaterializer(closure.getGraph());
+            m.addAll(closure.getGraph());
+            m.markProcessed();
+            phase.triples(m.getTable().size());
+            return new Background(profile, m.getDictionary(), m.getTable(), inBackground);
+        }
+    }
+
+    /**
+     * Materializes inLayer on a copy of the table of background, as apply() does, and binds
+     * the resulting table. Nothing below the layer is derived again.
+     */
+    @Nonnull
+    @Override
+    public BoundBackground bindLayer(@Nonnull BoundBackground background,
+                                     @Nonnull Model inLayer) {
+        Preconditions.checkArgument(background instanceof Background
+                && ((Background) background).profile.equals(profile));
+        Background bg = (Background) background;
+        Materializer m = newMaterializer(bg);
+        m.addAll(inLayer.getGraph());
+        run(m, "bind");
+        return new Background(profile, m.getDictionary(), m.getTable(),
+                              Utils.union(bg.input, inLayer));
+    }
+
+    /**
+     * Materializes inMain on a copy of the background table, thus background can be used
+     * again (even concurrently).
+     */
+    @Override
+    public void apply(@Nonnull BoundBackground background, @Nonnull Model inMain,
+                      @Nonnull Model outMain) {
+        Preconditions.checkArgument(background instanceof Background
+                && ((Background) background).profile.equals(profile));
+        Background bg = (Background) background;
+        Materializer m = newMaterializer(bg);
+        int start = m.getTable().size();
+        m.addAll(inMain.getGraph());
+        int explicit = m.getTable().size();
+        int end = run(m, "inference");
+        copy(m, isEchoEnabled() ? start : explicit, end, r -> true, outMain.getGraph());
+        outMain.setNsPrefixes(inMain);
+        outMain.withDefaultMappings(bg.input);
+    }
+
+    @Override
+    public void apply(@Nonnull BoundBackground background, @Nonnull Model inMain,
+                      @Nonnull StreamRDF outMain) {
+        Preconditions.checkArgument(background instanceof Background
+                && ((Background) background).profile.equals(profile));
+        Materializer m = newMaterializer((Background) background);
+        int start = m.getTable().size();
+        m.addAll(inMain.getGraph());
+        if (isEchoEnabled()) send(m, start, m.getTable().size(), outMain);
+        run(m, "inference", outMain);
+    }
+
+    /**
+     * Loads previous over a copy of the background table and maintains it incrementally (see
+     * Materializer.remove()). Blank nodes in previous cannot be matched to those in the
+     * inputs, thus triples of previous with blank nodes are dropped and derived again.
+     */
+    @Override
+    public void update(@Nonnull BoundBackground background, @Nonnull Model inMain,
+                       @Nonnull Model previous, @Nonnull Model added, @Nonnull Model removed,
+                       @Nonnull Model outMain) {
+        Preconditions.checkArgument(background instanceof Background
+                && ((Background) background).profile.equals(profile));
+        Background bg = (Background) background;
+        RunStats.Phase phase = stats.begin("inference");
+        Materializer m = newMaterializer(bg);
+        TripleTable table = m.getTable();
+        int start = table.size();
+        m.addAll(inMain.getGraph());
+        BitSet explicit = new BitSet();
+        explicit.set(start, table.size());
+        boolean dropped = false;
+        ExtendedIterator<Triple> it = previous.getGraph().find();
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                if (t.getSubject().isBlank() || t.getObject().isBlank()) dropped = true;
+                else m.add(t);
+            }
+        } finally {
+            it.close();
+        }
+        m.markProcessed();
+        if (dropped) {
+            NodeDictionary dict = m.getDictionary();
+            m.reprocess(r -> dict.isBlank(table.subject(r)) || dict.isBlank(table.object(r)));
+            m.run();
+        }
+
+        int[] rows = new int[(int) Math.min(removed.size(), Integer.MAX_VALUE)];
+        int count = 0;
+        it = removed.getGraph().find();
+        try {
+            while (it.hasNext()) {
+                int row = m.find(it.next());
+                if (row >= start && explicit.get(row)) {
+                    explicit.clear(row);
+                    rows[count++] = row;
+                }
+            }
+        } finally {
+            it.close();
+        }
+        if (count < rows.length)
+            logger.warn("Ignoring {} removed triples not in the main input or entailed by " +
+                        "the background", rows.length - count);
+        m.remove(Arrays.copyOf(rows, count), r -> r < start || explicit.get(r));
+
+        it = added.getGraph().find();
+        try {
+            while (it.hasNext()) {
+                Triple triple = it.next();
+                m.add(triple);
+                int row = m.find(triple);
+                if (row >= start) explicit.set(row);
+            }
+        } finally {
+            it.close();
+        }
+        int end = m.run();
+        m.drainFirings().forEach(stats::addFirings);
+        phase.triples(end - start).close();
+        copy(m, start, end, r -> isEchoEnabled() || !explicit.get(r), outMain.getGraph());
+        outMain.setNsPrefixes(previous);
+        outMain.setNsPrefixes(inMain);
+        outMain.withDefaultMappings(bg.input);
+    }
+
+    private static class Background implements BoundBackground {
+        final @Nonnull String profile;
+        final @Nonnull NodeDictionary dictionary;
+        final @Nonnull TripleTable table;
+        final @Nonnull Model input, closure;
+
+        Background(@Nonnull String profile, @Nonnull NodeDictionary dictionary,
+                   @Nonnull TripleTable table, @Nonnull Model input) {
+            this.profile = profile;
+            this.dictionary = dictionary;
+            this.table = table;
+            this.input = input;
+            this.closure = ModelFactory.createModelForGraph(new DictionaryGraph(dictionary, table));
+        }
+
+        @Override
+        public @Nonnull Model getInput() {
+            return input;
+        }
+
+        @Override
+        public @Nonnull Model getClosure() {
+            return closure;
+        }
+    }
+
+    /**
+     * Creates a Materializer that shares the dictionary of graph, if it is (or is an union of)
+     * DictionaryGraph(s).
+     */
+    private @Nonnull Materializer newMaterializer(@Nonnull Graph graph) {
+        if (graph instanceof Polyadic && ((Polyadic) graph).getSubGraphs().size() > 0)
+            graph = ((Polyadic) graph).getSubGraphs().get(0);
+        if (graph instanceof GraphWrapper)
+            graph = ((GraphWrapper) graph).get();
+        Materializer m;
+        if (graph instanceof DictionaryGraph) {
+            NodeDictionary dictionary = ((DictionaryGraph) graph).getDictionary();
+            m = new Materializer(profile, dictionary, new TripleTable());
+        } else {
+            m = new Materializer(profile);
+        }
+        if (stats.isRuleFirings()) m.countFirings();
+        return m;
+    }
+
+    /**
+     * Creates a Materializer over copies of the background table, with all rows processed.
+     */
+    private @Nonnull Materializer newMaterializer(@Nonnull Background bg) {
+        Materializer m = new Materializer(profile, bg.dictionary.copy(), bg.table.copy());
+        m.markProcessed();
+        if (stats.isRuleFirings()) m.countFirings();
+        return m;
+    }
+
+    private int run(@Nonnull Materializer m, @Nonnull String phaseName) {
+        return run(m, phaseName, null);
+    }
+
+    /**
+     * Runs m, sending the derived triples to out, if not null.
+     */
+    private int run(@Nonnull Materializer m, @Nonnull String phaseName,
+                    @Nullable StreamRDF out) {
+        int start = m.getTable().size();
+        try (RunStats.Phase phase = stats.begin(phaseName)) {
+            int end = out == null ? m.run() : m.run(r -> out.triple(m.triple(r)));
+            phase.triples(end - start);
+            return end;
+        } finally {
+            m.drainFirings().forEach(stats::addFirings);
+        }
+    }
+
+    /**
+     * Sends rows [from, to) of m to out, except removed rows.
+     */
+    private static void send(@Nonnull Materializer m, int from, int to, @Nonnull StreamRDF out) {
+        for (int r = from; r < to; r++) {
+            if (!m.getTable().isRemoved(r)) out.triple(m.triple(r));
+        }
+    }
+
+    private void copy(@Nonnull Materializer m, int from, int to, @Nonnull IntPredicate filter,
+                      @Nonnull Graph graph) {
+        try (RunStats.Phase phase = stats.begin("filter")) {
+            m.copyTo(from, to, filter, graph);
+            phase.triples(graph.size());
+        }
+    }
+}
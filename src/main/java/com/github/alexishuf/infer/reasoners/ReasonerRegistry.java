@@ -6,27 +6,36 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.NoSuchElementException;
-import java.util.Set;
+import java.util.*;
 
+/**
+ * Reasoners by their @ReasonerName. Implementations are discovered with ServiceLoader (listed
+ * in META-INF/services/com.github.alexishuf.infer.reasoners.SplitReasoner) or registered
+ * explicitly, which takes precedence.
+ */
 public class ReasonerRegistry {
     private static Logger logger = LoggerFactory.getLogger(ReasonerRegistry.class);
-    private static Map<String, Class<? extends SplitReasoner>> map;
+    private static Map<String, Class<? extends SplitReasoner>> map = new HashMap<>();
 
-    public static void register(@Nonnull Class<? extends SplitReasoner> aClass) {
-        map.put(aClass.getAnnotation(ReasonerName.class).value(), aClass);
+    public static synchronized void register(@Nonnull Class<? extends SplitReasoner> aClass) {
+        map.put(getName(aClass), aClass);
     }
 
-    public static @Nonnull Set<String> getNames() {
-        return map.keySet();
+    public static synchronized @Nonnull Set<String> getNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (SplitReasoner reasoner : ServiceLoader.load(SplitReasoner.class))
+            names.add(getName(reasoner.getClass()));
+        names.addAll(map.keySet());
+        return names;
     }
 
-    public static @Nonnull
+    public static synchronized @Nonnull
     SplitReasoner getReasoner(@Nonnull String name) {
         Class<? extends SplitReasoner> aClass = map.getOrDefault(name, null);
         if (aClass == null) {
+            for (SplitReasoner reasoner : ServiceLoader.load(SplitReasoner.class)) {
+                if (getName(reasoner.getClass()).equals(name)) return reasoner;
+            }
             throw  new NoSuchElementException(String.format(
                     "No implementation registered for %s", name));
         }
@@ -42,8 +51,12 @@ public class ReasonerRegistry {
         }
     }
 
-    static {
-        map = new HashMap<>();
-        register(JenaSplitReasoner.class);
+    private static @Nonnull String getName(@Nonnull Class<? extends SplitReasoner> aClass) {
+        ReasonerName annotation = aClass.getAnnotation(ReasonerName.class);
+        if (annotation == null) {
+            throw new IllegalArgumentException(String.format(
+                    "%s has no @ReasonerName", aClass.getName()));
+        }
+        return annotation.value();
     }
 }
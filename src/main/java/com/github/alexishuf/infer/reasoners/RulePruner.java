@@ -0,0 +1,263 @@
+package com.github.alexishuf.infer.reasoners;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.reasoner.Reasoner;
+import org.apache.jena.reasoner.ReasonerException;
+import org.apache.jena.reasoner.TriplePattern;
+import org.apache.jena.reasoner.rulesys.*;
+import org.apache.jena.reasoner.rulesys.impl.OWLRuleTranslationHook;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Selects the rules of a Jena rule reasoner that can ever fire on inputs with a given
+ * Vocabulary, and builds equivalent GenericRuleReasoners with only those rules.
+ *
+ * A rule is kept if all URI predicates of its body, and the URI classes of its rdf:type
+ * body patterns, are used by the input or produced by the heads of kept rules (including
+ * backward rules nested in heads), until a fixpoint. Heads with a variable predicate that is
+ * not bound as a predicate in the body (e.g., inverses) may produce any node of the
+ * RDF/RDFS/OWL triples as predicate, and heads with a variable rdf:type object may produce any
+ * such node as a class. Builtins in heads produce their URI arguments. Removed rules could
+ * never fire, thus the entailments are the same. Pruned reasoners are cached per selection.
+ */
+public final class RulePruner {
+    private static final @Nonnull Map<Class<?>, RulePruner> pruners = new ConcurrentHashMap<>();
+
+    private final @Nonnull List<Rule> rules;
+    private final boolean owlFB;
+    private final @Nonnull Map<BitSet, Reasoner> reasoners = new ConcurrentHashMap<>();
+
+    private RulePruner(@Nonnull List<Rule> rules, boolean owlFB) {
+        this.rules = rules;
+        this.owlFB = owlFB;
+    }
+
+    /**
+     * Gets the pruner for the rules of reasoner, or null if its kind of reasoner is not
+     * supported (only the owl-fb and OWL micro reasoners are).
+     */
+    public static @Nullable RulePruner forReasoner(@Nonnull Reasoner reasoner) {
+        boolean owlFB;
+        if (reasoner.getClass().equals(OWLFBRuleReasoner.class)) owlFB = true;
+        else if (reasoner.getClass().equals(OWLMicroReasoner.class)) owlFB = false;
+        else return null;
+        return pruners.computeIfAbsent(reasoner.getClass(), k ->
+                new RulePruner(((FBRuleReasoner) reasoner).getRules(), owlFB));
+    }
+
+    public int getRuleCount() {
+        return rules.size();
+    }
+
+    /**
+     * Indices of the rules that can fire on inputs with the given vocabulary.
+     */
+    public @Nonnull BitSet select(@Nonnull Vocabulary input) {
+        Vocabulary vocabulary = new Vocabulary().addAll(input);
+        BitSet selected = new BitSet();
+        for (boolean changed = true; changed; ) {
+            changed = false;
+            for (int i = selected.nextClearBit(0); i < rules.size();
+                 i = selected.nextClearBit(i + 1)) {
+                if (canFire(rules.get(i), vocabulary)) {
+                    selected.set(i);
+                    produce(rules.get(i), vocabulary);
+                    changed = true;
+                }
+            }
+            /* nested rules of selected rules may produce more once others were selected */
+            for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1))
+                changed |= produce(rules.get(i), vocabulary);
+        }
+        return selected;
+    }
+
+    /**
+     * A reasoner with the selected rules, configured as the original one. If
+     * derivationLogging is false, the instance is shared.
+     */
+    public @Nonnull Reasoner reasoner(@Nonnull BitSet selection, boolean derivationLogging) {
+        if (!derivationLogging)
+            return reasoners.computeIfAbsent(selection, k -> create(k, false));
+        return create(selection, true);
+    }
+
+    private @Nonnull Reasoner create(@Nonnull BitSet selection, boolean derivationLogging) {
+        List<Rule> selected = new ArrayList<>();
+        for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1))
+            selected.add(rules.get(i));
+        if (owlFB)
+            return new OWLFBPrunedReasoner(selected, null, derivationLogging);
+        /* same configuration as OWLMicroReasoner */
+        GenericRuleReasoner reasoner = new GenericRuleReasoner(selected);
+        reasoner.setMode(GenericRuleReasoner.HYBRID);
+        reasoner.setOWLTranslation(true);
+        reasoner.setTransitiveClosureCaching(true);
+        reasoner.setDerivationLogging(derivationLogging);
+        return reasoner;
+    }
+
+    private static boolean canFire(@Nonnull Rule rule, @Nonnull Vocabulary vocabulary) {
+        for (ClauseEntry entry : rule.getBody()) {
+            if (!(entry instanceof TriplePattern)) continue;
+            TriplePattern pattern = (TriplePattern) entry;
+            Node p = pattern.getPredicate(), o = pattern.getObject();
+            if (p.isURI() && !vocabulary.predicates.contains(p)) return false;
+            if (p.equals(RDF.type.asNode()) && o.isURI() && !vocabulary.types.contains(o))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds to vocabulary what the heads of rule (and of nested rules that can fire) produce.
+     *
+     * @return true iff vocabulary changed
+     */
+    private static boolean produce(@Nonnull Rule rule, @Nonnull Vocabulary vocabulary) {
+        boolean changed = false;
+        for (ClauseEntry entry : rule.getHead()) {
+            if (entry instanceof Functor) {
+                changed |= produce((Functor) entry, vocabulary);
+                continue;
+            }
+            if (entry instanceof Rule) {
+                if (canFire((Rule) entry, vocabulary))
+                    changed |= produce((Rule) entry, vocabulary);
+                continue;
+            }
+            if (!(entry instanceof TriplePattern)) continue;
+            TriplePattern pattern = (TriplePattern) entry;
+            Node s = pattern.getSubject(), p = pattern.getPredicate(), o = pattern.getObject();
+            if (p.isVariable() && !boundAsPredicate(rule, p))
+                changed |= vocabulary.anyNodeIsPredicate();
+            else if (p.isURI())
+                changed |= vocabulary.add(Triple.create(s, p, o));
+            if (p.equals(RDF.type.asNode()) && !o.isConcrete())
+                changed |= vocabulary.anyNodeIsType();
+        }
+        return changed;
+    }
+
+    /**
+     * Builtins in heads, such as listMapAsSubject(?l, rdf:type, ?c), assert triples whose
+     * predicates are among their arguments.
+     */
+    private static boolean produce(@Nonnull Functor functor, @Nonnull Vocabulary vocabulary) {
+        boolean changed = false;
+        if (functor.getName().equals("assertDisjointPairs"))
+            changed = vocabulary.predicates.add(OWL.differentFrom.asNode());
+        for (Node arg : functor.getArgs()) {
+            if (!arg.isURI()) continue;
+            changed |= vocabulary.predicates.add(arg);
+            if (arg.equals(RDF.type.asNode())) changed |= vocabulary.anyNodeIsType();
+        }
+        return changed;
+    }
+
+    private static boolean boundAsPredicate(@Nonnull Rule rule, @Nonnull Node variable) {
+        for (ClauseEntry entry : rule.getBody()) {
+            if (entry instanceof TriplePattern
+                    && ((TriplePattern) entry).getPredicate().equals(variable)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A hybrid GenericRuleReasoner whose bindSchema() also translates OWL constructs
+     * (e.g., owl:intersectionOf) of the schema into rules, as OWLFBRuleReasoner does.
+     */
+    private static class OWLFBPrunedReasoner extends GenericRuleReasoner {
+        OWLFBPrunedReasoner(@Nonnull List<Rule> rules, @Nullable Graph schema,
+                            boolean derivationLogging) {
+            super(rules, schema, null, HYBRID);
+            setOWLTranslation(true);
+            setDerivationLogging(derivationLogging);
+        }
+
+        @Override
+        public Reasoner bindSchema(Graph tbox) throws ReasonerException {
+            if (schemaGraph != null)
+                throw new ReasonerException("Can only bind one schema at a time");
+            FBRuleInfGraph graph = new FBRuleInfGraph(this, rules, getPreload(), tbox);
+            graph.addPreprocessingHook(new OWLRuleTranslationHook());
+            graph.prepare();
+            return new OWLFBPrunedReasoner(rules, graph, recordDerivations);
+        }
+    }
+
+    /**
+     * Predicates, classes (objects of rdf:type) and nodes of RDF/RDFS/OWL triples used by an
+     * input.
+     */
+    public static class Vocabulary {
+        private final @Nonnull Set<Node> predicates = new HashSet<>(), types = new HashSet<>();
+        private final @Nonnull Set<Node> nodes = new HashSet<>();
+        private boolean anyNodeIsPredicate = false, anyNodeIsType = false;
+
+        public @Nonnull Vocabulary addAll(@Nonnull Graph graph) {
+            ExtendedIterator<Triple> it = graph.find();
+            try {
+                while (it.hasNext()) add(it.next());
+            } finally {
+                it.close();
+            }
+            return this;
+        }
+
+        public @Nonnull Vocabulary addAll(@Nonnull Vocabulary other) {
+            predicates.addAll(other.predicates);
+            types.addAll(other.types);
+            nodes.addAll(other.nodes);
+            if (other.anyNodeIsPredicate) anyNodeIsPredicate();
+            if (other.anyNodeIsType) anyNodeIsType();
+            return this;
+        }
+
+        private boolean add(@Nonnull Triple triple) {
+            Node p = triple.getPredicate(), o = triple.getObject();
+            boolean changed = predicates.add(p);
+            if (p.equals(RDF.type.asNode()) && o.isURI()) changed |= types.add(o);
+            String uri = p.getURI();
+            if (uri.startsWith(RDF.getURI()) || uri.startsWith(RDFS.getURI())
+                    || uri.startsWith(OWL.NS)) {
+                changed |= addNode(triple.getSubject());
+                changed |= addNode(o);
+            }
+            return changed;
+        }
+
+        private boolean addNode(@Nonnull Node node) {
+            if (!node.isURI() || !nodes.add(node)) return false;
+            if (anyNodeIsPredicate) predicates.add(node);
+            if (anyNodeIsType) types.add(node);
+            return true;
+        }
+
+        private boolean anyNodeIsType() {
+            if (anyNodeIsType) return false;
+            anyNodeIsType = true;
+            types.addAll(nodes);
+            return true;
+        }
+
+        private boolean anyNodeIsPredicate() {
+            if (anyNodeIsPredicate) return false;
+            anyNodeIsPredicate = true;
+            predicates.addAll(nodes);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.github.alexishuf.infer.reasoners;
+
+import com.github.alexishuf.infer.utils.GraphDifference;
+import com.github.alexishuf.infer.utils.RunStats;
+import com.github.alexishuf.infer.utils.SameAsIndex;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.Union;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import static com.github.alexishuf.infer.utils.Utils.union;
+
+/**
+ * Decorates a SplitReasoner so that it only reasons over one representative of each class of
+ * individuals related by owl:sameAs (see SameAsIndex), instead of every triple being copied
+ * to all aliases. If the reasoner derives new owl:sameAs between representatives, the input
+ * is rewritten again and reasoned again, until no classes are merged.
+ *
+ * Outputs are over representatives and include the inputs, even if echo is disabled, since
+ * the aliases of input triples may be new. expand() replaces the representatives by all
+ * members of their classes, giving the same triples the reasoner would produce without
+ * rewriting, and representatives() only removes the inputs. Models returned by infer() are
+ * already expanded, as are the triples sent to StreamRDFs.
+ */
+public class SameAsRewritingReasoner implements SplitReasoner {
+    private static Logger logger = LoggerFactory.getLogger(SameAsRewritingReasoner.class);
+    private final @Nonnull SplitReasoner delegate;
+    private final @Nonnull Map<Graph, Expansion> expansions =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    private @Nonnull RunStats stats = RunStats.DISABLED;
+    private boolean echoEnabled = false, warned = false;
+
+    public SameAsRewritingReasoner(@Nonnull SplitReasoner delegate) {
+        this.delegate = delegate;
+        echoEnabled = delegate.isEchoEnabled();
+        delegate.setEchoEnabled(true);
+    }
+
+    public @Nonnull SplitReasoner getDelegate() {
+        return delegate;
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getProfiles() {
+        return delegate.getProfiles();
+    }
+
+    @Nonnull
+    @Override
+    public String getProfile() {
+        return delegate.getProfile();
+    }
+
+    @Override
+    public void setProfile(@Nullable String name) throws IllegalArgumentException {
+        delegate.setProfile(name);
+    }
+
+    @Override
+    public boolean isEchoEnabled() {
+        return echoEnabled;
+    }
+
+    @Override
+    public void setEchoEnabled(boolean enabled) {
+        echoEnabled = enabled;
+    }
+
+    @Override
+    public void setStats(@Nonnull RunStats stats) {
+        this.stats = stats;
+        delegate.setStats(stats);
+    }
+
+    @Override
+    public void setPartitions(int partitions) {
+        delegate.setPartitions(partitions);
+    }
+
+    @Override
+    public void setPruneRules(boolean pruneRules) {
+        delegate.setPruneRules(pruneRules);
+    }
+
+    @Override
+    public boolean isEqualityReasoning() {
+        return delegate.isEqualityReasoning();
+    }
+
+    @Nonnull
+    @Override
+    public Model apply(@Nonnull Model main) {
+        return apply(main, echoEnabled);
+    }
+
+    private @Nonnull Model apply(@Nonnull Model main, boolean echo) {
+        SameAsIndex index = new SameAsIndex();
+        addAll(index, main);
+        Model rewritten = rewrite(index, main), out = delegate.apply(rewritten);
+        while (index.merge(out.getGraph()) > 0)
+            out = delegate.apply(rewritten = rewrite(index, main));
+        logMerges(index);
+        expansions.put(out.getGraph(), echo ? new Expansion(index, null, null, null, null)
+                : new Expansion(index, null, main.getGraph(), rewritten.getGraph(), null));
+        return out;
+    }
+
+    /**
+     * Sends the expanded output of apply(main), once complete.
+     */
+    @Override
+    public void apply(@Nonnull Model main, @Nonnull StreamRDF out) {
+        new GraphDifference().apply(expand(apply(main)).getGraph(), out);
+    }
+
+    @Nonnull
+    @Override
+    public Model infer(@Nonnull Model main) {
+        return expand(apply(main, true));
+    }
+
+    @Nonnull
+    @Override
+    public Model infer(@Nonnull BoundBackground background, @Nonnull Model inMain) {
+        Model outMain = ModelFactory.createDefaultModel();
+        apply(background, inMain, outMain, true);
+        Expansion expansion = expansions.get(outMain.getGraph());
+        Model union = ModelFactory.createUnion(outMain, background.getClosure());
+        Model expanded = ModelFactory.createDefaultModel();
+        expanded.setNsPrefixes(inMain);
+        expansion.index.expand(union.getGraph(), null, null, expanded.getGraph());
+        return expanded;
+    }
+
+    @Nonnull
+    @Override
+    public BoundBackground bindBackground(@Nonnull Model inBackground) {
+        SameAsIndex index = new SameAsIndex();
+        addAll(index, inBackground);
+        BoundBackground bound = delegate.bindBackground(rewrite(index, inBackground));
+        while (index.merge(bound.getClosure().getGraph()) > 0)
+            bound = delegate.bindBackground(rewrite(index, inBackground));
+        logMerges(index);
+        return new Bound(inBackground, bound, index);
+    }
+
+    /**
+     * Not supported: a layer may merge individuals of the layers below it, whose closures
+     * would then be over stale representatives.
+     */
+    @Nonnull
+    @Override
+    public BoundBackground bindLayer(@Nonnull BoundBackground background,
+                                     @Nonnull Model inLayer) {
+        throw new UnsupportedOperationException("Layers are not supported with owl:sameAs " +
+                                                "rewriting");
+    }
+
+    @Nonnull
+    @Override
+    public BoundBackground loadBackground(@Nonnull Model inBackground, @Nonnull Model closure) {
+        SameAsIndex index = new SameAsIndex();
+        addAll(index, inBackground);
+        index.merge(closure.getGraph());
+        return new Bound(inBackground,
+                         delegate.loadBackground(rewrite(index, inBackground), closure), index);
+    }
+
+    @Override
+    public void apply(@Nonnull BoundBackground background, @Nonnull Model inMain,
+                      @Nonnull Model outMain) {
+        apply(background, inMain, outMain, echoEnabled);
+    }
+
+    @Override
+    public void apply(@Nonnull BoundBackground background, @Nonnull Model inMain,
+                      @Nonnull StreamRDF outMain) {
+        Model out = ModelFactory.createDefaultModel();
+        apply(background, inMain, out);
+        new GraphDifference().apply(expand(out).getGraph(), outMain);
+    }
+
+    private void apply(@Nonnull BoundBackground background, @Nonnull Model inMain,
+                       @Nonnull Model outMain, boolean echo) {
+        Bound bg = (Bound) background;
+        Graph bgClosure = bg.delegate.getClosure().getGraph();
+        SameAsIndex index = bg.index.copy();
+        addAll(index, inMain);
+        Model rewritten = rewrite(index, inMain), rewrittenBg = bg.delegate.getInput();
+        boolean together = index.changedIn(bg.index, bgClosure);
+        while (!together) {
+            outMain.removeAll();
+            delegate.apply(bg.delegate, rewritten, outMain);
+            if (index.merge(outMain.getGraph()) == 0) break;
+            together = index.changedIn(bg.index, bgClosure);
+            rewritten = rewrite(index, inMain);
+        }
+        if (together) {
+            /* the bound background was rewritten with other representatives */
+            logger.info("owl:sameAs in main merges individuals of the background, reasoning " +
+                        "both together");
+            do {
+                outMain.removeAll();
+                rewrittenBg = rewrite(index, bg.input);
+                outMain.add(delegate.apply(union(rewrittenBg, rewritten = rewrite(index, inMain))));
+            } while (index.merge(outMain.getGraph()) > 0);
+        }
+        logMerges(index);
+        expansions.put(outMain.getGraph(), new Expansion(index, bg.index,
+                echo ? null : new Union(inMain.getGraph(), bg.input.getGraph()),
+                echo ? null : new Union(rewritten.getGraph(), rewrittenBg.getGraph()),
+                together ? bgClosure : null));
+    }
+
+    @Override
+    public void writeBackground(@Nonnull BoundBackground background,
+                                @Nonnull Model outBackground) {
+        Bound bg = (Bound) background;
+        delegate.writeBackground(bg.delegate, outBackground);
+        outBackground.setNsPrefixes(bg.input);
+        expansions.put(outBackground.getGraph(), echoEnabled
+                ? new Expansion(bg.index, null, null, null, null)
+                : new Expansion(bg.index, null, bg.input.getGraph(),
+                                bg.delegate.getInput().getGraph(), null));
+    }
+
+    @Override
+    public void writeBackground(@Nonnull BoundBackground background,
+                                @Nonnull StreamRDF outBackground) {
+        Model out = ModelFactory.createDefaultModel();
+        writeBackground(background, out);
+        new GraphDifference().apply(expand(out).getGraph(), outBackground);
+    }
+
+    /**
+     * A model with the triples of model, which must be an output of this reasoner, with
+     * representatives replaced by all members of their classes. Other models are returned
+     * as they are.
+     */
+    public @Nonnull Model expand(@Nonnull Model model) {
+        Expansion expansion = expansions.get(model.getGraph());
+        if (expansion == null) return model;
+        try (RunStats.Phase phase = stats.begin("same-as-expansion")) {
+            Model expanded = ModelFactory.createDefaultModel();
+            expanded.setNsPrefixes(model);
+            expansion.index.expand(model.getGraph(), expansion.base,
+                                   t -> expansion.excluded(t, expansion.inputs),
+                                   expanded.getGraph());
+            phase.triples(expanded.size());
+            return expanded;
+        }
+    }
+
+    /**
+     * A model with the triples of model, which must be an output of this reasoner, except the
+     * (rewritten) inputs if echo was disabled. Other models are returned as they are.
+     */
+    public @Nonnull Model representatives(@Nonnull Model model) {
+        Expansion expansion = expansions.get(model.getGraph());
+        if (expansion == null) return model;
+        if (expansion.rewrittenInputs == null && expansion.bgClosure == null) return model;
+        Model filtered = ModelFactory.createDefaultModel();
+        filtered.setNsPrefixes(model);
+        ExtendedIterator<Triple> it = model.getGraph().find();
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                if (!expansion.excluded(t, expansion.rewrittenInputs)) filtered.getGraph().add(t);
+            }
+        } finally {
+            it.close();
+        }
+        return filtered;
+    }
+
+    /**
+     * Adds input to index, unless the profile has no equality reasoning, in which case
+     * nothing is merged and inputs are reasoned as they are.
+     */
+    private void addAll(@Nonnull SameAsIndex index, @Nonnull Model input) {
+        if (delegate.isEqualityReasoning()) {
+            index.addAll(input.getGraph());
+        } else if (!warned) {
+            warned = true;
+            logger.warn("Profile {} does not replace individuals related by owl:sameAs, " +
+                        "ignoring --same-as-rewriting", getProfile());
+        }
+    }
+
+    private @Nonnull Model rewrite(@Nonnull SameAsIndex index, @Nonnull Model in) {
+        if (index.getMergeCount() == 0) return in;
+        try (RunStats.Phase phase = stats.begin("same-as-rewrite")) {
+            Model out = ModelFactory.createDefaultModel();
+            out.setNsPrefixes(in);
+            index.rewrite(in.getGraph(), out.getGraph());
+            phase.triples(out.size());
+            return out;
+        }
+    }
+
+    private static void logMerges(@Nonnull SameAsIndex index) {
+        if (index.getMergeCount() > 0)
+            logger.info("Reasoning with {} individuals merged by owl:sameAs",
+                        index.getMergeCount());
+    }
+
+    /**
+     * How to expand an output. inputs and rewrittenInputs are null if echo was enabled.
+     * bgClosure is set if main and background were reasoned together and is over the
+     * representatives of base.
+     */
+    private static class Expansion {
+        final @Nonnull SameAsIndex index;
+        final @Nullable SameAsIndex base;
+        final @Nullable Graph inputs, rewrittenInputs, bgClosure;
+
+        Expansion(@Nonnull SameAsIndex index, @Nullable SameAsIndex base,
+                  @Nullable Graph inputs, @Nullable Graph rewrittenInputs,
+                  @Nullable Graph bgClosure) {
+            this.index = index;
+            this.base = base;
+            this.inputs = inputs;
+            this.rewrittenInputs = rewrittenInputs;
+            this.bgClosure = bgClosure;
+        }
+
+        boolean excluded(@Nonnull Triple t, @Nullable Graph inputs) {
+            if (inputs != null && inputs.contains(t)) return true;
+            return bgClosure != null && base != null
+                    && bgClosure.contains(base.canonical(t.getSubject()), t.getPredicate(),
+                                          base.canonical(t.getObject()));
+        }
+    }
+
+    private static class Bound implements BoundBackground {
+        final @Nonnull Model input;
+        final @Nonnull BoundBackground delegate;
+        final @Nonnull SameAsIndex index;
+
+        Bound(@Nonnull Model input, @Nonnull BoundBackground delegate,
+              @Nonnull SameAsIndex index) {
+            this.input = input;
+            this.delegate = delegate;
+            this.index = index;
+        }
+
+        @Override
+        public @Nonnull Model getInput() {
+            return input;
+        }
+
+        /**
+         * The closure over representatives.
+         */
+        @Override
+        public @Nonnull Model getClosure() {
+            return delegate.getClosure();
+        }
+    }
+}
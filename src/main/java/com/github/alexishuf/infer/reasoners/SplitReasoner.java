@@ -1,7 +1,10 @@
 package com.github.alexishuf.infer.reasoners;
 
+import com.github.alexishuf.infer.utils.GraphDifference;
+import com.github.alexishuf.infer.utils.RunStats;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.system.StreamRDF;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -32,6 +35,33 @@ public interface SplitReasoner {
      */
     void setEchoEnabled(boolean enabled);
 
+    /**
+     * Where to record the bind, inference and filter phases and, if requested, rule firings.
+     * The default implementation records nothing.
+     */
+    default void setStats(@Nonnull RunStats stats) { }
+
+    /**
+     * Maximum number of independent partitions of inMain that apply(BoundBackground, ...)
+     * may reason in parallel. 1 (the default) disables partitioning. Reasoners that do not
+     * support partitioning ignore this.
+     */
+    default void setPartitions(int partitions) { }
+
+    /**
+     * If true, rule-based reasoners only use the rules that can fire on the vocabulary of
+     * the inputs. Default is false. Reasoners that do not support pruning ignore this.
+     */
+    default void setPruneRules(boolean pruneRules) { }
+
+    /**
+     * Whether the current profile replaces individuals related by owl:sameAs in all triples.
+     * Default is false.
+     */
+    default boolean isEqualityReasoning() {
+        return false;
+    }
+
     /**
      * Places all inferences in the returned model.
      * @param main Source input model
@@ -39,6 +69,45 @@ public interface SplitReasoner {
      */
     @Nonnull Model apply(@Nonnull Model main);
 
+    /**
+     * Same as apply(main), but sends the inferences to out as they are derived, instead of
+     * collecting them in a model. Only out.triple() is called: callers start and finish out
+     * and send prefixes. The default implementation sends the model returned by apply().
+     */
+    default void apply(@Nonnull Model main, @Nonnull StreamRDF out) {
+        new GraphDifference().apply(apply(main).getGraph(), out);
+    }
+
+    /**
+     * A model with main and all triples it entails, for querying. Reasoners may compute
+     * entailments on demand, as the model is queried. The echo flag is ignored. The default
+     * implementation materializes all entailments with apply().
+     */
+    default @Nonnull Model infer(@Nonnull Model main) {
+        boolean echo = isEchoEnabled();
+        setEchoEnabled(true);
+        try {
+            return apply(main);
+        } finally {
+            setEchoEnabled(echo);
+        }
+    }
+
+    /**
+     * Same as infer(Model), but for the union of a bound background and inMain.
+     */
+    default @Nonnull Model infer(@Nonnull BoundBackground background, @Nonnull Model inMain) {
+        boolean echo = isEchoEnabled();
+        setEchoEnabled(true);
+        try {
+            Model outMain = ModelFactory.createDefaultModel();
+            apply(background, inMain, outMain);
+            return ModelFactory.createUnion(outMain, background.getClosure());
+        } finally {
+            setEchoEnabled(echo);
+        }
+    }
+
     /**
      * Output inferences, split into "background" and "main". This obeys the echo flag.
      *
@@ -49,9 +118,140 @@ public interface SplitReasoner {
      *                and inMain that were not included in outBackground.
      * @see SplitReasoner
      */
-    void apply(@Nonnull Model inBackground, @Nonnull Model inMain, @Nonnull Model outBackground,
+    default void apply(@Nonnull Model inBackground, @Nonnull Model inMain,
+                       @Nonnull Model outBackground, @Nonnull Model outMain) {
+        BoundBackground background = bindBackground(inBackground);
+        writeBackground(background, outBackground);
+        apply(background, inMain, outMain);
+    }
+
+    /**
+     * Materializes the background, so that it can be reused with several main models.
+     */
+    @Nonnull BoundBackground bindBackground(@Nonnull Model inBackground);
+
+    /**
+     * Same as bindBackground(), but uses a closure previously obtained from
+     * BoundBackground.getClosure() (with the same reasoner, profile and inBackground) instead
+     * of materializing the background again.
+     */
+    @Nonnull BoundBackground loadBackground(@Nonnull Model inBackground, @Nonnull Model closure);
+
+    /**
+     * Stacks a layer on top of a bound background (which may itself be a stack of layers),
+     * giving a BoundBackground for the union of their inputs. Only the triples entailed by
+     * the layer that are not in the closure of background are computed, with
+     * apply(background, inLayer, ...). The default implementation then loadBackground()s the
+     * union of the inputs with the union of the closures, thus a reasoner that binds its
+     * input again in loadBackground() does so for every layer. Reasoners that can extend
+     * a bound background in place should override this.
+     *
+     * @param background A BoundBackground created by this reasoner.
+     * @param inLayer Input triples of the layer, will not be modified.
+     */
+    default @Nonnull BoundBackground bindLayer(@Nonnull BoundBackground background,
+                                               @Nonnull Model inLayer) {
+        Model added = ModelFactory.createDefaultModel();
+        boolean echo = isEchoEnabled();
+        setEchoEnabled(true);
+        try {
+            apply(background, inLayer, added);
+        } finally {
+            setEchoEnabled(echo);
+        }
+        return loadBackground(ModelFactory.createUnion(background.getInput(), inLayer),
+                              ModelFactory.createUnion(background.getClosure(), added));
+    }
+
+    /**
+     * Outputs into outLayer the triples of the closure of layer (obtained with bindLayer())
+     * that are not in the closure of the background below it. This obeys the echo flag.
+     */
+    default void writeLayer(@Nonnull BoundBackground below, @Nonnull BoundBackground layer,
+                            @Nonnull Model inLayer, @Nonnull Model outLayer) {
+        GraphDifference difference = new GraphDifference().minus(below.getClosure().getGraph());
+        if (!isEchoEnabled()) difference.minus(inLayer.getGraph());
+        difference.apply(layer.getClosure().getGraph(), outLayer.getGraph());
+        outLayer.setNsPrefixes(inLayer).withDefaultMappings(below.getInput());
+    }
+
+    /**
+     * Outputs into outMain the triples inferred from the union of background and inMain that
+     * are not in the background closure. This obeys the echo flag.
+     *
+     * @param background A BoundBackground created by this reasoner.
+     */
+    void apply(@Nonnull BoundBackground background, @Nonnull Model inMain,
                @Nonnull Model outMain);
 
+    /**
+     * Same as apply(background, inMain, outMain), but sends the inferences to outMain as
+     * apply(Model, StreamRDF) does.
+     */
+    default void apply(@Nonnull BoundBackground background, @Nonnull Model inMain,
+                       @Nonnull StreamRDF outMain) {
+        Model out = ModelFactory.createDefaultModel();
+        apply(background, inMain, out);
+        new GraphDifference().apply(out.getGraph(), outMain);
+    }
+
+    /**
+     * Same as apply(inBackground, inMain, outBackground, outMain), but sends the inferences
+     * to the streams as apply(Model, StreamRDF) does. Background triples are all sent before
+     * the first main triple.
+     */
+    default void apply(@Nonnull Model inBackground, @Nonnull Model inMain,
+                       @Nonnull StreamRDF outBackground, @Nonnull StreamRDF outMain) {
+        BoundBackground background = bindBackground(inBackground);
+        writeBackground(background, outBackground);
+        apply(background, inMain, outMain);
+    }
+
+    /**
+     * Updates the outMain of a previous apply(background, inMain, outMain) after some triples
+     * were added to and removed from inMain. The result is the same as calling apply() with
+     * the changed inMain, but implementations may reuse previous to avoid reasoning from
+     * scratch. The default implementation does exactly that call.
+     *
+     * @param background The BoundBackground (or an equivalent) used to produce previous.
+     * @param inMain The main triples used to produce previous (i.e., before the changes).
+     * @param previous Result of the previous apply(), with the same echo setting.
+     * @param added Triples added to inMain.
+     * @param removed Triples removed from inMain.
+     * @param outMain Receives the updated result.
+     */
+    default void update(@Nonnull BoundBackground background, @Nonnull Model inMain,
+                        @Nonnull Model previous, @Nonnull Model added, @Nonnull Model removed,
+                        @Nonnull Model outMain) {
+        Model changed = ModelFactory.createDefaultModel();
+        new GraphDifference().minus(removed.getGraph()).apply(inMain.getGraph(),
+                                                              changed.getGraph());
+        changed.add(added).setNsPrefixes(inMain);
+        apply(background, changed, outMain);
+    }
+
+    /**
+     * Outputs the background inferences (or the whole closure, if echo is enabled) into
+     * outBackground.
+     */
+    default void writeBackground(@Nonnull BoundBackground background,
+                                 @Nonnull Model outBackground) {
+        GraphDifference difference = new GraphDifference();
+        if (!isEchoEnabled()) difference.minus(background.getInput().getGraph());
+        difference.apply(background.getClosure().getGraph(), outBackground.getGraph());
+        outBackground.setNsPrefixes(background.getInput());
+    }
+
+    /**
+     * Same as writeBackground(background, Model), but sends the triples to outBackground.
+     */
+    default void writeBackground(@Nonnull BoundBackground background,
+                                 @Nonnull StreamRDF outBackground) {
+        GraphDifference difference = new GraphDifference();
+        if (!isEchoEnabled()) difference.minus(background.getInput().getGraph());
+        difference.apply(background.getClosure().getGraph(), outBackground);
+    }
+
     default  @Nonnull Model apply(@Nonnull Model inBackground, @Nonnull Model inMain,
                                 @Nonnull Model outBackground) {
         Model outMain = ModelFactory.createDefaultModel();
@@ -0,0 +1,161 @@
+package com.github.alexishuf.infer.reasoners.hierarchy;
+
+import com.github.alexishuf.infer.store.LongIntHashMap;
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Reflexive-transitive closure of a relation (e.g., rdfs:subClassOf) over int node ids (e.g.,
+ * from a NodeDictionary).
+ *
+ * close() condenses strongly connected components (iterative Tarjan) and computes the
+ * reachable nodes of each component as a BitSet, visiting each edge once. Components are
+ * completed in reverse topological order, thus each BitSet is the union of the already
+ * computed BitSets of its successors. Nodes get dense local indices in that order, so that
+ * roots (e.g., owl:Thing) have the lowest indices and BitSets stay short. Not thread-safe.
+ */
+public final class Hierarchy {
+    private final @Nonnull LongIntHashMap locals = new LongIntHashMap(64);
+    private int[] nodes = new int[16]; // local -> node
+    private int size = 0, closedSize = -1;
+    private int[] from = new int[16], to = new int[16];
+    private int edges = 0;
+    private BitSet[] reach; // by local index, shared by members of a component
+
+    /**
+     * Adds the pair (sub, sup) to the relation. Must be called before close().
+     */
+    public void add(int sub, int sup) {
+        Preconditions.checkState(closedSize < 0, "Already closed");
+        if (edges == from.length) {
+            from = Arrays.copyOf(from, edges * 2);
+            to = Arrays.copyOf(to, edges * 2);
+        }
+        from[edges] = local(sub);
+        to[edges++] = local(sup);
+    }
+
+    /**
+     * Gets the local index of node, assigning one if needed. Nodes first seen after close()
+     * only reach themselves.
+     */
+    public int local(int node) {
+        int local = locals.get(node, -1);
+        if (local < 0) {
+            if (size == nodes.length) nodes = Arrays.copyOf(nodes, size * 2);
+            nodes[size] = node;
+            locals.put(node, local = size++);
+        }
+        return local;
+    }
+
+    /**
+     * Local index of node or -1 if node was never seen.
+     */
+    public int find(int node) {
+        return locals.get(node, -1);
+    }
+
+    public int node(int local) {
+        return nodes[local];
+    }
+
+    /**
+     * Number of nodes in the relation, which are the local indices [0, size()) after close().
+     */
+    public int size() {
+        return closedSize < 0 ? size : closedSize;
+    }
+
+    /**
+     * Sets in target the local indices of all nodes reachable from local, including itself.
+     */
+    public void reach(int local, @Nonnull BitSet target) {
+        Preconditions.checkState(closedSize >= 0, "Not closed");
+        if (local < closedSize) target.or(reach[local]);
+        else                    target.set(local);
+    }
+
+    /**
+     * Computes the closure and renumbers local indices. Edges may no longer be added.
+     */
+    public void close() {
+        Preconditions.checkState(closedSize < 0, "Already closed");
+        int n = size;
+        int[] start = new int[n + 1], adjacency = new int[edges];
+        for (int e = 0; e < edges; e++) ++start[from[e] + 1];
+        for (int i = 0; i < n; i++) start[i + 1] += start[i];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int e = 0; e < edges; e++) adjacency[fill[from[e]]++] = to[e];
+        from = to = null;
+
+        int[] order = new int[n], low = new int[n], component = new int[n];
+        int[] stack = new int[n], calls = new int[n], next = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(order, -1);
+        int counter = 0, stackSize = 0, renumbered = 0;
+        int[] renumber = new int[n];
+        BitSet[] componentReach = new BitSet[n];
+        int components = 0;
+        for (int root = 0; root < n; root++) {
+            if (order[root] >= 0) continue;
+            int depth = 0;
+            calls[depth++] = root;
+            order[root] = low[root] = counter++;
+            next[root] = start[root];
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            while (depth > 0) {
+                int v = calls[depth - 1];
+                if (next[v] < start[v + 1]) {
+                    int w = adjacency[next[v]++];
+                    if (order[w] < 0) {
+                        order[w] = low[w] = counter++;
+                        next[w] = start[w];
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        calls[depth++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                    continue;
+                }
+                if (--depth > 0) low[calls[depth - 1]] = Math.min(low[calls[depth - 1]], low[v]);
+                if (low[v] != order[v]) continue;
+                /* v is the root of a component, whose successors are all completed */
+                BitSet bits = new BitSet();
+                int c = components++, top = stackSize;
+                do {
+                    int m = stack[--top];
+                    onStack[m] = false;
+                    component[m] = c;
+                    renumber[m] = renumbered++;
+                    bits.set(renumber[m]);
+                } while (stack[top] != v);
+                for (int i = top; i < stackSize; i++) {
+                    int m = stack[i];
+                    for (int j = start[m]; j < start[m + 1]; j++) {
+                        int s = component[adjacency[j]];
+                        if (s != c) bits.or(componentReach[s]);
+                    }
+                }
+                stackSize = top;
+                componentReach[c] = bits;
+            }
+        }
+
+        int[] oldNodes = nodes;
+        nodes = new int[Math.max(16, n)];
+        reach = new BitSet[n];
+        for (int old = 0; old < n; old++) {
+            int local = renumber[old];
+            nodes[local] = oldNodes[old];
+            locals.put(oldNodes[old], local);
+            reach[local] = componentReach[component[old]];
+        }
+        closedSize = n;
+    }
+}
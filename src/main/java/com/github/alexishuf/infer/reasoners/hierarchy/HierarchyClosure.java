@@ -0,0 +1,333 @@
+package com.github.alexishuf.infer.reasoners.hierarchy;
+
+import com.github.alexishuf.infer.store.NodeDictionary;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static java.util.Arrays.asList;
+import static org.apache.jena.graph.Node.ANY;
+
+/**
+ * Specialized materialization of the trans and rdfs profiles of Jena's reasoners.
+ *
+ * trans is the reflexive-transitive closure of rdfs:subClassOf and rdfs:subPropertyOf, which
+ * is computed with a Hierarchy for each property.
+ *
+ * For rdfs, only the schema triples (see isSchema()) trigger the forward rules and the
+ * transitive closure of Jena's reasoner, which also decide how RDF(S) vocabulary terms are
+ * treated. Thus, Jena is only applied to the schema triples. The remaining (instance) triples
+ * only reach Jena's backward rules (rdfs2, rdfs3, rdfs6 and rdfs9), which propagate properties
+ * and types along the hierarchies of the schema closure. rdfs() does that in one pass over
+ * the instance triples, collecting the direct types of each node, and one pass over the
+ * nodes, expanding their types with the BitSets of a Hierarchy.
+ *
+ * Jena's transitive closure misses some paths through cycles, depending on the order in
+ * which the triples reach it (e.g., E sub A, A sub B, B sub A, B sub D gives E sub D only if
+ * E sub A comes first). Both profiles output the complete closure of the hierarchies instead,
+ * which is the output of Jena's reasoners in the orders they handle.
+ */
+public final class HierarchyClosure {
+    private static final @Nonnull Set<Node> META = new HashSet<>(asList(
+            RDF.type.asNode(), RDFS.subClassOf.asNode(), RDFS.subPropertyOf.asNode(),
+            RDFS.domain.asNode(), RDFS.range.asNode()));
+    private static final @Nonnull Set<Node> FORWARD_TYPES = new HashSet<>(asList(
+            RDFS.Class.asNode(), RDF.Property.asNode(),
+            RDFS.ContainerMembershipProperty.asNode()));
+
+    private final boolean rdfs;
+
+    /**
+     * @param rdfs if true, implements the rdfs profile, else the trans profile.
+     */
+    public HierarchyClosure(boolean rdfs) {
+        this.rdfs = rdfs;
+    }
+
+    public boolean isRDFS() {
+        return rdfs;
+    }
+
+    /**
+     * Whether the triple may be a premise of rules other than type and property propagation.
+     */
+    public boolean isSchema(@Nonnull Triple triple) {
+        Node p = triple.getPredicate();
+        if (p.equals(RDFS.subClassOf.asNode()) || p.equals(RDFS.subPropertyOf.asNode()))
+            return true;
+        if (!rdfs) return false;
+        return p.equals(RDFS.domain.asNode()) || p.equals(RDFS.range.asNode())
+                || (p.equals(RDF.type.asNode()) && FORWARD_TYPES.contains(triple.getObject()));
+    }
+
+    /**
+     * A new graph with the schema triples of graph.
+     */
+    public @Nonnull Graph schema(@Nonnull Graph graph) {
+        Graph schema = GraphFactory.createDefaultGraph();
+        List<Triple> patterns = new ArrayList<>();
+        patterns.add(Triple.create(ANY, RDFS.subClassOf.asNode(), ANY));
+        patterns.add(Triple.create(ANY, RDFS.subPropertyOf.asNode(), ANY));
+        if (rdfs) {
+            patterns.add(Triple.create(ANY, RDFS.domain.asNode(), ANY));
+            patterns.add(Triple.create(ANY, RDFS.range.asNode(), ANY));
+            for (Node type : FORWARD_TYPES)
+                patterns.add(Triple.create(ANY, RDF.type.asNode(), type));
+        }
+        for (Triple pattern : patterns) {
+            ExtendedIterator<Triple> it = graph.find(pattern);
+            try {
+                while (it.hasNext()) schema.add(it.next());
+            } finally {
+                it.close();
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Whether the schema (or schema closure, for rdfs) in graphs is handled by trans() or
+     * rdfs(). Meta-modeling, such as sub-properties of rdfs:subClassOf, or literals in the
+     * hierarchies is left to Jena.
+     */
+    public boolean supports(@Nonnull Collection<Graph> graphs) {
+        for (Graph graph : graphs) {
+            ExtendedIterator<Triple> it = graph.find(ANY, RDFS.subPropertyOf.asNode(), ANY);
+            try {
+                while (it.hasNext()) {
+                    Triple t = it.next();
+                    if (t.getObject().isLiteral()) return false;
+                    if (META.contains(t.getObject()) && !t.getSubject().equals(t.getObject()))
+                        return false;
+                }
+            } finally {
+                it.close();
+            }
+            for (Node p : asList(RDFS.subClassOf.asNode(), RDFS.domain.asNode(),
+                                 RDFS.range.asNode())) {
+                if (!graph.find(ANY, p, ANY).filterKeep(t -> t.getObject().isLiteral())
+                          .toList().isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds to out the reflexive-transitive closures of rdfs:subClassOf and rdfs:subPropertyOf
+     * over the union of graphs.
+     */
+    public void trans(@Nonnull Collection<Graph> graphs, @Nonnull Graph out) {
+        NodeDictionary dictionary = new NodeDictionary();
+        for (Node predicate : asList(RDFS.subClassOf.asNode(), RDFS.subPropertyOf.asNode())) {
+            Hierarchy hierarchy = hierarchy(dictionary, graphs, predicate);
+            closure(dictionary, hierarchy, predicate, n -> false, out);
+        }
+    }
+
+    /**
+     * Adds to out the triples entailed by the instance (i.e., non-schema) triples of data
+     * under the rdfs profile.
+     *
+     * @param schemaClosure Jena's rdfs closure of (at least) the schema triples of data.
+     */
+    public void rdfs(@Nonnull Graph schemaClosure, @Nonnull Graph data, @Nonnull Graph out) {
+        Propagation propagation = new Propagation(schemaClosure);
+        propagation.close(out);
+        propagation.run(data, out);
+    }
+
+    /**
+     * Adds to out the pairs of the reflexive-transitive closure of hierarchy, except for
+     * subjects accepted by skip.
+     */
+    private static void closure(@Nonnull NodeDictionary dictionary,
+                                @Nonnull Hierarchy hierarchy, @Nonnull Node predicate,
+                                @Nonnull Predicate<Node> skip, @Nonnull Graph out) {
+        BitSet reach = new BitSet();
+        for (int i = 0; i < hierarchy.size(); i++) {
+            Node subject = dictionary.get(hierarchy.node(i));
+            if (skip.test(subject)) continue;
+            reach.clear();
+            hierarchy.reach(i, reach);
+            for (int j = reach.nextSetBit(0); j >= 0; j = reach.nextSetBit(j + 1))
+                out.add(Triple.create(subject, predicate, dictionary.get(hierarchy.node(j))));
+        }
+    }
+
+    private static @Nonnull Hierarchy hierarchy(@Nonnull NodeDictionary dictionary,
+                                                @Nonnull Collection<Graph> graphs,
+                                                @Nonnull Node predicate) {
+        Hierarchy hierarchy = new Hierarchy();
+        for (Graph graph : graphs) {
+            ExtendedIterator<Triple> it = graph.find(ANY, predicate, ANY);
+            try {
+                while (it.hasNext()) {
+                    Triple t = it.next();
+                    hierarchy.add(dictionary.intern(t.getSubject()),
+                                  dictionary.intern(t.getObject()));
+                }
+            } finally {
+                it.close();
+            }
+        }
+        hierarchy.close();
+        return hierarchy;
+    }
+
+    private static @Nonnull Map<Node, List<Node>> objects(@Nonnull Graph graph,
+                                                          @Nonnull Node predicate) {
+        Map<Node, List<Node>> map = new HashMap<>();
+        ExtendedIterator<Triple> it = graph.find(ANY, predicate, ANY);
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                map.computeIfAbsent(t.getSubject(), k -> new ArrayList<>()).add(t.getObject());
+            }
+        } finally {
+            it.close();
+        }
+        return map;
+    }
+
+    /**
+     * Property and type propagation (rdfs2, rdfs3, rdfs6, rdfs9) for one schema closure.
+     */
+    private class Propagation {
+        private final @Nonnull NodeDictionary dictionary = new NodeDictionary();
+        private final @Nonnull Hierarchy classes, superProperties;
+        private final @Nonnull Map<Node, List<Node>> domains, ranges;
+        private final @Nonnull Map<Node, Property> properties = new HashMap<>();
+        private final @Nonnull Map<Node, int[]> seeds = new HashMap<>(); // [size, class...]
+
+        Propagation(@Nonnull Graph schemaClosure) {
+            List<Graph> graphs = Collections.singletonList(schemaClosure);
+            classes = hierarchy(dictionary, graphs, RDFS.subClassOf.asNode());
+            superProperties = hierarchy(dictionary, graphs, RDFS.subPropertyOf.asNode());
+            domains = objects(schemaClosure, RDFS.domain.asNode());
+            ranges = objects(schemaClosure, RDFS.range.asNode());
+        }
+
+        /**
+         * Adds to out the hierarchies of the schema closure, which Jena may not complete.
+         * The RDF and RDFS vocabulary is left as Jena's axioms and rules describe it.
+         */
+        void close(@Nonnull Graph out) {
+            Predicate<Node> vocabulary = n -> n.isURI() && (n.getURI().startsWith(RDF.getURI())
+                    || n.getURI().startsWith(RDFS.getURI()));
+            closure(dictionary, classes, RDFS.subClassOf.asNode(), vocabulary, out);
+            closure(dictionary, superProperties, RDFS.subPropertyOf.asNode(), vocabulary, out);
+        }
+
+        void run(@Nonnull Graph data, @Nonnull Graph out) {
+            Node type = RDF.type.asNode();
+            ExtendedIterator<Triple> it = data.find();
+            try {
+                while (it.hasNext()) {
+                    Triple t = it.next();
+                    if (isSchema(t)) continue;
+                    Node s = t.getSubject(), o = t.getObject();
+                    Property property = property(t.getPredicate());
+                    for (Node q : property.supers) out.add(Triple.create(s, q, o));
+                    if (t.getPredicate().equals(type) && !o.isLiteral())
+                        seed(s, classes.local(dictionary.intern(o)));
+                    for (int c : property.domains) seed(s, c);
+                    if (!o.isLiteral()) {
+                        for (int c : property.ranges) seed(o, c);
+                    }
+                }
+            } finally {
+                it.close();
+            }
+
+            /* every (x rdf:type c) entails the domains of rdf:type for x and its ranges for c */
+            Property typeProperty = property(type);
+            BitSet typeDomains = new BitSet(), typeRanges = new BitSet();
+            for (int c : typeProperty.domains) classes.reach(c, typeDomains);
+            for (int c : typeProperty.ranges) classes.reach(c, typeRanges);
+            BitSet types = new BitSet(), used = new BitSet();
+            for (Map.Entry<Node, int[]> e : seeds.entrySet()) {
+                int[] list = e.getValue();
+                types.clear();
+                for (int i = 1; i <= list[0]; i++) classes.reach(list[i], types);
+                if (!types.isEmpty()) types.or(typeDomains);
+                add(out, e.getKey(), types);
+                used.or(types);
+            }
+            if (!typeRanges.isEmpty()) {
+                typeRanges.or(typeDomains);
+                used.or(typeRanges);
+                for (int c = used.nextSetBit(0); c >= 0; c = used.nextSetBit(c + 1))
+                    add(out, dictionary.get(classes.node(c)), typeRanges);
+            }
+        }
+
+        private void add(@Nonnull Graph out, @Nonnull Node subject, @Nonnull BitSet types) {
+            Node type = RDF.type.asNode();
+            for (int c = types.nextSetBit(0); c >= 0; c = types.nextSetBit(c + 1))
+                out.add(Triple.create(subject, type, dictionary.get(classes.node(c))));
+        }
+
+        private void seed(@Nonnull Node node, int c) {
+            int[] list = seeds.get(node);
+            if (list == null) {
+                seeds.put(node, list = new int[3]);
+            } else {
+                for (int i = 1; i <= list[0]; i++) {
+                    if (list[i] == c) return;
+                }
+                if (list[0] + 1 == list.length)
+                    seeds.put(node, list = Arrays.copyOf(list, list.length * 2));
+            }
+            list[++list[0]] = c;
+        }
+
+        private @Nonnull Property property(@Nonnull Node predicate) {
+            Property property = properties.get(predicate);
+            if (property == null) {
+                List<Node> all = new ArrayList<>();
+                all.add(predicate);
+                int local = superProperties.local(dictionary.intern(predicate));
+                BitSet reach = new BitSet();
+                superProperties.reach(local, reach);
+                for (int i = reach.nextSetBit(0); i >= 0; i = reach.nextSetBit(i + 1)) {
+                    if (i != local) all.add(dictionary.get(superProperties.node(i)));
+                }
+                property = new Property(all.subList(1, all.size()).toArray(new Node[0]),
+                                        classes(all, domains), classes(all, ranges));
+                properties.put(predicate, property);
+            }
+            return property;
+        }
+
+        private @Nonnull int[] classes(@Nonnull List<Node> properties,
+                                       @Nonnull Map<Node, List<Node>> map) {
+            Set<Integer> set = new LinkedHashSet<>();
+            for (Node p : properties) {
+                for (Node c : map.getOrDefault(p, Collections.emptyList()))
+                    set.add(classes.local(dictionary.intern(c)));
+            }
+            return set.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    private static class Property {
+        final @Nonnull Node[] supers;
+        final @Nonnull int[] domains, ranges;
+
+        Property(@Nonnull Node[] supers, @Nonnull int[] domains, @Nonnull int[] ranges) {
+            this.supers = supers;
+            this.domains = domains;
+            this.ranges = ranges;
+        }
+    }
+}
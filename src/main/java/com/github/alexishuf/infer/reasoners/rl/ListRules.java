@@ -0,0 +1,384 @@
+package com.github.alexishuf.infer.reasoners.rl;
+
+import com.github.alexishuf.infer.store.NodeDictionary;
+import com.github.alexishuf.infer.store.TripleTable;
+import org.apache.jena.graph.Node;
+import org.apache.jena.vocabulary.OWL2;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import static com.github.alexishuf.infer.store.TripleTable.ANY;
+import static com.github.alexishuf.infer.store.TripleTable.NONE;
+
+/**
+ * OWL 2 RL rules whose bodies refer to RDF lists, which cannot be written as a PatternRule.
+ */
+final class ListRules {
+    private static final int MAX_LIST_LENGTH = 4096;
+
+    private static abstract class ListRule extends Rule {
+        final int first, rest, nil, type, sameAs;
+
+        ListRule(@Nonnull String name, @Nonnull NodeDictionary dictionary) {
+            super(name);
+            first = dictionary.intern(RDF.first.asNode());
+            rest = dictionary.intern(RDF.rest.asNode());
+            nil = dictionary.intern(RDF.nil.asNode());
+            type = dictionary.intern(RDF.type.asNode());
+            sameAs = dictionary.intern(OWL2.sameAs.asNode());
+        }
+
+        /**
+         * Elements of the list starting at head or null if it is not a well-formed list.
+         */
+        @Nullable int[] members(@Nonnull TripleTable table, int head) {
+            int[] members = new int[4];
+            int size = 0;
+            for (int cell = head; cell != nil; ) {
+                int f = table.first(cell, first, ANY), r = table.first(cell, rest, ANY);
+                if (f == NONE || r == NONE || size == MAX_LIST_LENGTH) return null;
+                if (size == members.length) members = Arrays.copyOf(members, size * 2);
+                members[size++] = table.object(f);
+                cell = table.object(r);
+            }
+            return Arrays.copyOf(members, size);
+        }
+
+        /**
+         * Calls consumer with the head of every list that has member as an element.
+         */
+        void heads(@Nonnull TripleTable table, int member, @Nonnull IntConsumer consumer) {
+            for (int r = table.first(ANY, first, member); r != NONE;
+                 r = table.next(r, ANY, first, member)) {
+                headsFrom(table, table.subject(r), 0, consumer);
+            }
+        }
+
+        private void headsFrom(@Nonnull TripleTable table, int cell, int depth,
+                               @Nonnull IntConsumer consumer) {
+            int r = table.first(ANY, rest, cell);
+            if (r == NONE) consumer.accept(cell);
+            for (; r != NONE && depth < MAX_LIST_LENGTH; r = table.next(r, ANY, rest, cell))
+                headsFrom(table, table.subject(r), depth + 1, consumer);
+        }
+
+        /**
+         * Whether subject is an instance of all classes.
+         */
+        boolean hasTypes(@Nonnull TripleTable table, int subject, @Nonnull int[] classes) {
+            for (int c : classes) {
+                if (!table.contains(subject, type, c)) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * scm-int, scm-uni and cls-oo: a conclusion for each member of the list.
+     */
+    static final class EachMember extends ListRule {
+        static final int SUBCLASS = 0, SUPERCLASS = 1, INSTANCE = 2;
+        private final int predicate, mode, subClassOf;
+        private final int[] triggers;
+
+        EachMember(@Nonnull String name, @Nonnull NodeDictionary dictionary,
+                   @Nonnull Node predicate, int mode) {
+            super(name, dictionary);
+            this.predicate = dictionary.intern(predicate);
+            this.mode = mode;
+            this.subClassOf = dictionary.intern(RDFS.subClassOf.asNode());
+            this.triggers = new int[]{this.predicate};
+        }
+
+        @Override
+        @Nonnull int[] triggers() {
+            return triggers;
+        }
+
+        @Override
+        boolean subjectOutsideTriggers() {
+            return mode != SUBCLASS;
+        }
+
+        @Override
+        void fire(int trigger, int s, int p, int o, @Nonnull Materializer m) {
+            int[] members = members(m.getTable(), o);
+            if (members == null) return;
+            for (int member : members) {
+                if      (mode == SUBCLASS)   m.derive(this, s, subClassOf, member);
+                else if (mode == SUPERCLASS) m.derive(this, member, subClassOf, s);
+                else                         m.derive(this, member, type, s);
+            }
+        }
+    }
+
+    /**
+     * cls-int1: instances of all classes in an intersection are instances of it.
+     */
+    static final class IntersectionMembership extends ListRule {
+        private final int intersectionOf;
+        private final int[] triggers;
+
+        IntersectionMembership(@Nonnull NodeDictionary dictionary) {
+            super("cls-int1", dictionary);
+            intersectionOf = dictionary.intern(OWL2.intersectionOf.asNode());
+            triggers = new int[]{intersectionOf, type};
+        }
+
+        @Override
+        @Nonnull int[] triggers() {
+            return triggers;
+        }
+
+        @Override
+        void fire(int trigger, int s, int p, int o, @Nonnull Materializer m) {
+            TripleTable table = m.getTable();
+            if (trigger == 0) {
+                int[] classes = members(table, o);
+                if (classes == null || classes.length == 0) return;
+                for (int r = table.first(ANY, type, classes[0]); r != NONE;
+                     r = table.next(r, ANY, type, classes[0])) {
+                    if (hasTypes(table, table.subject(r), classes))
+                        m.derive(this, table.subject(r), type, s);
+                }
+            } else {
+                heads(table, o, head -> {
+                    int[] classes = null;
+                    for (int r = table.first(ANY, intersectionOf, head); r != NONE;
+                         r = table.next(r, ANY, intersectionOf, head)) {
+                        if (classes == null && (classes = members(table, head)) == null) return;
+                        if (hasTypes(table, s, classes))
+                            m.derive(this, s, type, table.subject(r));
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * cls-int2: instances of an intersection are instances of all its classes.
+     */
+    static final class IntersectionProjection extends ListRule {
+        private final int intersectionOf;
+        private final int[] triggers;
+
+        IntersectionProjection(@Nonnull NodeDictionary dictionary) {
+            super("cls-int2", dictionary);
+            intersectionOf = dictionary.intern(OWL2.intersectionOf.asNode());
+            triggers = new int[]{intersectionOf, type};
+        }
+
+        @Override
+        @Nonnull int[] triggers() {
+            return triggers;
+        }
+
+        @Override
+        void fire(int trigger, int s, int p, int o, @Nonnull Materializer m) {
+            TripleTable table = m.getTable();
+            if (trigger == 0) {
+                int[] classes = members(table, o);
+                if (classes == null) return;
+                for (int r = table.first(ANY, type, s); r != NONE; r = table.next(r, ANY, type, s)) {
+                    for (int c : classes) m.derive(this, table.subject(r), type, c);
+                }
+            } else {
+                for (int r = table.first(o, intersectionOf, ANY); r != NONE;
+                     r = table.next(r, o, intersectionOf, ANY)) {
+                    int[] classes = members(table, table.object(r));
+                    if (classes == null) continue;
+                    for (int c : classes) m.derive(this, s, type, c);
+                }
+            }
+        }
+    }
+
+    /**
+     * cls-uni: instances of any class in a union are instances of it.
+     */
+    static final class Union extends ListRule {
+        private final int unionOf;
+        private final int[] triggers;
+
+        Union(@Nonnull NodeDictionary dictionary) {
+            super("cls-uni", dictionary);
+            unionOf = dictionary.intern(OWL2.unionOf.asNode());
+            triggers = new int[]{unionOf, type};
+        }
+
+        @Override
+        @Nonnull int[] triggers() {
+            return triggers;
+        }
+
+        @Override
+        void fire(int trigger, int s, int p, int o, @Nonnull Materializer m) {
+            TripleTable table = m.getTable();
+            if (trigger == 0) {
+                int[] classes = members(table, o);
+                if (classes == null) return;
+                for (int c : classes) {
+                    for (int r = table.first(ANY, type, c); r != NONE; r = table.next(r, ANY, type, c))
+                        m.derive(this, table.subject(r), type, s);
+                }
+            } else {
+                heads(table, o, head -> {
+                    for (int r = table.first(ANY, unionOf, head); r != NONE;
+                         r = table.next(r, ANY, unionOf, head)) {
+                        m.derive(this, s, type, table.subject(r));
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * prp-spo2: property chains.
+     */
+    static final class PropertyChain extends ListRule {
+        private final int chainAxiom;
+        private final int[] triggers;
+
+        PropertyChain(@Nonnull NodeDictionary dictionary) {
+            super("prp-spo2", dictionary);
+            chainAxiom = dictionary.intern(OWL2.propertyChainAxiom.asNode());
+            triggers = new int[]{chainAxiom, ANY};
+        }
+
+        @Override
+        @Nonnull int[] triggers() {
+            return triggers;
+        }
+
+        @Override
+        void fire(int trigger, int s, int p, int o, @Nonnull Materializer m) {
+            TripleTable table = m.getTable();
+            if (trigger == 0) {
+                int[] chain = members(table, o);
+                if (chain == null || chain.length == 0) return;
+                for (int r = table.first(ANY, chain[0], ANY); r != NONE;
+                     r = table.next(r, ANY, chain[0], ANY)) {
+                    int start = table.subject(r);
+                    forward(table, chain, 1, table.object(r), end -> m.derive(this, start, s, end));
+                }
+            } else {
+                heads(table, p, head -> {
+                    int[] chain = null;
+                    for (int r = table.first(ANY, chainAxiom, head); r != NONE;
+                         r = table.next(r, ANY, chainAxiom, head)) {
+                        if (chain == null && (chain = members(table, head)) == null) return;
+                        int property = table.subject(r);
+                        for (int k = 0; k < chain.length; k++) {
+                            if (chain[k] != p) continue;
+                            int[] members = chain;
+                            int after = k + 1;
+                            backward(table, chain, k - 1, s, start -> forward(table, members,
+                                    after, o, end -> m.derive(this, start, property, end)));
+                        }
+                    }
+                });
+            }
+        }
+
+        private void forward(@Nonnull TripleTable table, @Nonnull int[] chain, int i, int node,
+                             @Nonnull IntConsumer consumer) {
+            if (i == chain.length) {
+                consumer.accept(node);
+                return;
+            }
+            for (int r = table.first(node, chain[i], ANY); r != NONE;
+                 r = table.next(r, node, chain[i], ANY)) {
+                forward(table, chain, i + 1, table.object(r), consumer);
+            }
+        }
+
+        private void backward(@Nonnull TripleTable table, @Nonnull int[] chain, int i, int node,
+                              @Nonnull IntConsumer consumer) {
+            if (i < 0) {
+                consumer.accept(node);
+                return;
+            }
+            for (int r = table.first(ANY, chain[i], node); r != NONE;
+                 r = table.next(r, ANY, chain[i], node)) {
+                backward(table, chain, i - 1, table.subject(r), consumer);
+            }
+        }
+    }
+
+    /**
+     * prp-key: instances of a class with the same values for all key properties are the same.
+     */
+    static final class HasKey extends ListRule {
+        private final int hasKey;
+        private final int[] triggers;
+
+        HasKey(@Nonnull NodeDictionary dictionary) {
+            super("prp-key", dictionary);
+            hasKey = dictionary.intern(OWL2.hasKey.asNode());
+            triggers = new int[]{hasKey, type, ANY};
+        }
+
+        @Override
+        @Nonnull int[] triggers() {
+            return triggers;
+        }
+
+        @Override
+        void fire(int trigger, int s, int p, int o, @Nonnull Materializer m) {
+            TripleTable table = m.getTable();
+            if (trigger == 0) {
+                int[] keys = members(table, o);
+                if (keys == null || keys.length == 0) return;
+                for (int r = table.first(ANY, type, s); r != NONE; r = table.next(r, ANY, type, s))
+                    match(m, s, keys, table.subject(r));
+            } else if (trigger == 1) {
+                for (int r = table.first(o, hasKey, ANY); r != NONE;
+                     r = table.next(r, o, hasKey, ANY)) {
+                    int[] keys = members(table, table.object(r));
+                    if (keys != null && keys.length > 0) match(m, o, keys, s);
+                }
+            } else {
+                heads(table, p, head -> {
+                    for (int r = table.first(ANY, hasKey, head); r != NONE;
+                         r = table.next(r, ANY, hasKey, head)) {
+                        int c = table.subject(r);
+                        int[] keys = table.contains(s, type, c) ? members(table, head) : null;
+                        if (keys != null) match(m, c, keys, s);
+                    }
+                });
+            }
+        }
+
+        private void match(@Nonnull Materializer m, int c, @Nonnull int[] keys, int x) {
+            TripleTable table = m.getTable();
+            for (int r = table.first(x, keys[0], ANY); r != NONE; r = table.next(r, x, keys[0], ANY)) {
+                int value = table.object(r);
+                for (int r2 = table.first(ANY, keys[0], value); r2 != NONE;
+                     r2 = table.next(r2, ANY, keys[0], value)) {
+                    int y = table.subject(r2);
+                    if (y != x && table.contains(y, type, c) && sharesValues(table, keys, x, y)) {
+                        m.derive(this, x, sameAs, y);
+                        m.derive(this, y, sameAs, x);
+                    }
+                }
+            }
+        }
+
+        private boolean sharesValues(@Nonnull TripleTable table, @Nonnull int[] keys, int x, int y) {
+            for (int i = 1; i < keys.length; i++) {
+                boolean shared = false;
+                for (int r = table.first(x, keys[i], ANY); !shared && r != NONE;
+                     r = table.next(r, x, keys[i], ANY)) {
+                    shared = table.contains(y, keys[i], table.object(r));
+                }
+                if (!shared) return false;
+            }
+            return true;
+        }
+    }
+}
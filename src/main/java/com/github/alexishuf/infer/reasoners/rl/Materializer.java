@@ -0,0 +1,384 @@
+package com.github.alexishuf.infer.reasoners.rl;
+
+import com.github.alexishuf.infer.store.DictionaryGraph;
+import com.github.alexishuf.infer.store.LongIntHashMap;
+import com.github.alexishuf.infer.store.NodeDictionary;
+import com.github.alexishuf.infer.store.TripleTable;
+import com.google.common.base.Preconditions;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.Polyadic;
+import org.apache.jena.sparql.graph.GraphWrapper;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import static com.github.alexishuf.infer.store.TripleTable.ANY;
+import static com.github.alexishuf.infer.store.TripleTable.NONE;
+
+/**
+ * Semi-naive forward chaining over a dictionary-encoded TripleTable.
+ *
+ * Rows of the table are processed in order: each row is matched against the body atoms of
+ * all rules and the derived triples are appended to the table, to be processed later. Since
+ * every triple is processed once, run() can be called again after adding more triples, and
+ * only the consequences of the new triples will be computed. remove() retracts triples and
+ * their consequences, also incrementally.
+ */
+public final class Materializer {
+    private final @Nonnull NodeDictionary dictionary;
+    private final @Nonnull TripleTable table;
+    private final @Nonnull List<Rule> rules;
+    private final @Nonnull LongIntHashMap predicateIndex = new LongIntHashMap(64);
+    private final @Nonnull List<Rule[]> dispatchRules = new ArrayList<>();
+    private final @Nonnull List<int[]> dispatchAtoms = new ArrayList<>();
+    private Rule[] anyRules = new Rule[0], outsideRules = new Rule[0];
+    private int[] anyAtoms = new int[0];
+    private int processed = 0;
+    private boolean axioms = false;
+    private @Nullable BitSet overdeleted = null;
+    private @Nullable IntPredicate fixed = null;
+    private int[] queue = new int[0];
+    private int queueSize = 0;
+    private @Nullable Map<Rule, long[]> firings = null;
+
+    public Materializer(@Nonnull String profile) {
+        this(profile, new NodeDictionary(), new TripleTable());
+    }
+
+    public Materializer(@Nonnull String profile, @Nonnull NodeDictionary dictionary,
+                        @Nonnull TripleTable table) {
+        this.dictionary = dictionary;
+        this.table = table;
+        this.rules = RuleSet.compile(profile, dictionary);
+        for (Rule rule : rules) {
+            if (rule.subjectOutsideTriggers()) outsideRules = append(outsideRules, rule);
+            int[] triggers = rule.triggers();
+            for (int i = 0; i < triggers.length; i++) {
+                if (triggers[i] == ANY) {
+                    anyRules = append(anyRules, rule);
+                    anyAtoms = append(anyAtoms, i);
+                } else {
+                    int idx = predicateIndex.get(triggers[i], -1);
+                    if (idx < 0) {
+                        predicateIndex.put(triggers[i], idx = dispatchRules.size());
+                        dispatchRules.add(new Rule[0]);
+                        dispatchAtoms.add(new int[0]);
+                    }
+                    dispatchRules.set(idx, append(dispatchRules.get(idx), rule));
+                    dispatchAtoms.set(idx, append(dispatchAtoms.get(idx), i));
+                }
+            }
+        }
+    }
+
+    public @Nonnull NodeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public @Nonnull TripleTable getTable() {
+        return table;
+    }
+
+    public @Nonnull List<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Enables counting, for each rule, how many new rows it derived.
+     */
+    public void countFirings() {
+        if (firings == null) firings = new IdentityHashMap<>();
+    }
+
+    /**
+     * Gets the counts of each rule since countFirings() or the previous call, by rule name.
+     */
+    public @Nonnull Map<String, Long> drainFirings() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        if (firings != null) {
+            firings.forEach((rule, count) -> counts.merge(rule.getName(), count[0], Long::sum));
+            firings.clear();
+        }
+        return counts;
+    }
+
+    /**
+     * Adds an explicit triple, to be processed in the next run().
+     *
+     * @return the new row or TripleTable.NONE if the triple was already present.
+     */
+    public int add(@Nonnull Triple triple) {
+        return table.add(dictionary.intern(triple.getSubject()),
+                         dictionary.intern(triple.getPredicate()),
+                         dictionary.intern(triple.getObject()));
+    }
+
+    /**
+     * @return the row of triple or TripleTable.NONE if it is not in the table.
+     */
+    public int find(@Nonnull Triple triple) {
+        int s = dictionary.lookup(triple.getSubject());
+        int p = s == NONE ? NONE : dictionary.lookup(triple.getPredicate());
+        int o = p == NONE ? NONE : dictionary.lookup(triple.getObject());
+        return o == NONE ? NONE : table.find(s, p, o);
+    }
+
+    /**
+     * Adds all triples in graph. Unions and wrappers are traversed, so that rows of
+     * DictionaryGraphs sharing this Materializer dictionary are copied without conversion.
+     */
+    public void addAll(@Nonnull Graph graph) {
+        if (graph instanceof GraphWrapper) {
+            addAll(((GraphWrapper) graph).get());
+            return;
+        }
+        if (graph instanceof Polyadic) {
+            Polyadic union = (Polyadic) graph;
+            List<Graph> graphs = new ArrayList<>(union.getSubGraphs());
+            if (union.getBaseGraph() != null && !graphs.contains(union.getBaseGraph()))
+                graphs.add(0, union.getBaseGraph());
+            graphs.forEach(this::addAll);
+            return;
+        }
+        if (graph instanceof DictionaryGraph
+                && ((DictionaryGraph) graph).getDictionary() == dictionary) {
+            DictionaryGraph dg = (DictionaryGraph) graph;
+            TripleTable source = dg.getTable();
+            for (int r = 0, size = source.size(); r < size; r++) {
+                if (!dg.isDeleted(r))
+                    table.add(source.subject(r), source.predicate(r), source.object(r));
+            }
+            return;
+        }
+        ExtendedIterator<Triple> it = graph.find();
+        try {
+            while (it.hasNext()) add(it.next());
+        } finally {
+            it.close();
+        }
+    }
+
+    /**
+     * Considers all rows currently in the table as processed. Use when the table already
+     * holds a closure under the same rule set (e.g., loaded from a cache).
+     */
+    public void markProcessed() {
+        processed = table.size();
+        axioms = true;
+    }
+
+    /**
+     * Processes all rows not yet processed, until a fixpoint is reached.
+     *
+     * @return the number of rows in the table
+     */
+    public int run() {
+        return run(null);
+    }
+
+    /**
+     * Same as run(), but also gives each row added to the table to listener, as soon as the
+     * rule firing that derived it completes.
+     */
+    public int run(@Nullable IntConsumer listener) {
+        int notified = table.size();
+        if (!axioms) {
+            axioms = true;
+            for (Rule rule : rules) {
+                if (rule instanceof PatternRule) ((PatternRule) rule).fireAxiom(this);
+            }
+        }
+        for (; processed < table.size(); ++processed) {
+            if (listener != null) {
+                for (; notified < table.size(); ++notified) listener.accept(notified);
+            }
+            if (!table.isRemoved(processed)) fire(processed);
+        }
+        if (listener != null) {
+            for (; notified < table.size(); ++notified) listener.accept(notified);
+        }
+        return table.size();
+    }
+
+    /**
+     * Fires again the rules for all processed rows accepted by filter. Use when triples
+     * derived from these rows may be missing from the table. run() must be called afterwards
+     * to process the derived rows.
+     */
+    public void reprocess(@Nonnull IntPredicate filter) {
+        for (int r = 0; r < processed; r++) {
+            if (!table.isRemoved(r) && filter.test(r)) fire(r);
+        }
+    }
+
+    /**
+     * Removes rows and all derived rows that are no longer entailed, using the DRed algorithm.
+     *
+     * First, every row with a derivation that uses a removed row is also removed
+     * (overdeletion), unless fixed accepts it. Then, rows that mention a term of an
+     * overdeleted row are fired again, as are the axioms, which derives again the overdeleted
+     * rows that still have a derivation. Since this only adds rows, run() must be called
+     * afterwards to complete the rederivation. All rows must have been processed before
+     * calling this.
+     *
+     * @param rows rows of explicit triples that are to be removed
+     * @param fixed rows that are never overdeleted, e.g. remaining explicit triples
+     */
+    public void remove(@Nonnull int[] rows, @Nonnull IntPredicate fixed) {
+        Preconditions.checkState(processed == table.size(), "Call run() before remove()");
+        BitSet doomed = new BitSet();
+        queueSize = 0;
+        for (int row : rows) {
+            if (!table.isRemoved(row) && !doomed.get(row)) {
+                doomed.set(row);
+                enqueue(row);
+            }
+        }
+        overdeleted = doomed;
+        this.fixed = fixed;
+        try {
+            for (int i = 0; i < queueSize; i++) fire(queue[i]);
+        } finally {
+            overdeleted = null;
+            this.fixed = null;
+        }
+        for (int i = 0; i < queueSize; i++) table.remove(queue[i]);
+        processed = table.size();
+
+        /* The subject of a derived triple is in the triple that triggered the rule, or
+         * else (see Rule.subjectOutsideTriggers()) the object is in that triple. Thus, if an
+         * overdeleted row still has a derivation, firing these rows (or the axioms, which
+         * have no trigger) derives it again. */
+        for (Rule rule : rules) {
+            if (rule instanceof PatternRule) ((PatternRule) rule).fireAxiom(this);
+        }
+        BitSet terms = new BitSet(), objects = new BitSet(), fired = new BitSet();
+        for (int i = 0, size = queueSize; i < size; i++) {
+            int s = table.subject(queue[i]), o = table.object(queue[i]);
+            if (!terms.get(s)) {
+                terms.set(s);
+                fireAll(s, ANY, ANY, fired);
+                fireAll(ANY, s, ANY, fired);
+                fireAll(ANY, ANY, s, fired);
+            }
+            if (!objects.get(o) && outsideRules.length > 0) {
+                objects.set(o);
+                fireOutside(o, ANY, ANY, fired);
+                fireOutside(ANY, o, ANY, fired);
+                fireOutside(ANY, ANY, o, fired);
+            }
+        }
+        queueSize = 0;
+    }
+
+    private void fireAll(int s, int p, int o, @Nonnull BitSet fired) {
+        for (int r = table.first(s, p, o); r != NONE; r = table.next(r, s, p, o)) {
+            if (r < processed && !fired.get(r)) {
+                fired.set(r);
+                fire(r);
+            }
+        }
+    }
+
+    /**
+     * Fires rules with subjectOutsideTriggers() for the processed rows matching the pattern,
+     * except those in fired, which already had all rules fired.
+     */
+    private void fireOutside(int s, int p, int o, @Nonnull BitSet fired) {
+        for (int r = table.first(s, p, o); r != NONE; r = table.next(r, s, p, o)) {
+            if (r < processed && !fired.get(r)) fireOutside(r);
+        }
+    }
+
+    private void fireOutside(int row) {
+        int s = table.subject(row), p = table.predicate(row), o = table.object(row);
+        for (Rule rule : outsideRules) {
+            int[] triggers = rule.triggers();
+            for (int i = 0; i < triggers.length; i++) {
+                if (triggers[i] == ANY || triggers[i] == p) rule.fire(i, s, p, o, this);
+            }
+        }
+    }
+
+    private void enqueue(int row) {
+        if (queueSize == queue.length)
+            queue = Arrays.copyOf(queue, Math.max(16, queueSize * 2));
+        queue[queueSize++] = row;
+    }
+
+    /**
+     * Fires all rules that have a body atom that may match row.
+     */
+    private void fire(int row) {
+        int s = table.subject(row), p = table.predicate(row), o = table.object(row);
+        int idx = predicateIndex.get(p, -1);
+        if (idx >= 0) {
+            Rule[] triggered = dispatchRules.get(idx);
+            int[] atoms = dispatchAtoms.get(idx);
+            for (int i = 0; i < triggered.length; i++)
+                triggered[i].fire(atoms[i], s, p, o, this);
+        }
+        for (int i = 0; i < anyRules.length; i++) anyRules[i].fire(anyAtoms[i], s, p, o, this);
+    }
+
+    /**
+     * Called by rules to add a derived triple. Triples that are not valid RDF (literal
+     * subjects or non-IRI predicates) are ignored.
+     */
+    void derive(@Nonnull Rule rule, int s, int p, int o) {
+        if (dictionary.isLiteral(s) || !dictionary.isURI(p)) return;
+        if (overdeleted != null) {
+            int row = table.find(s, p, o);
+            if (row != NONE && !overdeleted.get(row) && (fixed == null || !fixed.test(row))) {
+                overdeleted.set(row);
+                enqueue(row);
+            }
+            return;
+        }
+        if (table.add(s, p, o) != NONE && firings != null)
+            firings.computeIfAbsent(rule, k -> new long[1])[0]++;
+    }
+
+    /**
+     * Adds rows [from, to) to graph, except removed rows.
+     */
+    public void copyTo(int from, int to, @Nonnull Graph graph) {
+        copyTo(from, to, r -> true, graph);
+    }
+
+    /**
+     * Adds rows [from, to) accepted by filter to graph, except removed rows.
+     */
+    public void copyTo(int from, int to, @Nonnull IntPredicate filter, @Nonnull Graph graph) {
+        for (int r = from; r < to; r++) {
+            if (table.isRemoved(r) || !filter.test(r)) continue;
+            graph.add(triple(r));
+        }
+    }
+
+    /**
+     * The triple in a row of the table.
+     */
+    public @Nonnull Triple triple(int row) {
+        return Triple.create(dictionary.get(table.subject(row)),
+                             dictionary.get(table.predicate(row)),
+                             dictionary.get(table.object(row)));
+    }
+
+    private static @Nonnull Rule[] append(@Nonnull Rule[] array, @Nonnull Rule rule) {
+        Rule[] copy = Arrays.copyOf(array, array.length + 1);
+        copy[array.length] = rule;
+        return copy;
+    }
+
+    private static @Nonnull int[] append(@Nonnull int[] array, int value) {
+        int[] copy = Arrays.copyOf(array, array.length + 1);
+        copy[array.length] = value;
+        return copy;
+    }
+}
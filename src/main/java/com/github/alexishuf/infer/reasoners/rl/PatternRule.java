@@ -0,0 +1,263 @@
+package com.github.alexishuf.infer.reasoners.rl;
+
+import com.github.alexishuf.infer.store.NodeDictionary;
+import com.github.alexishuf.infer.store.TripleTable;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.shared.PrefixMapping;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.github.alexishuf.infer.store.TripleTable.ANY;
+import static com.github.alexishuf.infer.store.TripleTable.NONE;
+
+/**
+ * A rule whose body is a conjunction of triple patterns (optionally with pairwise
+ * inequalities between variables) and whose head is a list of triple patterns.
+ *
+ * Rules are written as
+ * <pre>name: ?x rdf:type ?c . ?c rdfs:subClassOf ?d -> ?x rdf:type ?d</pre>
+ * where body and head atoms are separated by " . " and "?a != ?b" can appear as a body
+ * element. Rules with an empty body are axioms. Terms are variables, prefixed names (rdf,
+ * rdfs, owl and xsd), &lt;IRI&gt;s or typed literals ("1"^^xsd:integer).
+ */
+public final class PatternRule extends Rule {
+    private static final Pattern TOKEN = Pattern.compile("\"[^\"]*\"(?:\\^\\^\\S+)?|\\S+");
+    private static final int UNBOUND = Integer.MIN_VALUE;
+
+    /* terms >= 0 are constant ids, terms < 0 are variable -(index+1) */
+    private final int[][] body, head;
+    private final int[][] distinct;
+    private final int[][] orders;
+    private final int[] bindings;
+    private final int[] triggers;
+    private final boolean subjectOutside;
+
+    private PatternRule(@Nonnull String name, @Nonnull int[][] body, @Nonnull int[][] head,
+                        @Nonnull int[][] distinct, int variables) {
+        super(name);
+        this.body = body;
+        this.head = head;
+        this.distinct = distinct;
+        this.bindings = new int[variables];
+        Arrays.fill(bindings, UNBOUND);
+        this.triggers = new int[body.length];
+        this.orders = new int[body.length][];
+        for (int i = 0; i < body.length; i++) {
+            triggers[i] = body[i][1] >= 0 ? body[i][1] : ANY;
+            orders[i] = joinOrder(i);
+        }
+        this.subjectOutside = !isAxiom() && Arrays.stream(head).anyMatch(
+                h -> h[0] >= 0 && Arrays.stream(body).noneMatch(
+                        b -> b[0] == h[0] || b[1] == h[0] || b[2] == h[0]));
+    }
+
+    public boolean isAxiom() {
+        return body.length == 0;
+    }
+
+    @Override
+    @Nonnull int[] triggers() {
+        return triggers;
+    }
+
+    /**
+     * True if a head atom has a constant subject that is absent from the body, e.g. scm-cls
+     * derives owl:Nothing rdfs:subClassOf ?c from ?c rdf:type owl:Class.
+     */
+    @Override
+    boolean subjectOutsideTriggers() {
+        return subjectOutside;
+    }
+
+    @Override
+    void fire(int trigger, int s, int p, int o, @Nonnull Materializer m) {
+        int[] atom = body[trigger];
+        boolean bs = bind(atom[0], s), bp = false, bo = false;
+        if (bs || matches(atom[0], s)) {
+            bp = bind(atom[1], p);
+            if (bp || matches(atom[1], p)) {
+                bo = bind(atom[2], o);
+                if (bo || matches(atom[2], o))
+                    join(orders[trigger], 0, m);
+            }
+        }
+        if (bs) unbind(atom[0]);
+        if (bp) unbind(atom[1]);
+        if (bo) unbind(atom[2]);
+    }
+
+    /**
+     * Derives the head of an axiom (rule with empty body).
+     */
+    void fireAxiom(@Nonnull Materializer m) {
+        if (isAxiom()) join(new int[0], 0, m);
+    }
+
+    private void join(int[] order, int depth, Materializer m) {
+        if (depth == order.length) {
+            for (int[] pair : distinct) {
+                if (bindings[pair[0]] == bindings[pair[1]]) return;
+            }
+            for (int[] atom : head)
+                m.derive(this, value(atom[0]), value(atom[1]), value(atom[2]));
+            return;
+        }
+        int[] atom = body[order[depth]];
+        int s = pattern(atom[0]), p = pattern(atom[1]), o = pattern(atom[2]);
+        TripleTable table = m.getTable();
+        for (int r = table.first(s, p, o); r != NONE; r = table.next(r, s, p, o)) {
+            boolean bs = bind(atom[0], table.subject(r)), bp = false, bo = false;
+            if (bs || matches(atom[0], table.subject(r))) {
+                bp = bind(atom[1], table.predicate(r));
+                if (bp || matches(atom[1], table.predicate(r))) {
+                    bo = bind(atom[2], table.object(r));
+                    if (bo || matches(atom[2], table.object(r)))
+                        join(order, depth + 1, m);
+                }
+            }
+            if (bs) unbind(atom[0]);
+            if (bp) unbind(atom[1]);
+            if (bo) unbind(atom[2]);
+        }
+    }
+
+    /** Binds term to value if term is an unbound variable. */
+    private boolean bind(int term, int value) {
+        if (term >= 0 || bindings[-term - 1] != UNBOUND) return false;
+        bindings[-term - 1] = value;
+        return true;
+    }
+
+    private void unbind(int term) {
+        bindings[-term - 1] = UNBOUND;
+    }
+
+    private boolean matches(int term, int value) {
+        return (term >= 0 ? term : bindings[-term - 1]) == value;
+    }
+
+    private int pattern(int term) {
+        if (term >= 0) return term;
+        int value = bindings[-term - 1];
+        return value == UNBOUND ? ANY : value;
+    }
+
+    private int value(int term) {
+        return term >= 0 ? term : bindings[-term - 1];
+    }
+
+    /**
+     * Greedy join order for the atoms other than trigger: at each step, pick the atom with
+     * the most terms already bound.
+     */
+    private @Nonnull int[] joinOrder(int trigger) {
+        Set<Integer> bound = new HashSet<>();
+        for (int term : body[trigger]) if (term < 0) bound.add(term);
+        List<Integer> left = new ArrayList<>();
+        for (int i = 0; i < body.length; i++) if (i != trigger) left.add(i);
+        int[] order = new int[left.size()];
+        for (int k = 0; k < order.length; k++) {
+            int best = -1, bestScore = -1;
+            for (int i : left) {
+                int score = 0;
+                for (int term : body[i]) if (term >= 0 || bound.contains(term)) ++score;
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            order[k] = best;
+            left.remove(Integer.valueOf(best));
+            for (int term : body[best]) if (term < 0) bound.add(term);
+        }
+        return order;
+    }
+
+    /**
+     * Parses a rule in the syntax described in the class documentation.
+     */
+    public static @Nonnull PatternRule parse(@Nonnull String text,
+                                             @Nonnull NodeDictionary dictionary) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) tokens.add(matcher.group());
+        if (tokens.isEmpty() || !tokens.get(0).endsWith(":") || !tokens.contains("->"))
+            throw new IllegalArgumentException("Bad rule: " + text);
+        String name = tokens.get(0).substring(0, tokens.get(0).length() - 1);
+        int arrow = tokens.indexOf("->");
+
+        Map<String, Integer> variables = new HashMap<>();
+        List<int[]> body = new ArrayList<>(), head = new ArrayList<>(), distinct = new ArrayList<>();
+        for (List<String> e : split(tokens.subList(1, arrow))) {
+            if (e.size() == 3 && e.get(1).equals("!=")) {
+                distinct.add(new int[]{-term(e.get(0), variables, dictionary) - 1,
+                                       -term(e.get(2), variables, dictionary) - 1});
+            } else {
+                body.add(atom(e, variables, dictionary, text));
+            }
+        }
+        int bodyVariables = variables.size();
+        for (List<String> e : split(tokens.subList(arrow + 1, tokens.size())))
+            head.add(atom(e, variables, dictionary, text));
+        if (variables.size() != bodyVariables)
+            throw new IllegalArgumentException("Unbound head variable in " + text);
+        return new PatternRule(name, body.toArray(new int[0][]), head.toArray(new int[0][]),
+                               distinct.toArray(new int[0][]), variables.size());
+    }
+
+    private static @Nonnull List<List<String>> split(@Nonnull List<String> tokens) {
+        List<List<String>> list = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        for (String token : tokens) {
+            if (token.equals(".")) {
+                list.add(current);
+                current = new ArrayList<>();
+            } else {
+                current.add(token);
+            }
+        }
+        if (!current.isEmpty()) list.add(current);
+        return list;
+    }
+
+    private static @Nonnull int[] atom(@Nonnull List<String> tokens,
+                                       @Nonnull Map<String, Integer> variables,
+                                       @Nonnull NodeDictionary dictionary, @Nonnull String text) {
+        if (tokens.size() != 3)
+            throw new IllegalArgumentException("Bad atom " + tokens + " in " + text);
+        int[] atom = new int[3];
+        for (int i = 0; i < 3; i++) atom[i] = term(tokens.get(i), variables, dictionary);
+        return atom;
+    }
+
+    private static int term(@Nonnull String token, @Nonnull Map<String, Integer> variables,
+                            @Nonnull NodeDictionary dictionary) {
+        if (token.startsWith("?")) {
+            Integer index = variables.computeIfAbsent(token, k -> variables.size());
+            return -index - 1;
+        }
+        return dictionary.intern(node(token));
+    }
+
+    private static @Nonnull Node node(@Nonnull String token) {
+        if (token.startsWith("<") && token.endsWith(">"))
+            return NodeFactory.createURI(token.substring(1, token.length() - 1));
+        if (token.startsWith("\"")) {
+            int close = token.lastIndexOf('"');
+            String lexical = token.substring(1, close);
+            if (close == token.length() - 1) return NodeFactory.createLiteral(lexical);
+            String datatype = PrefixMapping.Standard.expandPrefix(token.substring(close + 3));
+            return NodeFactory.createLiteral(lexical,
+                    TypeMapper.getInstance().getSafeTypeByName(datatype));
+        }
+        String uri = PrefixMapping.Standard.expandPrefix(token);
+        if (uri.equals(token))
+            throw new IllegalArgumentException("Unknown prefix in " + token);
+        return NodeFactory.createURI(uri);
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.alexishuf.infer.reasoners.rl;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A rule evaluated by the Materializer.
+ *
+ * Evaluation is delta-driven: whenever a triple is processed, the rule is fired once for
+ * each body atom that could match the triple. The rule must then derive every conclusion
+ * that has the triple matching that atom and the remaining atoms matching any triple in the
+ * table (including triples not yet processed).
+ */
+public abstract class Rule {
+    private final @Nonnull String name;
+
+    protected Rule(@Nonnull String name) {
+        this.name = name;
+    }
+
+    public @Nonnull String getName() {
+        return name;
+    }
+
+    /**
+     * Predicate id of each body atom that must be matched against new triples, or
+     * TripleTable.ANY for atoms that may match any predicate.
+     */
+    abstract @Nonnull int[] triggers();
+
+    /**
+     * Derives all conclusions having (s, p, o) as the match of body atom trigger.
+     */
+    abstract void fire(int trigger, int s, int p, int o, @Nonnull Materializer m);
+
+    /**
+     * Whether the subject of some conclusion is not in the triple matching any trigger atom.
+     * Then, the object of that conclusion must be in a triple matching a trigger atom (e.g.,
+     * cls-oo and scm-cls). Used by Materializer.remove().
+     */
+    boolean subjectOutsideTriggers() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
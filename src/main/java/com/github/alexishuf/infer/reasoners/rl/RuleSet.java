@@ -0,0 +1,176 @@
+package com.github.alexishuf.infer.reasoners.rl;
+
+import com.github.alexishuf.infer.store.NodeDictionary;
+import com.google.common.base.Preconditions;
+import org.apache.jena.vocabulary.OWL2;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Rule sets available to the Materializer.
+ *
+ * "rdfs" is the RDFS entailment rules, except for rdfs4a/rdfs4b (everything is a
+ * rdfs:Resource) and the datatype rules. "owl-rl" is the OWL 2 RL/RDF rule set, except for the
+ * rules that only detect inconsistencies (those with false in the head), eq-ref and the
+ * datatype rules.
+ */
+public final class RuleSet {
+    public static final @Nonnull String RDFS = "rdfs";
+    public static final @Nonnull String OWL_RL = "owl-rl";
+
+    private static final List<String> rdfs = asList(
+            "rdf1: ?x ?p ?y -> ?p rdf:type rdf:Property",
+            "rdfs2: ?p rdfs:domain ?c . ?x ?p ?y -> ?x rdf:type ?c",
+            "rdfs3: ?p rdfs:range ?c . ?x ?p ?y -> ?y rdf:type ?c",
+            "rdfs5: ?p rdfs:subPropertyOf ?q . ?q rdfs:subPropertyOf ?r -> ?p rdfs:subPropertyOf ?r",
+            "rdfs6: ?p rdf:type rdf:Property -> ?p rdfs:subPropertyOf ?p",
+            "rdfs7: ?p rdfs:subPropertyOf ?q . ?x ?p ?y -> ?x ?q ?y",
+            "rdfs8: ?c rdf:type rdfs:Class -> ?c rdfs:subClassOf rdfs:Resource",
+            "rdfs9: ?c rdfs:subClassOf ?d . ?x rdf:type ?c -> ?x rdf:type ?d",
+            "rdfs10: ?c rdf:type rdfs:Class -> ?c rdfs:subClassOf ?c",
+            "rdfs11: ?c rdfs:subClassOf ?d . ?d rdfs:subClassOf ?e -> ?c rdfs:subClassOf ?e",
+            "rdfs12: ?p rdf:type rdfs:ContainerMembershipProperty -> ?p rdfs:subPropertyOf rdfs:member",
+            "rdfs13: ?c rdf:type rdfs:Datatype -> ?c rdfs:subClassOf rdfs:Literal");
+
+    private static final List<String> owlRL = asList(
+            "eq-sym: ?x owl:sameAs ?y -> ?y owl:sameAs ?x",
+            "eq-trans: ?x owl:sameAs ?y . ?y owl:sameAs ?z -> ?x owl:sameAs ?z",
+            "eq-rep-s: ?s owl:sameAs ?s2 . ?s ?p ?o -> ?s2 ?p ?o",
+            "eq-rep-p: ?p owl:sameAs ?p2 . ?s ?p ?o -> ?s ?p2 ?o",
+            "eq-rep-o: ?o owl:sameAs ?o2 . ?s ?p ?o -> ?s ?p ?o2",
+
+            "prp-ap: -> rdfs:label rdf:type owl:AnnotationProperty . " +
+                    "rdfs:comment rdf:type owl:AnnotationProperty . " +
+                    "rdfs:seeAlso rdf:type owl:AnnotationProperty . " +
+                    "rdfs:isDefinedBy rdf:type owl:AnnotationProperty . " +
+                    "owl:deprecated rdf:type owl:AnnotationProperty . " +
+                    "owl:versionInfo rdf:type owl:AnnotationProperty . " +
+                    "owl:priorVersion rdf:type owl:AnnotationProperty . " +
+                    "owl:backwardCompatibleWith rdf:type owl:AnnotationProperty . " +
+                    "owl:incompatibleWith rdf:type owl:AnnotationProperty",
+            "prp-dom: ?p rdfs:domain ?c . ?x ?p ?y -> ?x rdf:type ?c",
+            "prp-rng: ?p rdfs:range ?c . ?x ?p ?y -> ?y rdf:type ?c",
+            "prp-fp: ?p rdf:type owl:FunctionalProperty . ?x ?p ?y1 . ?x ?p ?y2 . ?y1 != ?y2 " +
+                    "-> ?y1 owl:sameAs ?y2",
+            "prp-ifp: ?p rdf:type owl:InverseFunctionalProperty . ?x1 ?p ?y . ?x2 ?p ?y . " +
+                    "?x1 != ?x2 -> ?x1 owl:sameAs ?x2",
+            "prp-symp: ?p rdf:type owl:SymmetricProperty . ?x ?p ?y -> ?y ?p ?x",
+            "prp-trp: ?p rdf:type owl:TransitiveProperty . ?x ?p ?y . ?y ?p ?z -> ?x ?p ?z",
+            "prp-spo1: ?p1 rdfs:subPropertyOf ?p2 . ?x ?p1 ?y -> ?x ?p2 ?y",
+            "prp-eqp1: ?p1 owl:equivalentProperty ?p2 . ?x ?p1 ?y -> ?x ?p2 ?y",
+            "prp-eqp2: ?p1 owl:equivalentProperty ?p2 . ?x ?p2 ?y -> ?x ?p1 ?y",
+            "prp-inv1: ?p1 owl:inverseOf ?p2 . ?x ?p1 ?y -> ?y ?p2 ?x",
+            "prp-inv2: ?p1 owl:inverseOf ?p2 . ?x ?p2 ?y -> ?y ?p1 ?x",
+
+            "cls-thing: -> owl:Thing rdf:type owl:Class",
+            "cls-nothing1: -> owl:Nothing rdf:type owl:Class",
+            "cls-svf1: ?x owl:someValuesFrom ?y . ?x owl:onProperty ?p . ?u ?p ?v . " +
+                    "?v rdf:type ?y -> ?u rdf:type ?x",
+            "cls-svf2: ?x owl:someValuesFrom owl:Thing . ?x owl:onProperty ?p . ?u ?p ?v " +
+                    "-> ?u rdf:type ?x",
+            "cls-avf: ?x owl:allValuesFrom ?y . ?x owl:onProperty ?p . ?u rdf:type ?x . " +
+                    "?u ?p ?v -> ?v rdf:type ?y",
+            "cls-hv1: ?x owl:hasValue ?y . ?x owl:onProperty ?p . ?u rdf:type ?x -> ?u ?p ?y",
+            "cls-hv2: ?x owl:hasValue ?y . ?x owl:onProperty ?p . ?u ?p ?y -> ?u rdf:type ?x",
+            "cls-maxc2: ?x owl:maxCardinality \"1\"^^xsd:nonNegativeInteger . " +
+                    "?x owl:onProperty ?p . ?u rdf:type ?x . ?u ?p ?y1 . ?u ?p ?y2 . " +
+                    "?y1 != ?y2 -> ?y1 owl:sameAs ?y2",
+            "cls-maxc2: ?x owl:maxCardinality \"1\"^^xsd:integer . " +
+                    "?x owl:onProperty ?p . ?u rdf:type ?x . ?u ?p ?y1 . ?u ?p ?y2 . " +
+                    "?y1 != ?y2 -> ?y1 owl:sameAs ?y2",
+            "cls-maxqc3: ?x owl:maxQualifiedCardinality \"1\"^^xsd:nonNegativeInteger . " +
+                    "?x owl:onProperty ?p . ?x owl:onClass ?c . ?u rdf:type ?x . " +
+                    "?u ?p ?y1 . ?y1 rdf:type ?c . ?u ?p ?y2 . ?y2 rdf:type ?c . " +
+                    "?y1 != ?y2 -> ?y1 owl:sameAs ?y2",
+            "cls-maxqc3: ?x owl:maxQualifiedCardinality \"1\"^^xsd:integer . " +
+                    "?x owl:onProperty ?p . ?x owl:onClass ?c . ?u rdf:type ?x . " +
+                    "?u ?p ?y1 . ?y1 rdf:type ?c . ?u ?p ?y2 . ?y2 rdf:type ?c . " +
+                    "?y1 != ?y2 -> ?y1 owl:sameAs ?y2",
+            "cls-maxqc4: ?x owl:maxQualifiedCardinality \"1\"^^xsd:nonNegativeInteger . " +
+                    "?x owl:onProperty ?p . ?x owl:onClass owl:Thing . ?u rdf:type ?x . " +
+                    "?u ?p ?y1 . ?u ?p ?y2 . ?y1 != ?y2 -> ?y1 owl:sameAs ?y2",
+            "cls-maxqc4: ?x owl:maxQualifiedCardinality \"1\"^^xsd:integer . " +
+                    "?x owl:onProperty ?p . ?x owl:onClass owl:Thing . ?u rdf:type ?x . " +
+                    "?u ?p ?y1 . ?u ?p ?y2 . ?y1 != ?y2 -> ?y1 owl:sameAs ?y2",
+
+            "cax-sco: ?c1 rdfs:subClassOf ?c2 . ?x rdf:type ?c1 -> ?x rdf:type ?c2",
+            "cax-eqc1: ?c1 owl:equivalentClass ?c2 . ?x rdf:type ?c1 -> ?x rdf:type ?c2",
+            "cax-eqc2: ?c1 owl:equivalentClass ?c2 . ?x rdf:type ?c2 -> ?x rdf:type ?c1",
+
+            "scm-cls: ?c rdf:type owl:Class -> ?c rdfs:subClassOf ?c . " +
+                    "?c owl:equivalentClass ?c . ?c rdfs:subClassOf owl:Thing . " +
+                    "owl:Nothing rdfs:subClassOf ?c",
+            "scm-sco: ?c1 rdfs:subClassOf ?c2 . ?c2 rdfs:subClassOf ?c3 -> ?c1 rdfs:subClassOf ?c3",
+            "scm-eqc1: ?c1 owl:equivalentClass ?c2 -> ?c1 rdfs:subClassOf ?c2 . " +
+                    "?c2 rdfs:subClassOf ?c1",
+            "scm-eqc2: ?c1 rdfs:subClassOf ?c2 . ?c2 rdfs:subClassOf ?c1 " +
+                    "-> ?c1 owl:equivalentClass ?c2",
+            "scm-op: ?p rdf:type owl:ObjectProperty -> ?p rdfs:subPropertyOf ?p . " +
+                    "?p owl:equivalentProperty ?p",
+            "scm-dp: ?p rdf:type owl:DatatypeProperty -> ?p rdfs:subPropertyOf ?p . " +
+                    "?p owl:equivalentProperty ?p",
+            "scm-spo: ?p1 rdfs:subPropertyOf ?p2 . ?p2 rdfs:subPropertyOf ?p3 " +
+                    "-> ?p1 rdfs:subPropertyOf ?p3",
+            "scm-eqp1: ?p1 owl:equivalentProperty ?p2 -> ?p1 rdfs:subPropertyOf ?p2 . " +
+                    "?p2 rdfs:subPropertyOf ?p1",
+            "scm-eqp2: ?p1 rdfs:subPropertyOf ?p2 . ?p2 rdfs:subPropertyOf ?p1 " +
+                    "-> ?p1 owl:equivalentProperty ?p2",
+            "scm-dom1: ?p rdfs:domain ?c1 . ?c1 rdfs:subClassOf ?c2 -> ?p rdfs:domain ?c2",
+            "scm-dom2: ?p2 rdfs:domain ?c . ?p1 rdfs:subPropertyOf ?p2 -> ?p1 rdfs:domain ?c",
+            "scm-rng1: ?p rdfs:range ?c1 . ?c1 rdfs:subClassOf ?c2 -> ?p rdfs:range ?c2",
+            "scm-rng2: ?p2 rdfs:range ?c . ?p1 rdfs:subPropertyOf ?p2 -> ?p1 rdfs:range ?c",
+            "scm-hv: ?c1 owl:hasValue ?i . ?c1 owl:onProperty ?p1 . ?c2 owl:hasValue ?i . " +
+                    "?c2 owl:onProperty ?p2 . ?p1 rdfs:subPropertyOf ?p2 " +
+                    "-> ?c1 rdfs:subClassOf ?c2",
+            "scm-svf1: ?c1 owl:someValuesFrom ?y1 . ?c1 owl:onProperty ?p . " +
+                    "?c2 owl:someValuesFrom ?y2 . ?c2 owl:onProperty ?p . " +
+                    "?y1 rdfs:subClassOf ?y2 -> ?c1 rdfs:subClassOf ?c2",
+            "scm-svf2: ?c1 owl:someValuesFrom ?y . ?c1 owl:onProperty ?p1 . " +
+                    "?c2 owl:someValuesFrom ?y . ?c2 owl:onProperty ?p2 . " +
+                    "?p1 rdfs:subPropertyOf ?p2 -> ?c1 rdfs:subClassOf ?c2",
+            "scm-avf1: ?c1 owl:allValuesFrom ?y1 . ?c1 owl:onProperty ?p . " +
+                    "?c2 owl:allValuesFrom ?y2 . ?c2 owl:onProperty ?p . " +
+                    "?y1 rdfs:subClassOf ?y2 -> ?c1 rdfs:subClassOf ?c2",
+            "scm-avf2: ?c1 owl:allValuesFrom ?y . ?c1 owl:onProperty ?p1 . " +
+                    "?c2 owl:allValuesFrom ?y . ?c2 owl:onProperty ?p2 . " +
+                    "?p1 rdfs:subPropertyOf ?p2 -> ?c2 rdfs:subClassOf ?c1");
+
+    private static final Map<String, List<String>> profiles;
+
+    public static @Nonnull Set<String> getProfiles() {
+        return profiles.keySet();
+    }
+
+    /**
+     * Instantiates the rules of profile with constants interned in dictionary.
+     */
+    public static @Nonnull List<Rule> compile(@Nonnull String profile,
+                                              @Nonnull NodeDictionary dictionary) {
+        Preconditions.checkArgument(profiles.containsKey(profile));
+        List<Rule> rules = new ArrayList<>();
+        for (String text : profiles.get(profile)) rules.add(PatternRule.parse(text, dictionary));
+        if (profile.equals(OWL_RL)) {
+            rules.add(new ListRules.EachMember("scm-int", dictionary, OWL2.intersectionOf.asNode(),
+                                               ListRules.EachMember.SUBCLASS));
+            rules.add(new ListRules.EachMember("scm-uni", dictionary, OWL2.unionOf.asNode(),
+                                               ListRules.EachMember.SUPERCLASS));
+            rules.add(new ListRules.EachMember("cls-oo", dictionary, OWL2.oneOf.asNode(),
+                                               ListRules.EachMember.INSTANCE));
+            rules.add(new ListRules.IntersectionMembership(dictionary));
+            rules.add(new ListRules.IntersectionProjection(dictionary));
+            rules.add(new ListRules.Union(dictionary));
+            rules.add(new ListRules.PropertyChain(dictionary));
+            rules.add(new ListRules.HasKey(dictionary));
+        }
+        return rules;
+    }
+
+    static {
+        profiles = new LinkedHashMap<>();
+        profiles.put(OWL_RL, owlRL);
+        profiles.put(RDFS, rdfs);
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.alexishuf.infer.server;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.*;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.sparql.core.Quad;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Sends main inputs to a ReasoningServer.
+ *
+ * Inputs are parsed locally and streamed to the server as RDF Thrift, thus files in any
+ * language can be sent in a single job. The response is also requested as RDF Thrift.
+ */
+public class ReasoningClient {
+    private final @Nonnull String server;
+    private final @Nonnull Map<String, String> params = new LinkedHashMap<>();
+    private @Nullable Lang hintLang = null;
+
+    /**
+     * @param server base URL of the server, e.g. http://localhost:8080
+     */
+    public ReasoningClient(@Nonnull String server) {
+        this.server = server.replaceAll("/+$", "").replaceAll(ReasoningServer.PATH + "$", "");
+    }
+
+    public @Nonnull ReasoningClient withReasoner(@Nonnull String reasoner) {
+        params.put("reasoner", reasoner);
+        return this;
+    }
+
+    public @Nonnull ReasoningClient withProfile(@Nullable String profile) {
+        if (profile == null) params.remove("profile");
+        else params.put("profile", profile);
+        return this;
+    }
+
+    public @Nonnull ReasoningClient withEcho(boolean echo) {
+        params.put("echo", String.valueOf(echo));
+        return this;
+    }
+
+    /**
+     * Language of inputs whose language cannot be guessed from their names.
+     */
+    public @Nonnull ReasoningClient withHintLang(@Nullable Lang lang) {
+        this.hintLang = lang;
+        return this;
+    }
+
+    /**
+     * Sends a job with all files and URIs as main inputs and parses the result into out.
+     *
+     * @throws IOException if the server cannot be reached or if it rejects the job.
+     */
+    public void reason(@Nonnull List<String> filesOrUris, @Nonnull Model out) throws IOException {
+        String query = params.entrySet().stream().map(e -> encode(e.getKey()) + "="
+                + encode(e.getValue())).collect(Collectors.joining("&"));
+        URL url = new URL(server + ReasoningServer.PATH + (query.isEmpty() ? "" : "?" + query));
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        try {
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setChunkedStreamingMode(64 * 1024);
+            String thrift = RDFLanguages.THRIFT.getContentType().getContentType();
+            conn.setRequestProperty(HttpNames.hContentType, thrift);
+            conn.setRequestProperty(HttpNames.hAccept, thrift);
+            try (OutputStream os = new BufferedOutputStream(conn.getOutputStream())) {
+                StreamRDF sink = StreamRDFWriter.getWriterStream(os, RDFFormat.RDF_THRIFT);
+                sink.start();
+                StreamRDF shielded = new StreamRDFWrapper(sink) {
+                    @Override
+                    public void start() { }
+
+                    @Override
+                    public void quad(Quad quad) {
+                        triple(quad.asTriple());
+                    }
+
+                    @Override
+                    public void finish() { }
+                };
+                for (String fileOrUri : filesOrUris)
+                    RDFParser.create().source(fileOrUri).lang(hintLang).parse(shielded);
+                sink.finish();
+            }
+            int code = conn.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK)
+                throw new IOException("Server responded " + code + ": " + readError(conn));
+            try (InputStream is = new BufferedInputStream(conn.getInputStream())) {
+                RDFParser.create().source(is).lang(RDFLanguages.THRIFT).context(null).parse(out.getGraph());
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static @Nonnull String readError(@Nonnull HttpURLConnection conn) throws IOException {
+        InputStream es = conn.getErrorStream();
+        if (es == null) return conn.getResponseMessage();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(es, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.joining("\n"));
+        }
+    }
+
+    private static @Nonnull String encode(@Nonnull String string) {
+        try {
+            return URLEncoder.encode(string, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e); // UTF-8 is always supported
+        }
+    }
+}
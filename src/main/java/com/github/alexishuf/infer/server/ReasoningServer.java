@@ -0,0 +1,265 @@
+package com.github.alexishuf.infer.server;
+
+import com.github.alexishuf.infer.reasoners.BoundBackground;
+import com.github.alexishuf.infer.reasoners.ClosureCache;
+import com.github.alexishuf.infer.reasoners.ReasonerRegistry;
+import com.github.alexishuf.infer.reasoners.SplitReasoner;
+import com.github.alexishuf.infer.utils.StreamingWriter;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.*;
+import org.apache.jena.riot.system.ErrorHandlerFactory;
+import org.apache.jena.riot.web.HttpNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+/**
+ * Loopback HTTP server that reasons over main inputs sent by clients, using a background
+ * that is loaded and bound only once.
+ *
+ * Jobs are POSTs to /reason with the main triples as body, in the language given by
+ * Content-Type (Turtle if absent). The reasoner, profile and echo flag are taken from the
+ * reasoner, profile and echo query parameters. The response has the triples that
+ * SplitReasoner.apply(BoundBackground, ...) outputs for main, in the language requested by
+ * Accept (N-Triples if absent), written as a stream. Jobs run concurrently and share the
+ * bound backgrounds, one for each reasoner and profile. owl:imports in job inputs are not
+ * followed.
+ */
+public class ReasoningServer implements Closeable {
+    private static Logger logger = LoggerFactory.getLogger(ReasoningServer.class);
+    public static final String PATH = "/reason";
+
+    private final @Nonnull Model background;
+    private final @Nonnull Map<String, Future<BoundBackground>> bound
+            = new ConcurrentHashMap<>();
+    private @Nullable ClosureCache closureCache = null;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private @Nullable HttpServer http = null;
+    private @Nullable ExecutorService executor = null;
+
+    public ReasoningServer(@Nonnull Model background) {
+        this.background = background;
+    }
+
+    /**
+     * Obtain bound backgrounds through this cache. null disables caching.
+     */
+    public @Nonnull ReasoningServer withClosureCache(@Nullable ClosureCache closureCache) {
+        this.closureCache = closureCache;
+        return this;
+    }
+
+    /**
+     * Maximum number of jobs processed concurrently. Must be called before start().
+     */
+    public @Nonnull ReasoningServer withThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * Gets the background bound for the reasoner (with the profile already set), binding it
+     * if this is the first request for that reasoner and profile.
+     *
+     * Binding runs in the calling thread, outside the map lock, so that jobs for other
+     * reasoners and profiles are not blocked. Jobs for the same reasoner and profile wait
+     * for that binding. If binding fails, the next job tries again.
+     */
+    public @Nonnull BoundBackground bind(@Nonnull String name, @Nonnull SplitReasoner reasoner) {
+        String key = name + "\n" + reasoner.getProfile();
+        FutureTask<BoundBackground> task = new FutureTask<>(() -> {
+            Stopwatch sw = Stopwatch.createStarted();
+            BoundBackground b = closureCache != null ? closureCache.bind(reasoner, background)
+                                                     : reasoner.bindBackground(background);
+            logger.info("Bound background for reasoner {} with profile {} in {}",
+                        name, reasoner.getProfile(), sw);
+            return b;
+        });
+        Future<BoundBackground> future = bound.putIfAbsent(key, task);
+        if (future == null) {
+            future = task;
+            task.run();
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            bound.remove(key, future);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while binding background", e);
+        }
+    }
+
+    /**
+     * Starts listening on the loopback interface.
+     *
+     * @param port The port or 0 to choose any free port (see getPort()).
+     */
+    public void start(int port) throws IOException {
+        Preconditions.checkState(http == null, "Already started");
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newFixedThreadPool(threads);
+        http.setExecutor(executor);
+        http.createContext(PATH, this::handle);
+        http.start();
+        logger.info("Listening on http://{}:{}{}", http.getAddress().getHostString(),
+                    getPort(), PATH);
+    }
+
+    public int getPort() {
+        Preconditions.checkState(http != null, "Not started");
+        return http.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        if (http != null) {
+            http.stop(0);
+            http = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Blocks the calling thread until the server is closed.
+     */
+    public void await() throws InterruptedException {
+        ExecutorService executor = this.executor;
+        if (executor != null)
+            while (!executor.awaitTermination(1, TimeUnit.DAYS)) ;
+    }
+
+    /**
+     * Handles a job. If it fails after the 200 response headers were sent, the exception
+     * escapes so that the HttpServer drops the connection without ending the response body,
+     * letting the client see that the output is truncated.
+     */
+    private void handle(@Nonnull HttpExchange exchange) throws IOException {
+        boolean committed = false, completed = false;
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendError(exchange, 405, "Only POST is supported");
+                return;
+            }
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            SplitReasoner reasoner;
+            String name = params.getOrDefault("reasoner", "jena");
+            try {
+                reasoner = ReasonerRegistry.getReasoner(name);
+                reasoner.setProfile(params.get("profile"));
+            } catch (NoSuchElementException | IllegalArgumentException e) {
+                sendError(exchange, 400, "Bad reasoner or profile: " + e.getMessage());
+                return;
+            }
+            reasoner.setEchoEnabled(Boolean.parseBoolean(params.getOrDefault("echo", "true")));
+
+            Model main = ModelFactory.createDefaultModel();
+            try (InputStream is = exchange.getRequestBody()) {
+                RDFParser.create().source(is).context(null)
+                        .errorHandler(ErrorHandlerFactory.errorHandlerNoLogging)
+                        .lang(lang(exchange.getRequestHeaders().getFirst(HttpNames.hContentType),
+                                   RDFLanguages.TURTLE))
+                        .parse(main.getGraph());
+            } catch (RiotException e) {
+                sendError(exchange, 400, "Bad input: " + e.getMessage());
+                return;
+            }
+
+            Stopwatch sw = Stopwatch.createStarted();
+            Model out = ModelFactory.createDefaultModel();
+            reasoner.apply(bind(name, reasoner), main, out);
+            logger.info("Job with {} main triples produced {} triples in {}",
+                        main.size(), out.size(), sw);
+
+            Lang lang = lang(exchange.getRequestHeaders().getFirst(HttpNames.hAccept),
+                             RDFLanguages.NTRIPLES);
+            RDFFormat fmt = StreamingWriter.streamingFormat(RDFWriterRegistry
+                    .defaultSerialization(lang));
+            exchange.getResponseHeaders().set(HttpNames.hContentType,
+                                              lang.getContentType().getContentType());
+            exchange.sendResponseHeaders(200, 0);
+            committed = true;
+            OutputStream os = new BufferedOutputStream(exchange.getResponseBody());
+            if (fmt != null) StreamingWriter.write(os, out.getGraph(), out, fmt);
+            else             RDFDataMgr.write(os, out, lang);
+            os.close();
+            completed = true;
+        } catch (RuntimeException | Error e) {
+            if (committed) {
+                logger.error("Failed to write response to {}, aborting the connection",
+                             exchange.getRemoteAddress(), e);
+                throw new IOException("Aborted response after sending headers", e);
+            }
+            logger.error("Failed to process job from {}", exchange.getRemoteAddress(), e);
+            sendError(exchange, 500, e.toString());
+        } finally {
+            // closing a committed exchange would end the chunked body as if it were complete
+            if (!committed || completed) exchange.close();
+        }
+    }
+
+    /**
+     * Language of the first media type in a Content-Type or Accept header, or fallback.
+     */
+    private static @Nonnull Lang lang(@Nullable String header, @Nonnull Lang fallback) {
+        if (header == null) return fallback;
+        for (String type : header.split(",")) {
+            Lang lang = RDFLanguages.contentTypeToLang(type.replaceAll(";.*$", "").trim());
+            if (lang != null) return lang;
+        }
+        return fallback;
+    }
+
+    private static @Nonnull Map<String, String> parseQuery(@Nullable String query) {
+        Map<String, String> map = new HashMap<>();
+        if (query == null) return map;
+        try {
+            for (String pair : query.split("&")) {
+                int idx = pair.indexOf('=');
+                if (idx < 0) continue;
+                map.put(URLDecoder.decode(pair.substring(0, idx), "UTF-8"),
+                        URLDecoder.decode(pair.substring(idx + 1), "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e); // UTF-8 is always supported
+        }
+        return map;
+    }
+
+    private static void sendError(@Nonnull HttpExchange exchange, int code,
+                                  @Nonnull String message) {
+        try {
+            byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set(HttpNames.hContentType, "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(code, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        } catch (IOException e) {
+            logger.debug("Failed to send error {} to client", code, e);
+        }
+    }
+}
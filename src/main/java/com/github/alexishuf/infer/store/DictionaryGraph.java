@@ -0,0 +1,145 @@
+package com.github.alexishuf.infer.store;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.apache.jena.util.iterator.NullIterator;
+
+import javax.annotation.Nonnull;
+import java.util.NoSuchElementException;
+
+import static com.github.alexishuf.infer.store.TripleTable.ANY;
+import static com.github.alexishuf.infer.store.TripleTable.NONE;
+
+/**
+ * Graph that stores triples as int ids in a TripleTable.
+ *
+ * Several graphs may share a NodeDictionary, which allows consumers (e.g., the rl reasoner)
+ * to use their rows without converting from Node. Deleted triples are only marked as removed
+ * in the table (see TripleTable.remove()). Terms are matched by equality (as in TDB), not by literal value.
+ *
+ * Not thread-safe. Writers that share the dictionary must synchronize on getDictionary().
+ */
+public class DictionaryGraph extends GraphBase {
+    private static final int UNKNOWN = -2;
+
+    private final @Nonnull NodeDictionary dictionary;
+    private final @Nonnull TripleTable table;
+
+    public DictionaryGraph() {
+        this(new NodeDictionary());
+    }
+
+    public DictionaryGraph(@Nonnull NodeDictionary dictionary) {
+        this(dictionary, new TripleTable());
+    }
+
+    /**
+     * A graph over an existing table, whose ids are from dictionary.
+     */
+    public DictionaryGraph(@Nonnull NodeDictionary dictionary, @Nonnull TripleTable table) {
+        this.dictionary = dictionary;
+        this.table = table;
+    }
+
+    public @Nonnull NodeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * The underlying table. Rows marked by isDeleted() are not part of the graph.
+     */
+    public @Nonnull TripleTable getTable() {
+        return table;
+    }
+
+    public boolean isDeleted(int row) {
+        return table.isRemoved(row);
+    }
+
+    @Override
+    public void performAdd(Triple t) {
+        table.add(dictionary.intern(t.getSubject()), dictionary.intern(t.getPredicate()),
+                  dictionary.intern(t.getObject()));
+    }
+
+    @Override
+    public void performDelete(Triple t) {
+        int row = row(t);
+        if (row != NONE) table.remove(row);
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        return table.size() - table.removed();
+    }
+
+    @Override
+    protected boolean graphBaseContains(Triple t) {
+        if (!t.isConcrete()) return super.graphBaseContains(t);
+        return row(t) != NONE;
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+        int s = id(pattern.getSubject()), p = id(pattern.getPredicate()),
+            o = id(pattern.getObject());
+        if (s == UNKNOWN || p == UNKNOWN || o == UNKNOWN)
+            return NullIterator.instance();
+        return new RowIterator(s, p, o);
+    }
+
+    private int row(@Nonnull Triple t) {
+        int s = dictionary.lookup(t.getSubject());
+        int p = s == NONE ? NONE : dictionary.lookup(t.getPredicate());
+        int o = p == NONE ? NONE : dictionary.lookup(t.getObject());
+        return o == NONE ? NONE : table.find(s, p, o);
+    }
+
+    /**
+     * @return ANY for non-concrete nodes, the id of node or UNKNOWN if it was never interned.
+     */
+    private int id(@Nonnull Node node) {
+        if (!node.isConcrete()) return ANY;
+        int id = dictionary.lookup(node);
+        return id == NodeDictionary.NONE ? UNKNOWN : id;
+    }
+
+    private class RowIterator extends NiceIterator<Triple> {
+        private final int s, p, o;
+        private int row, current = NONE;
+
+        RowIterator(int s, int p, int o) {
+            this.s = s;
+            this.p = p;
+            this.o = o;
+            this.row = table.first(s, p, o);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return row != NONE;
+        }
+
+        @Override
+        public Triple next() {
+            if (row == NONE) throw new NoSuchElementException();
+            current = row;
+            row = table.next(row, s, p, o);
+            return Triple.create(dictionary.get(table.subject(current)),
+                                 dictionary.get(table.predicate(current)),
+                                 dictionary.get(table.object(current)));
+        }
+
+        @Override
+        public void remove() {
+            if (current == NONE) throw new IllegalStateException();
+            delete(Triple.create(dictionary.get(table.subject(current)),
+                                 dictionary.get(table.predicate(current)),
+                                 dictionary.get(table.object(current))));
+            current = NONE;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.alexishuf.infer.store;
+
+import org.apache.jena.graph.Node;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * Assigns dense int ids, starting from zero, to Nodes. Not thread-safe.
+ */
+public final class NodeDictionary {
+    public static final int NONE = -1;
+
+    private Node[] nodes = new Node[1024];
+    private int[] slots = new int[2048]; // id+1, 0 is empty
+    private int size = 0;
+
+    /**
+     * Gets the id of node, assigning a new one if needed.
+     */
+    public int intern(@Nonnull Node node) {
+        int i = mix(node.hashCode()) & (slots.length - 1);
+        for (; slots[i] != 0; i = (i + 1) & (slots.length - 1)) {
+            if (nodes[slots[i] - 1].equals(node)) return slots[i] - 1;
+        }
+        if (size == nodes.length) nodes = Arrays.copyOf(nodes, size * 2);
+        nodes[size] = node;
+        slots[i] = ++size;
+        if (size * 2 > slots.length) rehash();
+        return size - 1;
+    }
+
+    /**
+     * Gets the id of node or NONE if node was never interned.
+     */
+    public int lookup(@Nonnull Node node) {
+        for (int i = mix(node.hashCode()) & (slots.length - 1); slots[i] != 0;
+             i = (i + 1) & (slots.length - 1)) {
+            if (nodes[slots[i] - 1].equals(node)) return slots[i] - 1;
+        }
+        return NONE;
+    }
+
+    public @Nonnull Node get(int id) {
+        return nodes[id];
+    }
+
+    public boolean isLiteral(int id) {
+        return nodes[id].isLiteral();
+    }
+
+    public boolean isURI(int id) {
+        return nodes[id].isURI();
+    }
+
+    public boolean isBlank(int id) {
+        return nodes[id].isBlank();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * An independent copy, with the same ids.
+     */
+    public @Nonnull NodeDictionary copy() {
+        NodeDictionary copy = new NodeDictionary();
+        copy.nodes = Arrays.copyOf(nodes, nodes.length);
+        copy.slots = Arrays.copyOf(slots, slots.length);
+        copy.size = size;
+        return copy;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = mix(nodes[id].hashCode()) & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = id + 1;
+        }
+    }
+}
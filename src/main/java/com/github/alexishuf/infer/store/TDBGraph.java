@@ -0,0 +1,189 @@
+package com.github.alexishuf.infer.store;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.GraphEvents;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.apache.jena.graph.Node.ANY;
+
+/**
+ * A named graph of a TDBStore.
+ *
+ * Additions are buffered and handed to the writer thread of the store in batches. Reads
+ * first wait until the batches of this graph are committed. The size is counted once and
+ * kept until the next change, since TDB can only count by scanning. Closing does nothing,
+ * the store owns the dataset.
+ */
+public class TDBGraph extends GraphBase {
+    private static final int BATCH_SIZE = 65536;
+
+    private final @Nonnull TDBStore store;
+    private final @Nonnull DatasetGraph dsg;
+    private final @Nonnull Node name;
+    private List<Triple> batch = new ArrayList<>();
+    private long lastSubmitted = 0;
+    private int size = -1;
+    private long changes = 0;
+
+    TDBGraph(@Nonnull TDBStore store, @Nonnull Node name) {
+        this.store = store;
+        this.dsg = store.getDatasetGraph();
+        this.name = name;
+    }
+
+    public @Nonnull TDBStore getStore() {
+        return store;
+    }
+
+    public @Nonnull Node getName() {
+        return name;
+    }
+
+    @Override
+    protected PrefixMapping createPrefixMapping() {
+        return new PrefixMappingImpl();
+    }
+
+    @Override
+    public synchronized void performAdd(Triple t) {
+        size = -1;
+        ++changes;
+        batch.add(t);
+        if (batch.size() >= BATCH_SIZE) flush();
+    }
+
+    @Override
+    public synchronized void performDelete(Triple t) {
+        size = -1;
+        ++changes;
+        flush();
+        lastSubmitted = store.submit(() -> dsg.delete(name, t.getSubject(), t.getPredicate(),
+                                                      t.getObject()));
+    }
+
+    @Override
+    public void clear() {
+        synchronized (this) {
+            batch.clear();
+            size = 0;
+            ++changes;
+            lastSubmitted = store.submit(() -> dsg.deleteAny(name, ANY, ANY, ANY));
+        }
+        getEventManager().notifyEvent(this, GraphEvents.removeAll);
+    }
+
+    @Override
+    public void close() { }
+
+    /**
+     * Hands buffered additions to the writer thread of the store.
+     */
+    synchronized void flush() {
+        if (batch.isEmpty()) return;
+        List<Triple> triples = batch;
+        batch = new ArrayList<>();
+        lastSubmitted = store.submit(() -> {
+            for (Triple t : triples) dsg.add(name, t.getSubject(), t.getPredicate(), t.getObject());
+        });
+    }
+
+    private void sync() {
+        long last;
+        synchronized (this) {
+            flush();
+            last = lastSubmitted;
+        }
+        store.await(last);
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple pattern) {
+        sync();
+        store.beginRead();
+        try {
+            return new TxnIterator(dsg.find(name, pattern.getSubject(), pattern.getPredicate(),
+                                            pattern.getObject()));
+        } catch (RuntimeException e) {
+            store.endRead();
+            throw e;
+        }
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        long before;
+        synchronized (this) {
+            if (size >= 0) return size;
+            before = changes;
+        }
+        ExtendedIterator<Triple> it = find();
+        int count = 0;
+        try {
+            for (; it.hasNext(); it.next()) ++count;
+        } finally {
+            it.close();
+        }
+        synchronized (this) {
+            if (changes == before) size = count; // else, a concurrent change made it stale
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        ExtendedIterator<Triple> it = find();
+        try {
+            return !it.hasNext();
+        } finally {
+            it.close();
+        }
+    }
+
+    /**
+     * Ends its share of the read transaction once exhausted or closed.
+     */
+    private class TxnIterator extends NiceIterator<Triple> {
+        private final @Nonnull Iterator<Quad> it;
+        private boolean open = true;
+
+        TxnIterator(@Nonnull Iterator<Quad> it) {
+            this.it = it;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!open) return false;
+            if (it.hasNext()) return true;
+            close();
+            return false;
+        }
+
+        @Override
+        public Triple next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return it.next().asTriple();
+        }
+
+        @Override
+        public void close() {
+            if (!open) return;
+            open = false;
+            Iter.close(it);
+            store.endRead();
+        }
+    }
+}
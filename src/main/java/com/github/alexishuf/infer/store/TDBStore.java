@@ -0,0 +1,268 @@
+package com.github.alexishuf.infer.store;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.shared.JenaException;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.TDB2Factory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.apache.jena.graph.Node.ANY;
+
+/**
+ * A TDB2 dataset on disk holding the inputs and the inferences of a run in named graphs, so
+ * that they need not fit in the heap. The record of which sources were loaded allows later
+ * runs to skip parsing the same inputs again.
+ *
+ * TDB2 is only accessed within transactions, which are bound to threads. Graphs of this
+ * store open a read transaction in the calling thread when find() is called, which is
+ * shared by nested finds and ends when the last of their iterators is exhausted or closed.
+ * Additions are buffered and committed in batches by a single writer thread, thus reads and
+ * writes may be interleaved by any thread. A thread with an open iterator keeps seeing the
+ * snapshot from when the iterator was created.
+ */
+public class TDBStore implements Closeable {
+    public static final @Nonnull Node MAIN = NodeFactory.createURI("urn:infer:main");
+    public static final @Nonnull Node BACKGROUND = NodeFactory.createURI("urn:infer:background");
+    public static final @Nonnull Node OUTPUT = NodeFactory.createURI("urn:infer:output");
+    public static final @Nonnull Node OUTPUT_BG = NodeFactory.createURI("urn:infer:output-bg");
+    private static final @Nonnull Node META = NodeFactory.createURI("urn:infer:meta");
+    private static final @Nonnull Node SOURCES = NodeFactory.createURI("urn:infer:sources");
+    private static final @Nonnull Node LANG = NodeFactory.createURI("urn:infer:lang");
+    private static final int MAX_PENDING_BATCHES = 2;
+
+    private final @Nonnull File dir;
+    private final @Nonnull DatasetGraph dsg;
+    private final @Nonnull ExecutorService writer;
+    private final @Nonnull Semaphore pending = new Semaphore(MAX_PENDING_BATCHES);
+    private final @Nonnull AtomicLong submitted = new AtomicLong();
+    private final @Nonnull Object commitLock = new Object();
+    private long committed = 0;
+    private volatile @Nullable RuntimeException writeError = null;
+    /* [0]: nested finds in the thread, [1]: 1 if their read transaction was begun by us */
+    private final @Nonnull ThreadLocal<int[]> reads = ThreadLocal.withInitial(() -> new int[2]);
+    private final @Nonnull Map<Node, TDBGraph> graphs = new HashMap<>();
+
+    /**
+     * Opens the TDB2 database at dir, creating it if needed.
+     */
+    public TDBStore(@Nonnull File dir) {
+        this.dir = dir;
+        this.dsg = TDB2Factory.connectDataset(dir.getPath()).asDatasetGraph();
+        this.writer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("tdb-writer").setDaemon(true).build());
+    }
+
+    public @Nonnull File getDir() {
+        return dir;
+    }
+
+    /**
+     * A model over the named graph name of the store (e.g., MAIN or OUTPUT). Prefixes are
+     * kept in memory and are only stored by setLoaded().
+     */
+    public synchronized @Nonnull Model getModel(@Nonnull Node name) {
+        TDBGraph graph = graphs.get(name);
+        if (graph == null) {
+            graphs.put(name, graph = new TDBGraph(this, name));
+            PrefixMapping prefixes = graph.getPrefixMapping();
+            read(() -> prefixes.setNsPrefixes(dsg.getGraph(name).getPrefixMapping()));
+        }
+        return ModelFactory.createModelForGraph(graph);
+    }
+
+    /**
+     * Whether MAIN and BACKGROUND hold the inputs that were recorded with setLoaded().
+     *
+     * @param sources description of the inputs, which must change when any input changes
+     */
+    public boolean isLoaded(@Nonnull String sources) {
+        return read(() -> dsg.contains(META, META, SOURCES, NodeFactory.createLiteral(sources)));
+    }
+
+    /**
+     * Language of the first input file given to setLoaded(), or null.
+     */
+    public @Nullable Lang getLang() {
+        return read(() -> {
+            Iterator<Quad> it = dsg.find(META, META, LANG, ANY);
+            if (!it.hasNext()) return null;
+            return RDFLanguages.nameToLang(it.next().getObject().getLiteralLexicalForm());
+        });
+    }
+
+    /**
+     * Records that MAIN and BACKGROUND, including their prefixes, were loaded from sources.
+     */
+    public void setLoaded(@Nonnull String sources, @Nullable Lang lang) {
+        Map<Node, PrefixMapping> prefixes = new HashMap<>();
+        synchronized (this) {
+            for (Node name : new Node[]{MAIN, BACKGROUND}) {
+                TDBGraph graph = graphs.get(name);
+                if (graph != null) prefixes.put(name, graph.getPrefixMapping());
+            }
+        }
+        await(submit(() -> {
+            prefixes.forEach((name, mapping) -> {
+                PrefixMapping stored = dsg.getGraph(name).getPrefixMapping();
+                stored.getNsPrefixMap().keySet().forEach(stored::removeNsPrefix);
+                stored.setNsPrefixes(mapping);
+            });
+            dsg.deleteAny(META, META, ANY, ANY);
+            dsg.add(META, META, SOURCES, NodeFactory.createLiteral(sources));
+            if (lang != null)
+                dsg.add(META, META, LANG, NodeFactory.createLiteral(lang.getName()));
+        }));
+    }
+
+    /**
+     * Removes all triples of MAIN and BACKGROUND and forgets their sources.
+     */
+    public void unload() {
+        clear(MAIN);
+        clear(BACKGROUND);
+        await(submit(() -> dsg.deleteAny(META, META, ANY, ANY)));
+    }
+
+    /**
+     * Removes all triples of the named graph.
+     */
+    public void clear(@Nonnull Node name) {
+        getModel(name).removeAll();
+    }
+
+    /**
+     * Commits all pending additions.
+     */
+    public void sync() {
+        long last;
+        synchronized (this) {
+            for (TDBGraph graph : graphs.values()) graph.flush();
+            last = submitted.get();
+        }
+        await(last);
+    }
+
+    @Override
+    public void close() {
+        try {
+            sync();
+        } finally {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            dsg.close();
+        }
+    }
+
+    @Nonnull DatasetGraph getDatasetGraph() {
+        return dsg;
+    }
+
+    /**
+     * Runs action in a write transaction of the writer thread, after all previously
+     * submitted actions. Blocks if there are too many pending actions.
+     *
+     * @return sequence number for await()
+     */
+    long submit(@Nonnull Runnable action) {
+        checkWriteError();
+        pending.acquireUninterruptibly();
+        synchronized (submitted) {
+            long seq = submitted.incrementAndGet();
+            writer.execute(() -> {
+                try {
+                    if (writeError == null) Txn.executeWrite(dsg, action);
+                } catch (RuntimeException e) {
+                    writeError = e;
+                } finally {
+                    pending.release();
+                    synchronized (commitLock) {
+                        committed = seq;
+                        commitLock.notifyAll();
+                    }
+                }
+            });
+            return seq;
+        }
+    }
+
+    /**
+     * Waits until the action with the given sequence number (and all before it) is committed.
+     */
+    void await(long seq) {
+        synchronized (commitLock) {
+            boolean interrupted = false;
+            while (committed < seq) {
+                try {
+                    commitLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        checkWriteError();
+    }
+
+    private void checkWriteError() {
+        RuntimeException e = writeError;
+        if (e != null) throw new JenaException("Failed to write to TDB2 store at " + dir, e);
+    }
+
+    /**
+     * Starts a read transaction in this thread, unless already in one.
+     */
+    void beginRead() {
+        int[] state = reads.get();
+        if (state[0]++ == 0 && !dsg.isInTransaction()) {
+            dsg.begin(ReadWrite.READ);
+            state[1] = 1;
+        }
+    }
+
+    /**
+     * Ends the read transaction started by the first of the nested beginRead() calls.
+     */
+    void endRead() {
+        int[] state = reads.get();
+        if (--state[0] == 0 && state[1] == 1) {
+            state[1] = 0;
+            dsg.end();
+        }
+    }
+
+    private <T> T read(@Nonnull Supplier<T> supplier) {
+        beginRead();
+        try {
+            return supplier.get();
+        } finally {
+            endRead();
+        }
+    }
+}
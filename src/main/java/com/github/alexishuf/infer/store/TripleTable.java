@@ -0,0 +1,311 @@
+package com.github.alexishuf.infer.store;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Append-only set of triples of int ids, stored in primitive arrays.
+ *
+ * Each triple is a row. Rows are numbered in insertion order, so that rows [a, b) are exactly
+ * the triples added between two points in time. Besides a hash table for membership tests,
+ * rows are chained in five indexes (by subject, predicate, object, subject+predicate and
+ * predicate+object). Every pattern is answered by walking one chain, from the most recently
+ * added row to the oldest, through first() and next(), without allocations. Rows added while
+ * walking a chain are not visited.
+ *
+ * Removed rows are only marked, and are skipped by all lookups. Adding a removed triple again
+ * appends a new row.
+ *
+ * Hash tables store only row numbers: keys are read from the rows themselves. Thus, a triple
+ * costs 8 ints in the rows plus a few ints in the hash tables, which are kept at most half
+ * full.
+ *
+ * Not thread-safe.
+ */
+public final class TripleTable {
+    public static final int ANY = -1;
+    public static final int NONE = -1;
+
+    private static final int S = 0, P = 1, O = 2, SP = 3, PO = 4, SCAN = 5, EXACT = 6;
+
+    private int size = 0;
+    private int[] s, p, o;
+    private int[] slots; // row+1, 0 is empty
+    private final int[][] next = new int[5][];
+    private final int[][] heads = new int[5][]; // newest row+1 for each key, 0 is empty
+    private final int[] keys = new int[5];
+    private BitSet removed = new BitSet();
+    private int removedCount = 0;
+
+    public TripleTable() {
+        this(1024);
+    }
+
+    public TripleTable(int expected) {
+        int capacity = Math.max(16, expected);
+        s = new int[capacity];
+        p = new int[capacity];
+        o = new int[capacity];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = new int[capacity];
+            heads[i] = new int[i == P ? 64 : Integer.highestOneBit(Math.max(16, capacity / 2))];
+        }
+        slots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    }
+
+    /**
+     * Number of rows, including removed rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of removed rows.
+     */
+    public int removed() {
+        return removedCount;
+    }
+
+    public boolean isRemoved(int row) {
+        return removedCount > 0 && removed.get(row);
+    }
+
+    /**
+     * Marks row as removed. Its ids remain readable through subject(), predicate() and
+     * object().
+     */
+    public void remove(int row) {
+        if (!removed.get(row)) {
+            removed.set(row);
+            ++removedCount;
+        }
+    }
+
+    /**
+     * An independent copy, with the same rows.
+     */
+    public @Nonnull TripleTable copy() {
+        TripleTable copy = new TripleTable(16);
+        copy.size = size;
+        copy.s = Arrays.copyOf(s, s.length);
+        copy.p = Arrays.copyOf(p, p.length);
+        copy.o = Arrays.copyOf(o, o.length);
+        copy.slots = Arrays.copyOf(slots, slots.length);
+        for (int i = 0; i < next.length; i++) {
+            copy.next[i] = Arrays.copyOf(next[i], next[i].length);
+            copy.heads[i] = Arrays.copyOf(heads[i], heads[i].length);
+            copy.keys[i] = keys[i];
+        }
+        copy.removed = (BitSet) removed.clone();
+        copy.removedCount = removedCount;
+        return copy;
+    }
+
+    public int subject(int row) {
+        return s[row];
+    }
+
+    public int predicate(int row) {
+        return p[row];
+    }
+
+    public int object(int row) {
+        return o[row];
+    }
+
+    /**
+     * Adds a triple.
+     *
+     * @return the new row or NONE if the triple was already present.
+     */
+    public int add(int subj, int pred, int obj) {
+        int i = hash(subj, pred, obj) & (slots.length - 1);
+        for (; slots[i] != 0; i = (i + 1) & (slots.length - 1)) {
+            int r = slots[i] - 1;
+            if (s[r] == subj && p[r] == pred && o[r] == obj) {
+                if (!isRemoved(r)) return NONE;
+                break; // slot will point to the new row
+            }
+        }
+        if (size == s.length) grow();
+        int row = size++;
+        s[row] = subj;
+        p[row] = pred;
+        o[row] = obj;
+        slots[i] = row + 1;
+        for (int index = S; index <= PO; index++) link(index, row);
+        if (size * 2 > slots.length) rehash();
+        return row;
+    }
+
+    /**
+     * @return the row of the given triple or NONE if not present.
+     */
+    public int find(int subj, int pred, int obj) {
+        for (int i = hash(subj, pred, obj) & (slots.length - 1); slots[i] != 0;
+             i = (i + 1) & (slots.length - 1)) {
+            int r = slots[i] - 1;
+            if (s[r] == subj && p[r] == pred && o[r] == obj) return isRemoved(r) ? NONE : r;
+        }
+        return NONE;
+    }
+
+    public boolean contains(int subj, int pred, int obj) {
+        return find(subj, pred, obj) != NONE;
+    }
+
+    /**
+     * First row matching the pattern. Any of the terms may be ANY.
+     *
+     * @return the row or NONE if there is no match.
+     */
+    public int first(int subj, int pred, int obj) {
+        int index = indexFor(subj, pred, obj);
+        int row;
+        switch (index) {
+            case EXACT: return find(subj, pred, obj);
+            case SCAN: return scan(0);
+            default: row = head(index, subj, pred, obj);
+        }
+        return skip(index, row, subj, pred, obj);
+    }
+
+    /**
+     * Next row after row that matches the pattern. The pattern must be the same given to
+     * the first() call that started the iteration.
+     */
+    public int next(int row, int subj, int pred, int obj) {
+        int index = indexFor(subj, pred, obj);
+        switch (index) {
+            case EXACT: return NONE;
+            case SCAN: return scan(row + 1);
+            default: return skip(index, next[index][row], subj, pred, obj);
+        }
+    }
+
+    /**
+     * Number of triples with the given predicate.
+     */
+    public int count(int pred) {
+        int n = 0;
+        for (int r = head(P, ANY, pred, ANY); r != NONE; r = next[P][r]) {
+            if (!isRemoved(r)) ++n;
+        }
+        return n;
+    }
+
+    private int scan(int row) {
+        while (row < size && isRemoved(row)) ++row;
+        return row < size ? row : NONE;
+    }
+
+    private int skip(int index, int row, int subj, int pred, int obj) {
+        int[] chain = next[index];
+        while (row != NONE && (!((subj == ANY || s[row] == subj) && (pred == ANY || p[row] == pred)
+                                 && (obj == ANY || o[row] == obj)) || isRemoved(row))) {
+            row = chain[row];
+        }
+        return row;
+    }
+
+    private static int indexFor(int subj, int pred, int obj) {
+        if (subj != ANY) {
+            if (pred != ANY) return obj != ANY ? EXACT : SP;
+            return obj != ANY ? O : S;
+        }
+        if (pred != ANY) return obj != ANY ? PO : P;
+        return obj != ANY ? O : SCAN;
+    }
+
+    /**
+     * Newest row with the same key as (subj, pred, obj) under index or NONE.
+     */
+    private int head(int index, int subj, int pred, int obj) {
+        int[] table = heads[index];
+        int mask = table.length - 1;
+        for (int i = keyHash(index, subj, pred, obj) & mask; table[i] != 0; i = (i + 1) & mask) {
+            if (sameKey(index, table[i] - 1, subj, pred, obj)) return table[i] - 1;
+        }
+        return NONE;
+    }
+
+    /**
+     * Makes row the head of its chain in index.
+     */
+    private void link(int index, int row) {
+        int[] table = heads[index];
+        int mask = table.length - 1, i = keyHash(index, s[row], p[row], o[row]) & mask;
+        for (; table[i] != 0; i = (i + 1) & mask) {
+            int r = table[i] - 1;
+            if (sameKey(index, r, s[row], p[row], o[row])) {
+                next[index][row] = r;
+                table[i] = row + 1;
+                return;
+            }
+        }
+        next[index][row] = NONE;
+        table[i] = row + 1;
+        if (++keys[index] * 2 > table.length) rehashHeads(index);
+    }
+
+    private boolean sameKey(int index, int row, int subj, int pred, int obj) {
+        switch (index) {
+            case S:  return s[row] == subj;
+            case P:  return p[row] == pred;
+            case O:  return o[row] == obj;
+            case SP: return s[row] == subj && p[row] == pred;
+            default: return p[row] == pred && o[row] == obj;
+        }
+    }
+
+    private static int keyHash(int index, int subj, int pred, int obj) {
+        int h;
+        switch (index) {
+            case S:  h = subj; break;
+            case P:  h = pred; break;
+            case O:  h = obj; break;
+            case SP: h = subj * 0x9E3779B9 + pred; break;
+            default: h = pred * 0x9E3779B9 + obj; break;
+        }
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehashHeads(int index) {
+        int[] old = heads[index], table = new int[old.length * 2];
+        int mask = table.length - 1;
+        for (int entry : old) {
+            if (entry == 0) continue;
+            int r = entry - 1, i = keyHash(index, s[r], p[r], o[r]) & mask;
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = entry;
+        }
+        heads[index] = table;
+    }
+
+    private static int hash(int subj, int pred, int obj) {
+        int h = subj * 0x9E3779B9 + pred * 0x85EBCA6B + obj * 0xC2B2AE35;
+        return h ^ (h >>> 15);
+    }
+
+    private void grow() {
+        int capacity = s.length + (s.length >> 1);
+        s = Arrays.copyOf(s, capacity);
+        p = Arrays.copyOf(p, capacity);
+        o = Arrays.copyOf(o, capacity);
+        for (int i = 0; i < next.length; i++) next[i] = Arrays.copyOf(next[i], capacity);
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int r = 0; r < size; r++) {
+            if (isRemoved(r)) continue;
+            int i = hash(s[r], p[r], o[r]) & mask;
+            while (slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = r + 1;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.alexishuf.infer.utils;
+
+import com.github.alexishuf.infer.store.DictionaryGraph;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * StreamRDF that adds triples to a graph shared by several threads.
+ *
+ * Triples are buffered and added in batches while holding the graph monitor (or the monitor
+ * of the shared dictionary of a DictionaryGraph), so that concurrent parsers contend for the
+ * graph once per batch instead of once per triple.
+ */
+class BatchingGraphSink extends StreamRDFBase {
+    private static final int BATCH_SIZE = 8192;
+
+    private final @Nonnull Graph graph;
+    private final @Nonnull Object lock;
+    private final List<Triple> batch = new ArrayList<>(BATCH_SIZE);
+
+    BatchingGraphSink(@Nonnull Graph graph) {
+        this.graph = graph;
+        this.lock = graph instanceof DictionaryGraph
+                  ? ((DictionaryGraph) graph).getDictionary() : graph;
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        batch.add(triple);
+        if (batch.size() >= BATCH_SIZE) flush();
+    }
+
+    @Override
+    public void quad(Quad quad) {
+        if (quad.isTriple() || quad.isDefaultGraph()) triple(quad.asTriple());
+    }
+
+    @Override
+    public void finish() {
+        flush();
+    }
+
+    private void flush() {
+        synchronized (lock) {
+            for (Triple triple : batch) graph.add(triple);
+        }
+        batch.clear();
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.alexishuf.infer.utils;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.StreamRDF;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Parses line-based RDF syntaxes (N-Triples and N-Quads) in parallel.
+ *
+ * The file is split into chunks that end at newline boundaries, each chunk is memory-mapped
+ * and parsed by a worker of the caller. All chunks of a file share the same blank node label
+ * scope, so that a label used in two chunks still denotes the same blank node.
+ */
+class ChunkedLineParser {
+    private static final int SCAN_BUFFER = 8192;
+
+    static boolean supports(Lang lang) {
+        return RDFLanguages.NTRIPLES.equals(lang) || RDFLanguages.NQUADS.equals(lang);
+    }
+
+    /**
+     * A [begin, end) byte range of a file that can be parsed independently of the others.
+     */
+    static class Chunk {
+        final @Nonnull File file;
+        final @Nonnull Lang lang;
+        final @Nonnull UUID scope;
+        final long begin, end;
+
+        Chunk(@Nonnull File file, @Nonnull Lang lang, @Nonnull UUID scope, long begin,
+              long end) {
+            this.file = file;
+            this.lang = lang;
+            this.scope = scope;
+            this.begin = begin;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Splits file into chunks of roughly chunkSize bytes, in file order. The caller decides
+     * how the chunks are scheduled, so that parsing several files shares the same workers.
+     */
+    static @Nonnull List<Chunk> split(@Nonnull File file, @Nonnull Lang lang,
+                                      long chunkSize) throws IOException {
+        UUID scope = UUID.randomUUID();
+        List<Chunk> chunks = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (long[] range : split(ch, chunkSize))
+                chunks.add(new Chunk(file, lang, scope, range[0], range[1]));
+        }
+        return chunks;
+    }
+
+    /**
+     * Memory-maps and parses chunk into sink, which gets start() and finish() calls.
+     *
+     * @return sink
+     */
+    static @Nonnull <S extends StreamRDF> S parse(@Nonnull Chunk chunk,
+                                                 @Nonnull S sink) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel ch = FileChannel.open(chunk.file.toPath(), StandardOpenOption.READ)) {
+            buffer = ch.map(FileChannel.MapMode.READ_ONLY, chunk.begin, chunk.end - chunk.begin);
+        }
+        RDFParser.create().source(new ByteBufferInputStream(buffer)).lang(chunk.lang)
+                .context(null).labelToNode(LabelToNode.createScopeByDocumentHash(chunk.scope))
+                .parse(sink);
+        return sink;
+    }
+
+    /**
+     * Splits the file into [begin, end) ranges of roughly chunkSize bytes. All but the last
+     * range end just after a '\n'.
+     */
+    private static @Nonnull List<long[]> split(@Nonnull FileChannel ch,
+                                               long chunkSize) throws IOException {
+        chunkSize = Math.max(1, Math.min(chunkSize, Integer.MAX_VALUE / 2));
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER);
+        long size = ch.size(), begin = 0;
+        while (begin < size) {
+            long end = Math.min(begin + chunkSize, size);
+            while (end < size) {
+                buffer.clear();
+                int n = ch.read(buffer, end);
+                int i = 0;
+                while (i < n && buffer.get(i) != '\n') ++i;
+                end += i < n ? i + 1 : n;
+                if (i < n) break;
+            }
+            chunks.add(new long[]{begin, end});
+            begin = end;
+        }
+        return chunks;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
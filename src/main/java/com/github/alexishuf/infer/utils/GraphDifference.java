@@ -0,0 +1,102 @@
+package com.github.alexishuf.infer.utils;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.reasoner.InfGraph;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Computes in - s1 - s2 - ... - sN in a single pass over in.
+ *
+ * Subtrahends that are plain graphs are probed with Graph.contains(), which is a hash lookup
+ * for in-memory graphs. Querying an InfGraph may trigger reasoning for every probe, thus
+ * such graphs are materialized into hash sets once, when added.
+ */
+public class GraphDifference {
+    private final List<Graph> graphs = new ArrayList<>();
+    private final List<Set<Triple>> sets = new ArrayList<>();
+
+    public @Nonnull GraphDifference minus(@Nonnull Graph graph) {
+        if (graph instanceof InfGraph) sets.add(snapshot(graph));
+        else graphs.add(graph);
+        return this;
+    }
+
+    public @Nonnull GraphDifference minus(@Nonnull Set<Triple> triples) {
+        sets.add(triples);
+        return this;
+    }
+
+    public boolean excludes(@Nonnull Triple triple) {
+        for (Set<Triple> set : sets) {
+            if (set.contains(triple)) return true;
+        }
+        for (Graph graph : graphs) {
+            if (graph.contains(triple)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds to out all triples in in that are not in any subtrahend.
+     *
+     * @param seen if non-null, receives all triples of in, including excluded ones.
+     */
+    public void apply(@Nonnull Graph in, @Nonnull Graph out, @Nullable Set<Triple> seen) {
+        ExtendedIterator<Triple> it = in.find();
+        try {
+            while (it.hasNext()) {
+                Triple triple = it.next();
+                if (seen != null) seen.add(triple);
+                if (!excludes(triple)) out.add(triple);
+            }
+        } finally {
+            it.close();
+        }
+    }
+
+    public void apply(@Nonnull Graph in, @Nonnull Graph out) {
+        apply(in, out, null);
+    }
+
+    /**
+     * Sends to out (with triple()) all triples in in that are not in any subtrahend.
+     *
+     * @return number of triples sent
+     */
+    public long apply(@Nonnull Graph in, @Nonnull StreamRDF out) {
+        long count = 0;
+        ExtendedIterator<Triple> it = in.find();
+        try {
+            while (it.hasNext()) {
+                Triple triple = it.next();
+                if (!excludes(triple)) {
+                    out.triple(triple);
+                    ++count;
+                }
+            }
+        } finally {
+            it.close();
+        }
+        return count;
+    }
+
+    public static @Nonnull Set<Triple> snapshot(@Nonnull Graph graph) {
+        Set<Triple> set = new HashSet<>();
+        ExtendedIterator<Triple> it = graph.find();
+        try {
+            while (it.hasNext()) set.add(it.next());
+        } finally {
+            it.close();
+        }
+        return set;
+    }
+}
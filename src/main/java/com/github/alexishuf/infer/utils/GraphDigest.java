@@ -0,0 +1,137 @@
+package com.github.alexishuf.infer.utils;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Content hash of a graph that does not depend on triple order nor on blank node labels.
+ *
+ * Triple hashes are combined by addition. Blank nodes are hashed by color refinement: each
+ * round, the hash of a blank node becomes the sum of the hashes of the triples it occurs in,
+ * computed with the previous round hashes of blank nodes. When the rounds tell all blank
+ * nodes apart, their hashes are also canonical labels, which identify the same blank node
+ * in another parse of the same document(s).
+ */
+public class GraphDigest {
+    private static final HashFunction function = Hashing.murmur3_128();
+    private static final int MAX_ROUNDS = 64;
+
+    private final @Nonnull String digest;
+    private final @Nonnull Map<Node, String> labels = new HashMap<>();
+    private final boolean canonical;
+
+    public GraphDigest(@Nonnull Graph graph) {
+        List<Triple> blankTriples = new ArrayList<>();
+        Map<Node, long[]> hashes = new HashMap<>();
+        ExtendedIterator<Triple> it = graph.find();
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                if (!t.getSubject().isBlank() && !t.getObject().isBlank()) continue;
+                blankTriples.add(t);
+                if (t.getSubject().isBlank()) hashes.put(t.getSubject(), new long[2]);
+                if (t.getObject().isBlank()) hashes.put(t.getObject(), new long[2]);
+            }
+        } finally {
+            it.close();
+        }
+
+        int distinct = 1;
+        for (int round = 0; round < MAX_ROUNDS && distinct < hashes.size(); round++) {
+            Map<Node, long[]> next = new HashMap<>();
+            hashes.forEach((node, h) -> next.put(node, h.clone()));
+            for (Triple t : blankTriples) {
+                long[] h = hash(t, hashes);
+                if (t.getSubject().isBlank()) add(next.get(t.getSubject()), h);
+                if (t.getObject().isBlank()) add(next.get(t.getObject()), h);
+            }
+            hashes = next;
+            int count = (int) hashes.values().stream().map(Arrays::toString).distinct().count();
+            if (count <= distinct && round > 0) break;
+            distinct = count;
+        }
+        canonical = hashes.isEmpty() || distinct == hashes.size();
+        hashes.forEach((node, h) -> labels.put(node, String.format("%016x%016x", h[0], h[1])));
+
+        long[] sum = new long[2];
+        long count = 0;
+        it = graph.find();
+        try {
+            while (it.hasNext()) {
+                add(sum, hash(it.next(), hashes));
+                ++count;
+            }
+        } finally {
+            it.close();
+        }
+        digest = String.format("%d-%016x%016x", count, sum[0], sum[1]);
+    }
+
+    public @Nonnull String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Whether all blank nodes got distinct labels.
+     */
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    /**
+     * Label of a blank node of the graph, or null if node is not a blank node in the graph.
+     */
+    public @Nullable String getLabel(@Nonnull Node node) {
+        return labels.get(node);
+    }
+
+    /**
+     * Blank nodes of the graph indexed by their label. If the labels are not canonical, only
+     * one of the nodes sharing a label is present.
+     */
+    public @Nonnull Map<String, Node> getBlankNodes() {
+        Map<String, Node> map = new HashMap<>();
+        labels.forEach((node, label) -> map.put(label, node));
+        return map;
+    }
+
+    private static void add(@Nonnull long[] sum, @Nonnull long[] hash) {
+        sum[0] += hash[0];
+        sum[1] += hash[1];
+    }
+
+    private static @Nonnull long[] hash(@Nonnull Triple t, @Nonnull Map<Node, long[]> blanks) {
+        Hasher hasher = function.newHasher();
+        put(hasher, t.getSubject(), blanks);
+        put(hasher, t.getPredicate(), blanks);
+        put(hasher, t.getObject(), blanks);
+        ByteBuffer bb = ByteBuffer.wrap(hasher.hash().asBytes());
+        return new long[]{bb.getLong(), bb.getLong()};
+    }
+
+    private static void put(@Nonnull Hasher hasher, @Nonnull Node node,
+                            @Nonnull Map<Node, long[]> blanks) {
+        if (node.isBlank()) {
+            long[] h = blanks.get(node);
+            hasher.putChar('_').putLong(h[0]).putLong(h[1]);
+        } else if (node.isLiteral()) {
+            hasher.putChar('"').putString(node.getLiteralLexicalForm(), StandardCharsets.UTF_8)
+                    .putChar('^').putString(node.getLiteralDatatypeURI(), StandardCharsets.UTF_8)
+                    .putChar('@').putString(node.getLiteralLanguage(), StandardCharsets.UTF_8);
+        } else {
+            hasher.putChar('<').putString(node.toString(), StandardCharsets.UTF_8);
+        }
+        hasher.putChar('\0');
+    }
+}
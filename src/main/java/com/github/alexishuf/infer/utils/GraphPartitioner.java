@@ -0,0 +1,228 @@
+package com.github.alexishuf.infer.utils;
+
+import com.github.alexishuf.infer.store.NodeDictionary;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.OWL2;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Splits instance triples into partitions that can be reasoned independently against the
+ * same schema.
+ *
+ * Partitions are unions of connected components, where two triples are connected if they
+ * share a subject or object. Objects of rdf:type only connect if they also occur in another
+ * position, so that instances of the same class are not connected through it. Instance
+ * triples of the background also connect the nodes they mention, since rules can join main
+ * triples through them (e.g., a transitive property chaining main and background
+ * triples). Rules that join instance triples join them on a shared node, thus they do not
+ * span two components, with two exceptions that make partition() return null, requiring a
+ * single global pass:
+ * <ul>
+ *     <li>main has schema (e.g., a property declared transitive, or a class being
+ *         defined), which would have to be in all partitions;</li>
+ *     <li>the background has owl:hasValue restrictions, which link all their instances,
+ *         from any component, to the same individual.</li>
+ * </ul>
+ */
+public class GraphPartitioner {
+    private static Logger logger = LoggerFactory.getLogger(GraphPartitioner.class);
+    private static final @Nonnull Set<Node> INSTANCE_PREDICATES = new HashSet<>(asList(
+            RDF.type.asNode(), RDFS.label.asNode(), RDFS.comment.asNode(),
+            RDFS.seeAlso.asNode(), RDFS.isDefinedBy.asNode(), OWL.sameAs.asNode(),
+            OWL.differentFrom.asNode()));
+    private static final @Nonnull Set<Node> INSTANCE_TYPES = new HashSet<>(asList(
+            OWL.Thing.asNode(), RDFS.Resource.asNode(),
+            OWL2.NamedIndividual.asNode()));
+
+    private final int partitions;
+
+    public GraphPartitioner(int partitions) {
+        this.partitions = partitions;
+    }
+
+    /**
+     * Same as partition(graph, null), for a graph without background.
+     */
+    public @Nullable List<Graph> partition(@Nonnull Graph graph) {
+        return partition(graph, null);
+    }
+
+    /**
+     * Splits the triples of graph into at most the given number of partitions of similar
+     * sizes. Returns null if graph has schema triples or a single component, or if
+     * background has owl:hasValue restrictions.
+     *
+     * @param background triples (preferably the closure) that will be reasoned together with
+     *                   each partition, or null.
+     */
+    public @Nullable List<Graph> partition(@Nonnull Graph graph, @Nullable Graph background) {
+        if (partitions < 2) return null;
+        if (background != null && background.contains(Node.ANY, OWL.hasValue.asNode(),
+                                                       Node.ANY)) {
+            logger.info("Background has owl:hasValue restrictions, reasoning main in a " +
+                        "single partition");
+            return null;
+        }
+        NodeDictionary dictionary = new NodeDictionary();
+        UnionFind components = new UnionFind();
+        Set<Node> predicates = new HashSet<>();
+        ExtendedIterator<Triple> it = graph.find();
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                if (isSchema(t)) {
+                    logger.info("Main has schema triples (e.g., {}), reasoning it in a " +
+                                "single partition", t);
+                    return null;
+                }
+                predicates.add(t.getPredicate());
+                int s = dictionary.intern(t.getSubject());
+                components.add(s);
+                if (t.getPredicate().equals(RDF.type.asNode())) continue;
+                int o = dictionary.intern(t.getObject());
+                components.add(o);
+                components.union(s, o);
+            }
+        } finally {
+            it.close();
+        }
+        for (Node predicate : predicates) {
+            if (dictionary.lookup(predicate) != NodeDictionary.NONE) {
+                logger.info("Property {} is described in main, reasoning it in a single " +
+                            "partition", predicate);
+                return null;
+            }
+        }
+        if (background != null) union(background, dictionary, components);
+        it = graph.find(Node.ANY, RDF.type.asNode(), Node.ANY);
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                int o = dictionary.lookup(t.getObject());
+                if (o != NodeDictionary.NONE)
+                    components.union(dictionary.lookup(t.getSubject()), o);
+            }
+        } finally {
+            it.close();
+        }
+
+        /* assign components, largest first, to the partition with fewest triples */
+        Map<Integer, long[]> sizes = new HashMap<>();
+        it = graph.find();
+        try {
+            while (it.hasNext()) {
+                int root = components.find(dictionary.lookup(it.next().getSubject()));
+                sizes.computeIfAbsent(root, k -> new long[1])[0]++;
+            }
+        } finally {
+            it.close();
+        }
+        if (sizes.size() < 2) return null;
+        List<Map.Entry<Integer, long[]>> entries = new ArrayList<>(sizes.entrySet());
+        entries.sort(Comparator.comparingLong(e -> -e.getValue()[0]));
+        int count = Math.min(partitions, entries.size());
+        long[] loads = new long[count];
+        Map<Integer, Integer> assignment = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+                Comparator.<Integer>comparingLong(i -> loads[i]).thenComparing(i -> i));
+        for (int i = 0; i < count; i++) queue.add(i);
+        for (Map.Entry<Integer, long[]> e : entries) {
+            int partition = queue.poll();
+            loads[partition] += e.getValue()[0];
+            assignment.put(e.getKey(), partition);
+            queue.add(partition);
+        }
+
+        List<Graph> graphs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) graphs.add(GraphFactory.createDefaultGraph());
+        it = graph.find();
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                int root = components.find(dictionary.lookup(t.getSubject()));
+                graphs.get(assignment.get(root)).add(t);
+            }
+        } finally {
+            it.close();
+        }
+        logger.info("Split {} main triples in {} components and {} partitions, the largest " +
+                    "with {} triples", graph.size(), entries.size(), count,
+                    Arrays.stream(loads).max().orElse(0));
+        return graphs;
+    }
+
+    /**
+     * Connects the components of nodes linked by instance triples of background. Nodes that
+     * do not occur in main are added, as they may link several main nodes.
+     */
+    private static void union(@Nonnull Graph background, @Nonnull NodeDictionary dictionary,
+                              @Nonnull UnionFind components) {
+        ExtendedIterator<Triple> it = background.find();
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                if (isSchema(t) || t.getSubject().equals(t.getObject())) continue;
+                if (t.getPredicate().equals(RDF.type.asNode())) {
+                    int s = dictionary.lookup(t.getSubject());
+                    int o = dictionary.lookup(t.getObject());
+                    if (s != NodeDictionary.NONE && o != NodeDictionary.NONE)
+                        components.union(s, o);
+                    continue;
+                }
+                int s = dictionary.intern(t.getSubject()), o = dictionary.intern(t.getObject());
+                components.add(s);
+                components.add(o);
+                components.union(s, o);
+            }
+        } finally {
+            it.close();
+        }
+    }
+
+    /**
+     * Whether some triple of graph may describe classes or properties instead of instances.
+     */
+    public static boolean hasSchema(@Nonnull Graph graph) {
+        ExtendedIterator<Triple> it = graph.find();
+        try {
+            while (it.hasNext()) {
+                if (isSchema(it.next())) return true;
+            }
+            return false;
+        } finally {
+            it.close();
+        }
+    }
+
+    /**
+     * Whether the triple may describe classes or properties instead of instances.
+     */
+    private static boolean isSchema(@Nonnull Triple t) {
+        Node p = t.getPredicate();
+        if (p.equals(RDF.type.asNode())) {
+            Node o = t.getObject();
+            return o.isURI() && isVocabulary(o.getURI()) && !INSTANCE_TYPES.contains(o);
+        }
+        return p.isURI() && (p.getURI().startsWith(RDFS.getURI())
+                || p.getURI().startsWith(OWL.NS)) && !INSTANCE_PREDICATES.contains(p);
+    }
+
+    private static boolean isVocabulary(@Nonnull String uri) {
+        return uri.startsWith(RDF.getURI()) || uri.startsWith(RDFS.getURI())
+                || uri.startsWith(OWL.NS);
+    }
+}
@@ -0,0 +1,290 @@
+package com.github.alexishuf.infer.utils;
+
+import com.google.common.hash.Hashing;
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.*;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * On-disk cache of dereferenced http(s) documents.
+ *
+ * Each URI is stored pre-parsed as RDF Thrift together with a properties file holding the
+ * HTTP validators (ETag and Last-Modified), the fetch time and the document prefixes. Entries
+ * younger than the TTL are used without touching the network; older entries are revalidated
+ * with a conditional GET. In offline mode, the network is never used.
+ */
+public class ImportCache {
+    private static Logger logger = LoggerFactory.getLogger(ImportCache.class);
+    public static final long DEFAULT_TTL = TimeUnit.DAYS.toSeconds(1);
+
+    private static final String URI = "uri";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "last-modified";
+    private static final String FETCHED = "fetched";
+    private static final String PREFIX = "prefix.";
+    private static final int MAX_REDIRECTS = 10;
+
+    private final @Nonnull File dir;
+    private long ttlMillis = TimeUnit.SECONDS.toMillis(DEFAULT_TTL);
+    private boolean offline = false;
+
+    public ImportCache(@Nonnull File dir) {
+        this.dir = dir;
+    }
+
+    public @Nonnull ImportCache withTTL(long seconds) {
+        ttlMillis = TimeUnit.SECONDS.toMillis(seconds);
+        return this;
+    }
+
+    public @Nonnull ImportCache withOffline(boolean offline) {
+        this.offline = offline;
+        return this;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    public static boolean isCacheable(@Nonnull String uri) {
+        return uri.matches("(?i)^https?://.*");
+    }
+
+    /**
+     * Parses the document at uri, from the cache or from the network, into sink.
+     *
+     * @param hintLang Language to use when the server does not send an useful Content-Type
+     * @return false if the document was not found (or not cached in offline mode).
+     */
+    public boolean get(@Nonnull String uri, @Nullable Lang hintLang, @Nonnull StreamRDF sink) {
+        String key = Hashing.sha256().hashString(uri, StandardCharsets.UTF_8).toString();
+        File dataFile = new File(dir, key + ".rt"), metaFile = new File(dir, key + ".properties");
+        Properties meta = readMeta(metaFile);
+        if (meta != null && !dataFile.exists()) meta = null;
+
+        if (meta != null) {
+            long age = System.currentTimeMillis() - Long.parseLong(meta.getProperty(FETCHED, "0"));
+            if (offline || age < ttlMillis) return readData(dataFile, meta, sink);
+        } else if (offline) {
+            logger.warn("{} is not cached and offline mode is enabled.", uri);
+            return false;
+        }
+
+        HttpURLConnection conn = null;
+        try {
+            conn = open(uri, meta);
+            int code = conn.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && meta != null) {
+                meta.setProperty(FETCHED, String.valueOf(System.currentTimeMillis()));
+                writeMeta(metaFile, meta);
+                return readData(dataFile, meta, sink);
+            } else if (code == HttpURLConnection.HTTP_NOT_FOUND
+                    || code == HttpURLConnection.HTTP_GONE) {
+                throw new RiotNotFoundException(uri);
+            } else if (code / 100 != 2) {
+                if (meta != null) {
+                    logger.warn("Got {} for {}, using stale cached copy.", code, uri);
+                    return readData(dataFile, meta, sink);
+                }
+                throw new HttpException(code, conn.getResponseMessage(), null);
+            }
+
+            String base = conn.getURL().toString();
+            store(uri, base, conn, guessLang(conn, base, hintLang), sink, dataFile, metaFile);
+            return true;
+        } catch (IOException e) {
+            if (meta != null) {
+                logger.warn("Failed to revalidate {}, using stale cached copy.", uri, e);
+                return readData(dataFile, meta, sink);
+            }
+            throw new HttpException(uri, e);
+        } finally {
+            if (conn != null) conn.disconnect();
+        }
+    }
+
+    /**
+     * Opens a conditional GET to uri, following up to MAX_REDIRECTS redirects. Unlike
+     * HttpURLConnection, this also follows redirects that change the protocol (e.g., http to
+     * https). The final URL is given by getURL() of the returned connection.
+     */
+    private @Nonnull HttpURLConnection open(@Nonnull String uri,
+                                            @Nullable Properties meta) throws IOException {
+        URL url = new URL(uri);
+        for (int hops = 0; ; ++hops) {
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setInstanceFollowRedirects(false);
+            conn.setRequestProperty("Accept", WebContent.defaultRDFAcceptHeader);
+            if (meta != null && meta.containsKey(ETAG))
+                conn.setRequestProperty("If-None-Match", meta.getProperty(ETAG));
+            if (meta != null && meta.containsKey(LAST_MODIFIED))
+                conn.setRequestProperty("If-Modified-Since", meta.getProperty(LAST_MODIFIED));
+            int code = conn.getResponseCode();
+            String location = conn.getHeaderField("Location");
+            if (code / 100 != 3 || code == HttpURLConnection.HTTP_NOT_MODIFIED
+                    || location == null) {
+                return conn;
+            }
+            conn.disconnect();
+            if (hops == MAX_REDIRECTS)
+                throw new IOException("Too many redirects fetching " + uri);
+            url = new URL(url, location);
+            if (!isCacheable(url.toString()))
+                throw new IOException("Redirect from " + uri + " to non-http " + url);
+        }
+    }
+
+    private @Nonnull Lang guessLang(@Nonnull HttpURLConnection conn, @Nonnull String uri,
+                                    @Nullable Lang hintLang) {
+        String contentType = conn.getContentType();
+        contentType = contentType == null ? "" : contentType.replaceAll(";.*$", "").trim();
+        Lang lang = contentType.equals(WebContent.contentTypeTextPlain) ? null
+                : RDFLanguages.contentTypeToLang(contentType);
+        if (lang != null) return lang;
+        if (hintLang != null) return hintLang;
+        return RDFLanguages.filenameToLang(uri.replaceAll("[?#].*$", ""), Lang.RDFXML);
+    }
+
+    /**
+     * Parses the response body into sink while also writing it to the cache.
+     *
+     * An IOException means nothing was sent to sink yet, thus the caller may fall back to a
+     * stale cached copy. Failures after that are thrown as unchecked exceptions.
+     *
+     * @param base the URL the body was fetched from, after redirects
+     */
+    private void store(@Nonnull String uri, @Nonnull String base,
+                       @Nonnull HttpURLConnection conn, @Nonnull Lang lang,
+                       @Nonnull StreamRDF sink, @Nonnull File dataFile,
+                       @Nonnull File metaFile) throws IOException {
+        Properties meta = new Properties();
+        meta.setProperty(URI, uri);
+        meta.setProperty(FETCHED, String.valueOf(System.currentTimeMillis()));
+        if (conn.getHeaderField("ETag") != null)
+            meta.setProperty(ETAG, conn.getHeaderField("ETag"));
+        if (conn.getHeaderField("Last-Modified") != null)
+            meta.setProperty(LAST_MODIFIED, conn.getHeaderField("Last-Modified"));
+
+        Files.createDirectories(dir.toPath());
+        File tmp = File.createTempFile(dataFile.getName(), ".tmp", dir);
+        AtomicBoolean delivered = new AtomicBoolean();
+        try (InputStream is = conn.getInputStream();
+             OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            StreamRDF thrift = StreamRDFWriter.getWriterStream(os, RDFFormat.RDF_THRIFT);
+            RDFParser.create().source(is).base(base).lang(lang).context(null)
+                    .parse(new StreamRDFWrapper(sink) {
+                        @Override
+                        public void start() {
+                            super.start();
+                            thrift.start();
+                        }
+
+                        @Override
+                        public void triple(Triple triple) {
+                            delivered.set(true);
+                            super.triple(triple);
+                            thrift.triple(triple);
+                        }
+
+                        @Override
+                        public void quad(Quad quad) {
+                            delivered.set(true);
+                            super.quad(quad);
+                            thrift.quad(quad);
+                        }
+
+                        @Override
+                        public void prefix(String prefix, String iri) {
+                            super.prefix(prefix, iri);
+                            meta.setProperty(PREFIX + prefix, iri);
+                        }
+
+                        @Override
+                        public void finish() {
+                            super.finish();
+                            thrift.finish();
+                        }
+                    });
+        } catch (RuntimeException | IOException e) {
+            Files.deleteIfExists(tmp.toPath());
+            // sink already has part of the document, a stale copy would duplicate it
+            if (e instanceof IOException && delivered.get())
+                throw new HttpException("Failed to read " + uri + " after parsing part of it", e);
+            throw e;
+        }
+        try {
+            Files.move(tmp.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            writeMeta(metaFile, meta);
+        } catch (IOException e) {
+            logger.warn("Failed to cache {} into {}.", uri, dir, e);
+        }
+    }
+
+    private boolean readData(@Nonnull File dataFile, @Nonnull Properties meta,
+                             @Nonnull StreamRDF sink) {
+        try (InputStream is = new BufferedInputStream(new FileInputStream(dataFile))) {
+            RDFParser.create().source(is).lang(Lang.RDFTHRIFT).context(null)
+                    .parse(new StreamRDFWrapper(sink) {
+                        @Override
+                        public void start() {
+                            super.start();
+                            for (String name : meta.stringPropertyNames()) {
+                                if (name.startsWith(PREFIX)) {
+                                    super.prefix(name.substring(PREFIX.length()),
+                                                 meta.getProperty(name));
+                                }
+                            }
+                        }
+                    });
+            return true;
+        } catch (IOException e) {
+            throw new RiotException("Failed to read cached copy of " + meta.getProperty(URI), e);
+        }
+    }
+
+    private @Nullable Properties readMeta(@Nonnull File file) {
+        if (!file.exists()) return null;
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            return properties;
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable cache entry {}.", file, e);
+            return null;
+        }
+    }
+
+    private void writeMeta(@Nonnull File file, @Nonnull Properties meta) {
+        try {
+            File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp),
+                    StandardCharsets.UTF_8)) {
+                meta.store(writer, null);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to write cache metadata {}.", file, e);
+        }
+    }
+}
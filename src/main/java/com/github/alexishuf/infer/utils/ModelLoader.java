@@ -1,15 +1,12 @@
 package com.github.alexishuf.infer.utils;
 
-import com.google.common.base.Stopwatch;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
+import com.github.alexishuf.infer.store.DictionaryGraph;
+import com.github.alexishuf.infer.store.NodeDictionary;
+import com.github.alexishuf.infer.store.TDBStore;
+import com.google.common.base.Preconditions;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.riot.*;
-import org.apache.jena.riot.system.StreamRDFLib;
-import org.apache.jena.riot.system.StreamRDFWrapper;
-import org.apache.jena.vocabulary.OWL;
 import org.apache.jena.vocabulary.OWL2;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
@@ -21,24 +18,40 @@ import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 public class ModelLoader {
     private static Logger logger = LoggerFactory.getLogger(ModelLoader.class);
-    private static Set<String> neverFetch = Stream.of(OWL2.NS, RDFS.getURI(), RDF.getURI())
-            .map(s -> s.replaceAll("^(.*)#$", "$1")).collect(Collectors.toSet());
-    private static Set<Pattern> neverFetchRx = new HashSet<>();
+    private static final int DEFAULT_FETCH_THREADS = 4;
+    private static final int DEFAULT_PARSE_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final long DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
 
-    private Set<String> fetched = new HashSet<>();
+    private Set<String> neverFetch = Stream.of(OWL2.NS, RDFS.getURI(), RDF.getURI())
+            .map(s -> s.replaceAll("^(.*)#$", "$1"))
+            .collect(Collectors.toCollection(ConcurrentHashMap::newKeySet));
+    private Set<Pattern> neverFetchRx = ConcurrentHashMap.newKeySet();
+    private Set<String> fetched = ConcurrentHashMap.newKeySet();
     private Model main = ModelFactory.createDefaultModel();
     private Model bg = ModelFactory.createDefaultModel();
+    private final List<Model> layers = new ArrayList<>();
     private Model model = main;
+    private @Nullable NodeDictionary dictionary = null;
+    private boolean inStore = false;
     private Lang firstLang = null;
     private Lang hintLang = null;
     private boolean autoImport = false;
+    private int fetchThreads = DEFAULT_FETCH_THREADS;
+    private int parseThreads = DEFAULT_PARSE_THREADS;
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+    private @Nullable ImportCache cache = null;
+    private @Nonnull RunStats stats = RunStats.DISABLED;
 
     public @Nonnull Model getMain() {
         return main;
@@ -47,6 +60,13 @@ public class ModelLoader {
         return bg;
     }
 
+    /**
+     * Layers stacked between the background and main, from bottom to top.
+     */
+    public @Nonnull List<Model> getLayers() {
+        return Collections.unmodifiableList(layers);
+    }
+
     public @Nonnull ModelLoader withHintLang(Lang lang) {
         Model m;
         this.hintLang = lang;
@@ -58,6 +78,79 @@ public class ModelLoader {
         return this;
     }
 
+    /**
+     * Number of owl:imports documents that are fetched and parsed concurrently.
+     */
+    public @Nonnull ModelLoader withFetchThreads(int threads) {
+        fetchThreads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * Number of input files (or chunks of large files) that are parsed concurrently by
+     * files() and guess(). Values below 1 select the number of available processors.
+     */
+    public @Nonnull ModelLoader withParseThreads(int threads) {
+        parseThreads = threads > 0 ? threads : DEFAULT_PARSE_THREADS;
+        return this;
+    }
+
+    /**
+     * N-Triples and N-Quads files larger than this many bytes are split into chunks of about
+     * this size, which are parsed in parallel.
+     */
+    public @Nonnull ModelLoader withChunkSize(long bytes) {
+        chunkSize = bytes;
+        return this;
+    }
+
+    /**
+     * Use the given cache when dereferencing http(s) URIs. null disables caching.
+     */
+    public @Nonnull ModelLoader withCache(@Nullable ImportCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Record the parsing of files (parse phase) and dereferenced URIs (fetch phase).
+     */
+    public @Nonnull ModelLoader withStats(@Nonnull RunStats stats) {
+        this.stats = stats;
+        return this;
+    }
+
+    /**
+     * Load main and background into DictionaryGraphs that share a NodeDictionary, instead of
+     * Jena's default in-memory graphs. Must be called before anything is loaded.
+     */
+    public @Nonnull ModelLoader withCompactStore(boolean enable) {
+        Preconditions.checkState(main.isEmpty() && bg.isEmpty() && layers.isEmpty());
+        boolean wasMain = model == main;
+        dictionary = enable ? new NodeDictionary() : null;
+        main = newModel();
+        bg = newModel();
+        model = wasMain ? main : bg;
+        return this;
+    }
+
+    /**
+     * Load main and background into the MAIN and BACKGROUND graphs of a TDB2 store, instead
+     * of memory. Triples already in these graphs (see TDBStore.isLoaded()) are kept and
+     * getFirstLang() starts from the language recorded in the store. Must be called before
+     * anything is loaded.
+     */
+    public @Nonnull ModelLoader withStore(@Nonnull TDBStore store) {
+        Preconditions.checkState(main.isEmpty() && bg.isEmpty() && layers.isEmpty());
+        boolean wasMain = model == main;
+        main = store.getModel(TDBStore.MAIN);
+        bg = store.getModel(TDBStore.BACKGROUND);
+        firstLang = store.getLang();
+        model = wasMain ? main : bg;
+        inStore = true;
+        return this;
+    }
+
     public ModelLoader withBlacklist(String... excludesURIs) {
         neverFetch.addAll(Arrays.asList(excludesURIs));
         return this;
@@ -78,92 +171,239 @@ public class ModelLoader {
         return this;
     }
 
+    /**
+     * Targets the layer at index (0 is the lowest, just above the background), creating the
+     * layers up to it. Layers cannot be kept in a TDB2 store.
+     */
+    public @Nonnull ModelLoader toLayer(int index) {
+        Preconditions.checkState(!inStore, "Layers are not supported with a TDB2 store");
+        while (layers.size() <= index) layers.add(newModel());
+        model = layers.get(index);
+        return this;
+    }
+
+    private @Nonnull Model newModel() {
+        return dictionary == null ? ModelFactory.createDefaultModel()
+                : ModelFactory.createModelForGraph(new DictionaryGraph(dictionary));
+    }
+
+    /**
+     * Parses all files concurrently, directly into the current target (main or background).
+     * Large N-Triples and N-Quads files are split into chunks, which are scheduled on the same
+     * parseThreads workers as the other files. Prefixes and owl:imports are processed in the
+     * order files are given.
+     */
     public @Nonnull ModelLoader files(File... files) {
-        for (File file : files) {
-            Stopwatch sw = Stopwatch.createStarted();
-            try (FileInputStream is = new FileInputStream(file)) {
-                Lang lang = RDFLanguages.filenameToLang(file.getName());
-                if (lang != null) firstLang = lang;
-                else lang = hintLang;
-                Model tmp = ModelFactory.createDefaultModel();
-                RDFParser.create().source(is).lang(lang).context(null)
-                        .parse(new PrefixCatcher(tmp));
-                addModel(model, tmp, sw, null);
+        Model dest = model;
+        List<ParseTask> tasks = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) tasks.addAll(split(i, files[i]));
+        Utils.parallelMap(parseThreads, tasks, t -> t.run(dest));
+        for (int i = 0, j; i < tasks.size(); i = j) {
+            j = i + 1;
+            while (j < tasks.size() && tasks.get(j).index == tasks.get(i).index) ++j;
+            Parsed p = merge(tasks.subList(i, j));
+            if (p == null) continue;
+            if (p.lang != null) firstLang = p.lang;
+            loadImports(loaded(dest, p));
+        }
+        return this;
+    }
+
+    private @Nonnull List<ParseTask> split(int index, @Nonnull File file) {
+        Lang fileLang = RDFLanguages.filenameToLang(file.getName());
+        Lang lang = fileLang != null ? fileLang : hintLang;
+        boolean gzip = file.getName().endsWith(".gz");
+        if (ChunkedLineParser.supports(lang) && !gzip && file.length() > chunkSize) {
+            try {
+                return ChunkedLineParser.split(file, lang, chunkSize).stream()
+                        .map(c -> new ParseTask(index, file, fileLang, lang, c))
+                        .collect(Collectors.toList());
             } catch (IOException e) {
                 logger.error("Error reading file {}. Halt.", file, e);
+                return Collections.emptyList();
             }
         }
-        return this;
+        return Collections.singletonList(new ParseTask(index, file, fileLang, lang, null));
+    }
+
+    /**
+     * Parsing of a whole file or of a chunk of a file, by one of the parse workers.
+     */
+    private static class ParseTask {
+        final int index;
+        final @Nonnull File file;
+        final @Nullable Lang fileLang, lang;
+        final @Nullable ChunkedLineParser.Chunk chunk;
+        @Nullable SourceCatcher catcher;
+        long start, end;
+
+        ParseTask(int index, @Nonnull File file, @Nullable Lang fileLang, @Nullable Lang lang,
+                  @Nullable ChunkedLineParser.Chunk chunk) {
+            this.index = index;
+            this.file = file;
+            this.fileLang = fileLang;
+            this.lang = lang;
+            this.chunk = chunk;
+        }
+
+        @Nonnull ParseTask run(@Nonnull Model dest) {
+            start = System.nanoTime();
+            try {
+                if (chunk != null) {
+                    catcher = ChunkedLineParser.parse(chunk, newCatcher(dest));
+                } else {
+                    boolean gzip = file.getName().endsWith(".gz");
+                    try (InputStream is = gzip
+                            ? new GZIPInputStream(new FileInputStream(file), 65536)
+                            : new FileInputStream(file)) {
+                        SourceCatcher sink = newCatcher(dest);
+                        RDFParser.create().source(is).lang(lang).context(null).parse(sink);
+                        catcher = sink;
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Error reading file {}. Halt.", file, e);
+            }
+            end = System.nanoTime();
+            return this;
+        }
+    }
+
+    /**
+     * Merges the tasks of a single file, or returns null if any of them failed.
+     */
+    private @Nullable Parsed merge(@Nonnull List<ParseTask> tasks) {
+        SourceCatcher catcher = null;
+        long start = Long.MAX_VALUE, end = Long.MIN_VALUE;
+        for (ParseTask task : tasks) {
+            if (task.catcher == null) return null;
+            if (catcher == null) catcher = task.catcher;
+            else catcher.addAll(task.catcher);
+            start = Math.min(start, task.start);
+            end = Math.max(end, task.end);
+        }
+        return catcher == null ? null
+                : new Parsed(null, tasks.get(0).fileLang, catcher, end - start);
     }
 
-    private  @Nonnull ModelLoader loadUri(@Nonnull Model dest, String uri) {
+    /**
+     * Dereferences and parses uri directly into dest. Safe to call from multiple threads.
+     *
+     * @return the parsed document or null if uri was not found
+     */
+    private @Nullable Parsed fetch(@Nonnull Model dest, @Nonnull String uri) {
         try {
-            Stopwatch sw = Stopwatch.createStarted();
-            Model tmp = ModelFactory.createDefaultModel();
-            RDFParser.create().source(uri).lang(hintLang).context(null)
-                    .parse(new PrefixCatcher(tmp));
-            RDFDataMgr.read(tmp, uri, hintLang);
-            addModel(dest, tmp, sw, uri);
+            long start = System.nanoTime();
+            SourceCatcher catcher = newCatcher(dest);
+            if (cache != null && ImportCache.isCacheable(uri)) {
+                if (!cache.get(uri, hintLang, catcher)) return null;
+            } else {
+                RDFParser.create().source(uri).lang(hintLang).context(null).parse(catcher);
+            }
+            return new Parsed(uri, null, catcher, System.nanoTime() - start);
         } catch (RiotNotFoundException e) {
             logger.error("URI {} not found, will ignore and continue.", uri, e);
+            return null;
         }
-        return this;
     }
 
-    public @Nonnull ModelLoader uris(String... uris) {
-        for (String uri : uris) loadUri(model, uri);
-        return this;
+    private static @Nonnull SourceCatcher newCatcher(@Nonnull Model dest) {
+        return new SourceCatcher(new BatchingGraphSink(dest.getGraph()));
     }
 
-    private class PrefixCatcher extends StreamRDFWrapper {
-        private Model m;
-
-        public PrefixCatcher(Model model) {
-            super(StreamRDFLib.graph(model.getGraph()));
-            this.m = model;
-        }
-
-        @Override
-        public void prefix(String prefix, String iri) {
-            if (m.getNsURIPrefix(iri) != null) return;
-            while (m.getNsPrefixURI(prefix) != null) {
-                prefix += "x";
+    /**
+     * Fetches the whole closure of the given owl:imports objects into the background.
+     *
+     * The closure is traversed breadth-first. All documents in a level are fetched and parsed
+     * concurrently and their prefixes and imports are processed in the order they were
+     * discovered, so that the result does not depend on thread scheduling.
+     */
+    private void loadImports(@Nonnull List<String> uris) {
+        List<String> level = uris;
+        while (!level.isEmpty()) {
+            List<String> claimed = level.stream().filter(fetched::add)
+                    .collect(Collectors.toList());
+            List<String> next = new ArrayList<>();
+            for (Parsed f : Utils.parallelMap(fetchThreads, claimed, u -> fetch(bg, u))) {
+                if (f != null) next.addAll(loaded(bg, f));
             }
-            m.setNsPrefix(prefix, iri);
+            level = next;
         }
     }
 
-    private void addModel(@Nonnull Model dest, @Nonnull Model tmp, @Nonnull Stopwatch sw,
-                          @Nullable String uri) {
-        Set<String> set = new HashSet<>();
-        if (uri != null) {
-            set.add(uri);
+    public @Nonnull ModelLoader uris(String... uris) {
+        for (String uri : uris) {
             fetched.add(uri);
+            Parsed f = fetch(model, uri);
+            if (f != null) loadImports(loaded(model, f));
+        }
+        return this;
+    }
+
+    private static class Parsed {
+        final @Nullable String uri;
+        final @Nullable Lang lang;
+        final @Nonnull SourceCatcher catcher;
+        final long nanos;
+
+        Parsed(@Nullable String uri, @Nullable Lang lang, @Nonnull SourceCatcher catcher,
+               long nanos) {
+            this.uri = uri;
+            this.lang = lang;
+            this.catcher = catcher;
+            this.nanos = nanos;
         }
-        tmp.listSubjectsWithProperty(RDF.type, OWL.Ontology).toSet().stream()
-                .filter(n -> !n.isAnon()).forEach(n -> set.add(n.getURI()));
-        logger.info("Loaded {} triples into {} in {}. Ontology URI: {}", tmp.size(),
-                dest == main ? "main" : (dest == bg ? "bg" : "other"), sw,
+    }
+
+    /**
+     * Merges the prefixes of an already loaded source into dest and logs it.
+     *
+     * @return owl:imports objects in the source that should be fetched, if auto-import is
+     *         enabled.
+     */
+    private @Nonnull List<String> loaded(@Nonnull Model dest, @Nonnull Parsed parsed) {
+        SourceCatcher catcher = parsed.catcher;
+        Set<String> set = new LinkedHashSet<>();
+        if (parsed.uri != null) set.add(parsed.uri);
+        set.addAll(catcher.getOntologies());
+        stats.record(parsed.uri != null ? "fetch" : "parse", parsed.nanos, catcher.getTriples());
+        logger.info("Loaded {} triples into {} in {} ms. Ontology URI: {}", catcher.getTriples(),
+                name(dest), TimeUnit.NANOSECONDS.toMillis(parsed.nanos),
                 set.stream().reduce((a, b) -> a  + ", " + b).orElse(""));
-        dest.add(tmp);
+        catcher.getPrefixes().getNsPrefixMap()
+                .forEach((prefix, iri) -> SourceCatcher.merge(dest, prefix, iri));
 
         if (!autoImport)
-            return;
-        tmp.listObjectsOfProperty(OWL.imports).toSet().stream().filter(RDFNode::isURIResource)
-                .map(r -> r.asResource().getURI().replaceAll("^(.*)#$", "$1"))
+            return Collections.emptyList();
+        return catcher.getImports().stream()
+                .map(u -> u.replaceAll("^(.*)#$", "$1"))
                 .filter(u -> !fetched.contains(u) && !neverFetch.contains(u))
                 .filter(u -> neverFetchRx.stream().noneMatch(p -> p.matcher(u).matches()))
-                .distinct()
-                .forEach(u -> loadUri(bg, u));
+                .distinct().sorted()
+                .collect(Collectors.toList());
+    }
+
+    private @Nonnull String name(@Nonnull Model dest) {
+        if (dest == main) return "main";
+        if (dest == bg) return "bg";
+        for (int i = 0; i < layers.size(); i++) {
+            if (layers.get(i) == dest) return "layer " + i;
+        }
+        return "other";
     }
 
     public @Nonnull ModelLoader guess(String... filesOrUris) {
+        List<File> files = new ArrayList<>();
         for (String fileOrUri : filesOrUris) {
-            if (fileOrUri.matches("(?:https?|file|ftp):/?/"))
+            if (fileOrUri.matches("^(?:https?|file|ftp):/?/.*")) {
+                files(files.toArray(new File[0]));
+                files.clear();
                 uris(fileOrUri);
-            else
-                files(new File(fileOrUri));
+            } else {
+                files.add(new File(fileOrUri));
+            }
         }
+        files(files.toArray(new File[0]));
         return this;
     }
 
@@ -0,0 +1,141 @@
+package com.github.alexishuf.infer.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.core.Quad;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes line-based RDF syntaxes (N-Triples and N-Quads) with several threads.
+ *
+ * Triples and quads are collected into chunks, each chunk is formatted (and compressed) by a
+ * worker and the chunks are written to the output in the order they were received, thus the
+ * output is the same of a sequential writer. With gzip, each chunk is an independent gzip
+ * member and their concatenation is a valid gzip file.
+ *
+ * As with other writers, triple() and quad() must not be called concurrently.
+ */
+public class ParallelLineWriter extends StreamRDFBase {
+    private static final int CHUNK_STATEMENTS = 16384;
+
+    private final @Nonnull OutputStream os;
+    private final @Nonnull RDFFormat fmt;
+    private final boolean gzip;
+    private final int maxPending;
+    private final @Nonnull ExecutorService executor;
+    private final @Nonnull ArrayDeque<Future<ByteArrayOutputStream>> pending =
+            new ArrayDeque<>();
+    /* Triples and Quads, in the order received */
+    private List<Object> chunk = new ArrayList<>();
+
+    public static boolean supports(@Nonnull RDFFormat fmt) {
+        return RDFLanguages.NTRIPLES.equals(fmt.getLang())
+                || RDFLanguages.NQUADS.equals(fmt.getLang());
+    }
+
+    /**
+     * A writer to os, which is flushed but not closed by finish().
+     *
+     * @param fmt A format for which supports() is true
+     * @param threads number of workers formatting chunks
+     * @param gzip whether to compress the output
+     */
+    public ParallelLineWriter(@Nonnull OutputStream os, @Nonnull RDFFormat fmt, int threads,
+                              boolean gzip) {
+        if (!supports(fmt))
+            throw new IllegalArgumentException(fmt + " is not a line-based format");
+        this.os = os;
+        this.fmt = fmt;
+        this.gzip = gzip;
+        threads = Math.max(1, threads);
+        this.maxPending = 2 * threads;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("infer-writer-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        chunk.add(triple);
+        if (chunk.size() >= CHUNK_STATEMENTS) submit();
+    }
+
+    @Override
+    public void quad(Quad quad) {
+        chunk.add(quad);
+        if (chunk.size() >= CHUNK_STATEMENTS) submit();
+    }
+
+    @Override
+    public void finish() {
+        try {
+            submit();
+            while (!pending.isEmpty()) writeFirst();
+            os.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void submit() {
+        if (chunk.isEmpty()) return;
+        List<Object> statements = chunk;
+        chunk = new ArrayList<>();
+        pending.add(executor.submit(() -> format(statements)));
+        while (pending.size() > maxPending) writeFirst();
+    }
+
+    private void writeFirst() {
+        try {
+            pending.remove().get().writeTo(os);
+        } catch (IOException e) {
+            executor.shutdownNow();
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private @Nonnull ByteArrayOutputStream format(@Nonnull List<Object> statements)
+            throws IOException {
+        int capacity = statements.size() * (gzip ? 16 : 128);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(capacity);
+        OutputStream out = gzip ? new GZIPOutputStream(bytes, 65536) : bytes;
+        StreamRDF writer = StreamRDFWriter.getWriterStream(out, fmt);
+        writer.start();
+        for (Object statement : statements) {
+            if (statement instanceof Triple) writer.triple((Triple) statement);
+            else                             writer.quad((Quad) statement);
+        }
+        writer.finish();
+        out.close();
+        return bytes;
+    }
+}
@@ -0,0 +1,201 @@
+package com.github.alexishuf.infer.utils;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects timings and triple counts of the phases of a run, plus rule firing counts, and
+ * writes them as JSON. Thread-safe.
+ *
+ * Each phase (e.g., parse, fetch, bind, inference, filter, write) accumulates the time and
+ * triples of all its occurrences. Occurrences may overlap (e.g., files parsed concurrently),
+ * thus the time of a phase can exceed the wall-clock time of the run.
+ */
+public class RunStats implements Closeable {
+    private static Logger logger = LoggerFactory.getLogger(RunStats.class);
+
+    /**
+     * Instance that ignores everything, to be used when statistics are not collected.
+     */
+    public static final @Nonnull RunStats DISABLED = new RunStats(false);
+
+    private final boolean enabled;
+    private final long start = System.nanoTime();
+    private final Map<String, long[]> phases = new LinkedHashMap<>(); // nanos, triples, count
+    private final Set<Phase> active = new LinkedHashSet<>();
+    private final Map<String, Long> firings = new TreeMap<>();
+    private boolean ruleFirings = false;
+    private ScheduledExecutorService progress = null;
+
+    public RunStats() {
+        this(true);
+    }
+
+    private RunStats(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Request per-rule firing counts from reasoners. Reasoners may need to record extra
+     * information (e.g., Jena derivation logging) to count firings, which slows them down.
+     */
+    public @Nonnull RunStats withRuleFirings(boolean enable) {
+        this.ruleFirings = enable;
+        return this;
+    }
+
+    public boolean isRuleFirings() {
+        return enabled && ruleFirings;
+    }
+
+    /**
+     * Starts an occurrence of phase, which is recorded when the returned Phase is closed.
+     */
+    public @Nonnull Phase begin(@Nonnull String phase) {
+        return new Phase(phase);
+    }
+
+    /**
+     * Records an occurrence of phase that took nanos and processed triples.
+     */
+    public synchronized void record(@Nonnull String phase, long nanos, long triples) {
+        if (!enabled) return;
+        long[] values = phases.computeIfAbsent(phase, k -> new long[3]);
+        values[0] += nanos;
+        values[1] += triples;
+        values[2] += 1;
+    }
+
+    public synchronized void addFirings(@Nonnull String rule, long count) {
+        if (enabled) firings.merge(rule, count, Long::sum);
+    }
+
+    /**
+     * Logs a progress line every period seconds, until close().
+     */
+    public synchronized void startProgress(long period) {
+        if (progress != null || period <= 0) return;
+        progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(this::logProgress, period, period, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (progress != null) {
+            progress.shutdownNow();
+            progress = null;
+        }
+    }
+
+    private void logProgress() {
+        long now = System.nanoTime();
+        StringBuilder running = new StringBuilder();
+        long triples = 0;
+        synchronized (this) {
+            for (Phase phase : active) {
+                running.append(running.length() == 0 ? "" : ", ").append(phase.name)
+                        .append(String.format(" (%.1f s)", (now - phase.start) / 1e9));
+            }
+            for (long[] values : phases.values()) triples += values[1];
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        logger.info("{} s elapsed, running: {}. {} triples in completed phases, {} MiB heap used",
+                    String.format("%.1f", (now - start) / 1e9),
+                    running.length() == 0 ? "-" : running, triples, heap.getUsed() >> 20);
+    }
+
+    public synchronized @Nonnull JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.put("total_ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        JsonObject phasesJson = new JsonObject();
+        phases.forEach((name, values) -> {
+            JsonObject phase = new JsonObject();
+            phase.put("time_ms", TimeUnit.NANOSECONDS.toMillis(values[0]));
+            phase.put("triples", values[1]);
+            phase.put("count", values[2]);
+            phasesJson.put(name, phase);
+        });
+        json.put("phases", phasesJson);
+
+        /* sum of the peaks of each pool, an upper bound of the actual peak */
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peakHeap += pool.getPeakUsage().getUsed();
+        }
+        json.put("peak_heap_bytes", peakHeap);
+        long gcCount = 0, gcTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+        json.put("gc_count", gcCount);
+        json.put("gc_time_ms", gcTime);
+        if (ruleFirings) {
+            JsonObject rules = new JsonObject();
+            firings.forEach(rules::put);
+            json.put("rule_firings", rules);
+        }
+        return json;
+    }
+
+    public void write(@Nonnull File file) throws IOException {
+        JsonObject json = toJson();
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            JSON.write(os, json);
+            os.write('\n');
+        }
+    }
+
+    /**
+     * An occurrence of a phase, recorded on close().
+     */
+    public class Phase implements AutoCloseable {
+        private final @Nonnull String name;
+        private final long start = System.nanoTime();
+        private long triples = 0;
+
+        private Phase(@Nonnull String name) {
+            this.name = name;
+            if (enabled) {
+                synchronized (RunStats.this) {
+                    active.add(this);
+                }
+            }
+        }
+
+        /**
+         * Sets the number of triples processed or produced by this occurrence.
+         */
+        public @Nonnull Phase triples(long triples) {
+            this.triples = triples;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (!enabled) return;
+            synchronized (RunStats.this) {
+                active.remove(this);
+                record(name, System.nanoTime() - start, triples);
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.github.alexishuf.infer.utils;
+
+import com.github.alexishuf.infer.store.NodeDictionary;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.OWL2;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.apache.jena.graph.Node.ANY;
+
+/**
+ * Equivalence classes of individuals under owl:sameAs, each with a canonical representative.
+ *
+ * Graphs are rewritten so that every individual is replaced by its representative, with
+ * owl:sameAs within a class becoming a reflexive owl:sameAs on the representative, and results
+ * over the representatives are expanded
+ * back to all members of the classes. Only individuals are merged: nodes used as predicates,
+ * classes or in other schema triples (in the graphs given to addAll()) are left for the
+ * reasoner. Not thread-safe.
+ */
+public class SameAsIndex {
+    private static final @Nonnull Set<Node> INSTANCE_PREDICATES = new HashSet<>(asList(
+            OWL.sameAs.asNode(), OWL.differentFrom.asNode(), RDFS.label.asNode(),
+            RDFS.comment.asNode(), RDFS.seeAlso.asNode(), RDFS.isDefinedBy.asNode()));
+    private static final @Nonnull Set<Node> INSTANCE_TYPES = new HashSet<>(asList(
+            OWL.Thing.asNode(), RDFS.Resource.asNode(), OWL2.NamedIndividual.asNode()));
+
+    private final @Nonnull NodeDictionary dictionary;
+    private final @Nonnull UnionFind classes;
+    private final @Nonnull BitSet schema;
+    /* representatives of each merged pair of classes, before the merge */
+    private final @Nonnull List<Node> merged;
+
+    public SameAsIndex() {
+        this(new NodeDictionary(), new UnionFind(), new BitSet(), new ArrayList<>());
+    }
+
+    private SameAsIndex(@Nonnull NodeDictionary dictionary, @Nonnull UnionFind classes,
+                        @Nonnull BitSet schema, @Nonnull List<Node> merged) {
+        this.dictionary = dictionary;
+        this.classes = classes;
+        this.schema = schema;
+        this.merged = merged;
+    }
+
+    /**
+     * An independent copy, which is a snapshot for changedIn().
+     */
+    public @Nonnull SameAsIndex copy() {
+        return new SameAsIndex(dictionary.copy(), classes.copy(), (BitSet) schema.clone(),
+                               new ArrayList<>(merged));
+    }
+
+    /**
+     * Number of merges so far. Each merge removes a class.
+     */
+    public int getMergeCount() {
+        return merged.size() / 2;
+    }
+
+    /**
+     * Records which nodes of graph are not individuals and merges the individuals related by
+     * owl:sameAs in graph.
+     *
+     * @return number of new merges
+     */
+    public int addAll(@Nonnull Graph graph) {
+        ExtendedIterator<Triple> it = graph.find();
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                Node p = t.getPredicate();
+                markSchema(p);
+                if (p.equals(RDF.type.asNode())) {
+                    markSchema(t.getObject());
+                    if (t.getObject().isURI() && isVocabulary(t.getObject().getURI())
+                            && !INSTANCE_TYPES.contains(t.getObject())) {
+                        markSchema(t.getSubject());
+                    }
+                } else if (p.isURI() && (p.getURI().startsWith(RDFS.getURI())
+                        || p.getURI().startsWith(OWL.NS)) && !INSTANCE_PREDICATES.contains(p)) {
+                    markSchema(t.getSubject());
+                    markSchema(t.getObject());
+                }
+            }
+        } finally {
+            it.close();
+        }
+        return merge(graph, true);
+    }
+
+    /**
+     * Merges the known individuals related by owl:sameAs in graph (e.g., the inferences of
+     * a reasoner). Other nodes are ignored.
+     *
+     * @return number of new merges
+     */
+    public int merge(@Nonnull Graph graph) {
+        return merge(graph, false);
+    }
+
+    private int merge(@Nonnull Graph graph, boolean intern) {
+        int count = 0;
+        ExtendedIterator<Triple> it = graph.find(ANY, OWL.sameAs.asNode(), ANY);
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                int s = individual(t.getSubject(), intern), o = individual(t.getObject(), intern);
+                if (s == NodeDictionary.NONE || o == NodeDictionary.NONE) continue;
+                int sRoot = classes.find(s), oRoot = classes.find(o);
+                if (classes.union(s, o)) {
+                    merged.add(dictionary.get(sRoot));
+                    merged.add(dictionary.get(oRoot));
+                    ++count;
+                }
+            }
+        } finally {
+            it.close();
+        }
+        return count;
+    }
+
+    /**
+     * Whether a merge done after base (which must be an earlier copy()) changed the
+     * representative of a node that occurs in graph. If so, graph was rewritten with base
+     * and must be rewritten again.
+     */
+    public boolean changedIn(@Nonnull SameAsIndex base, @Nonnull Graph graph) {
+        for (Node node : merged.subList(base.merged.size(), merged.size())) {
+            if (graph.contains(node, ANY, ANY) || graph.contains(ANY, ANY, node)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The representative of node, which is node itself if it was never merged. Concurrent
+     * calls are safe if there are no concurrent changes.
+     */
+    public @Nonnull Node canonical(@Nonnull Node node) {
+        int id = dictionary.lookup(node);
+        if (id == NodeDictionary.NONE || id >= classes.count()) return node;
+        return dictionary.get(classes.root(id));
+    }
+
+    /**
+     * Adds to out the triples of in with all individuals replaced by their representatives.
+     *
+     * Representatives of classes with more than one member also get a reflexive owl:sameAs,
+     * so that the reasoner derives what follows from the equality itself (e.g., rdf:type
+     * owl:Thing), even if the owl:sameAs that merged the class was derived and thus is not
+     * in the rewritten input.
+     */
+    public void rewrite(@Nonnull Graph in, @Nonnull Graph out) {
+        Node sameAs = OWL.sameAs.asNode();
+        ExtendedIterator<Triple> it = in.find();
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                Node s = canonical(t.getSubject()), o = canonical(t.getObject());
+                out.add(Triple.create(s, t.getPredicate(), o));
+                if (isMerged(t.getSubject())) out.add(Triple.create(s, sameAs, s));
+                if (isMerged(t.getObject())) out.add(Triple.create(o, sameAs, o));
+            }
+        } finally {
+            it.close();
+        }
+    }
+
+    /**
+     * Adds to out the triples of in (over representatives) with subjects and objects replaced
+     * by every member of their classes, and owl:sameAs between all members of the classes
+     * merged after base (all classes, if base is null).
+     *
+     * @param exclude triples not to add to out (e.g., the inputs, if echo is disabled)
+     */
+    public void expand(@Nonnull Graph in, @Nullable SameAsIndex base,
+                       @Nullable Predicate<Triple> exclude, @Nonnull Graph out) {
+        Map<Integer, List<Node>> members = new HashMap<>();
+        for (int id = 0; id < classes.count(); id++) {
+            int root = classes.root(id);
+            if (root == id) continue;
+            members.computeIfAbsent(root, k -> new ArrayList<>(singletonList(dictionary.get(k))))
+                   .add(dictionary.get(id));
+        }
+        ExtendedIterator<Triple> it = in.find();
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                for (Node s : members(members, t.getSubject())) {
+                    for (Node o : members(members, t.getObject()))
+                        add(out, exclude, Triple.create(s, t.getPredicate(), o));
+                }
+            }
+        } finally {
+            it.close();
+        }
+        Set<Node> roots = new HashSet<>();
+        if (base == null) {
+            for (Integer root : members.keySet()) roots.add(dictionary.get(root));
+        } else {
+            for (Node node : merged.subList(base.merged.size(), merged.size()))
+                roots.add(canonical(node));
+        }
+        Node sameAs = OWL.sameAs.asNode();
+        for (Node root : roots) {
+            List<Node> list = members.get(dictionary.lookup(root));
+            for (Node a : list) {
+                for (Node b : list) add(out, exclude, Triple.create(a, sameAs, b));
+            }
+        }
+    }
+
+    private static void add(@Nonnull Graph out, @Nullable Predicate<Triple> exclude,
+                            @Nonnull Triple t) {
+        if (exclude == null || !exclude.test(t)) out.add(t);
+    }
+
+    private @Nonnull List<Node> members(@Nonnull Map<Integer, List<Node>> members,
+                                        @Nonnull Node node) {
+        int id = dictionary.lookup(node);
+        List<Node> list = id == NodeDictionary.NONE ? null : members.get(id);
+        return list == null ? singletonList(node) : list;
+    }
+
+    private boolean isMerged(@Nonnull Node node) {
+        int id = dictionary.lookup(node);
+        return id != NodeDictionary.NONE && id < classes.count() && classes.size(id) > 1;
+    }
+
+    private int individual(@Nonnull Node node, boolean intern) {
+        if (node.isLiteral()) return NodeDictionary.NONE;
+        int id = intern ? dictionary.intern(node) : dictionary.lookup(node);
+        if (id == NodeDictionary.NONE || schema.get(id)) return NodeDictionary.NONE;
+        classes.add(id);
+        return id;
+    }
+
+    private void markSchema(@Nonnull Node node) {
+        if (!node.isLiteral()) schema.set(dictionary.intern(node));
+    }
+
+    private static boolean isVocabulary(@Nonnull String uri) {
+        return uri.startsWith(RDF.getURI()) || uri.startsWith(RDFS.getURI())
+                || uri.startsWith(OWL.NS);
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.alexishuf.infer.utils;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+
+import javax.annotation.Nonnull;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Forwards a parsed source to another StreamRDF while collecting what ModelLoader needs to
+ * know about it: triple count, prefixes, owl:Ontology IRIs and owl:imports objects.
+ *
+ * Not thread-safe, each parser must use its own instance.
+ */
+class SourceCatcher extends StreamRDFWrapper {
+    private static final Node TYPE = RDF.type.asNode();
+    private static final Node ONTOLOGY = OWL.Ontology.asNode();
+    private static final Node IMPORTS = OWL.imports.asNode();
+
+    private long triples = 0;
+    private final PrefixMapping prefixes = new PrefixMappingImpl();
+    private final Set<String> ontologies = new LinkedHashSet<>();
+    private final Set<String> imports = new LinkedHashSet<>();
+
+    SourceCatcher(@Nonnull StreamRDF other) {
+        super(other);
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        ++triples;
+        Node p = triple.getPredicate();
+        if (p.equals(TYPE)) {
+            if (triple.getObject().equals(ONTOLOGY) && triple.getSubject().isURI())
+                ontologies.add(triple.getSubject().getURI());
+        } else if (p.equals(IMPORTS) && triple.getObject().isURI()) {
+            imports.add(triple.getObject().getURI());
+        }
+        super.triple(triple);
+    }
+
+    @Override
+    public void quad(Quad quad) {
+        if (quad.isTriple() || quad.isDefaultGraph()) triple(quad.asTriple());
+    }
+
+    @Override
+    public void prefix(String prefix, String iri) {
+        merge(prefixes, prefix, iri);
+    }
+
+    /**
+     * Adds everything caught by other to this instance, as if other's source had been parsed
+     * after this instance's source.
+     */
+    void addAll(@Nonnull SourceCatcher other) {
+        triples += other.triples;
+        other.prefixes.getNsPrefixMap().forEach((p, iri) -> merge(prefixes, p, iri));
+        ontologies.addAll(other.ontologies);
+        imports.addAll(other.imports);
+    }
+
+    long getTriples() {
+        return triples;
+    }
+
+    @Nonnull PrefixMapping getPrefixes() {
+        return prefixes;
+    }
+
+    @Nonnull Set<String> getOntologies() {
+        return ontologies;
+    }
+
+    @Nonnull Set<String> getImports() {
+        return imports;
+    }
+
+    /**
+     * Adds prefix to mapping, renaming it if already bound to another IRI.
+     */
+    static void merge(PrefixMapping mapping, String prefix, String iri) {
+        if (mapping.getNsURIPrefix(iri) != null) return;
+        while (mapping.getNsPrefixURI(prefix) != null) {
+            prefix += "x";
+        }
+        mapping.setNsPrefix(prefix, iri);
+    }
+}
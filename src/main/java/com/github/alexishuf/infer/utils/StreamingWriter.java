@@ -0,0 +1,77 @@
+package com.github.alexishuf.infer.utils;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.OutputStream;
+
+/**
+ * Writes graphs with the StreamRDF writers: the graph is iterated once and triples are sent
+ * to the output as they are found, without building grouping structures in memory.
+ */
+public class StreamingWriter {
+    /**
+     * Gets a format that can be written as a stream and that is equivalent to fmt. For
+     * Turtle and TriG, this is the "blocks" variant.
+     *
+     * @return streaming format or null if the language of fmt has no streaming writer.
+     */
+    public static @Nullable RDFFormat streamingFormat(@Nonnull RDFFormat fmt) {
+        if (StreamRDFWriter.registered(fmt)) return fmt;
+        Lang lang = fmt.getLang();
+        if (RDFLanguages.TURTLE.equals(lang)) return RDFFormat.TURTLE_BLOCKS;
+        if (RDFLanguages.TRIG.equals(lang)) return RDFFormat.TRIG_BLOCKS;
+        return StreamRDFWriter.registered(lang) ? StreamRDFWriter.defaultSerialization(lang)
+                                                : null;
+    }
+
+    /**
+     * Writes all triples of graph to os.
+     *
+     * @param fmt A format for which streamingFormat() returns non-null
+     */
+    public static void write(@Nonnull OutputStream os, @Nonnull Graph graph,
+                             @Nonnull PrefixMapping prefixes, @Nonnull RDFFormat fmt) {
+        write(graph, start(os, prefixes, fmt));
+    }
+
+    /**
+     * Sends all triples of graph to a started writer and finishes it.
+     */
+    public static void write(@Nonnull Graph graph, @Nonnull StreamRDF out) {
+        ExtendedIterator<Triple> it = graph.find();
+        try {
+            while (it.hasNext()) out.triple(it.next());
+        } finally {
+            it.close();
+        }
+        out.finish();
+    }
+
+    /**
+     * A started writer to os, which already received prefixes. Callers send triples and
+     * call finish().
+     *
+     * @param fmt A format for which streamingFormat() returns non-null
+     */
+    public static @Nonnull StreamRDF start(@Nonnull OutputStream os,
+                                           @Nonnull PrefixMapping prefixes,
+                                           @Nonnull RDFFormat fmt) {
+        RDFFormat streaming = streamingFormat(fmt);
+        if (streaming == null)
+            throw new IllegalArgumentException(fmt + " has no streaming writer");
+        StreamRDF out = StreamRDFWriter.getWriterStream(os, streaming);
+        out.start();
+        prefixes.getNsPrefixMap().forEach(out::prefix);
+        return out;
+    }
+}
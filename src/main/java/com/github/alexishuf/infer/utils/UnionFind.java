@@ -0,0 +1,75 @@
+package com.github.alexishuf.infer.utils;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * Union-find over dense int ids, with path halving and union by size.
+ */
+final class UnionFind {
+    private int[] parent = new int[1024], size = new int[1024];
+    private int count = 0;
+
+    void add(int id) {
+        if (id < count) return;
+        if (id >= parent.length) {
+            int length = Math.max(parent.length * 2, id + 1);
+            parent = Arrays.copyOf(parent, length);
+            size = Arrays.copyOf(size, length);
+        }
+        for (; count <= id; count++) {
+            parent[count] = count;
+            size[count] = 1;
+        }
+    }
+
+    int find(int id) {
+        while (parent[id] != id) id = parent[id] = parent[parent[id]];
+        return id;
+    }
+
+    /**
+     * Same as find(), but does not compress paths, thus concurrent root() calls are safe.
+     */
+    int root(int id) {
+        while (parent[id] != id) id = parent[id];
+        return id;
+    }
+
+    /**
+     * Merges the sets of a and b.
+     *
+     * @return false iff they already were the same set.
+     */
+    boolean union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) return false;
+        if (size[a] < size[b]) { int tmp = a; a = b; b = tmp; }
+        parent[b] = a;
+        size[a] += size[b];
+        return true;
+    }
+
+    /**
+     * Number of ids in the set of id. Same concurrency as root().
+     */
+    int size(int id) {
+        return size[root(id)];
+    }
+
+    /**
+     * Number of ids added so far, which are [0, count()).
+     */
+    int count() {
+        return count;
+    }
+
+    @Nonnull UnionFind copy() {
+        UnionFind copy = new UnionFind();
+        copy.parent = Arrays.copyOf(parent, parent.length);
+        copy.size = Arrays.copyOf(size, size.length);
+        copy.count = count;
+        return copy;
+    }
+}
@@ -1,10 +1,19 @@
 package com.github.alexishuf.infer.utils;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.compose.MultiUnion;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 import static java.util.Arrays.stream;
 
@@ -13,4 +22,37 @@ public class Utils {
         return ModelFactory.createModelForGraph(new MultiUnion(stream(models)
                 .map(m -> (Graph)new CloseShieldGraph(m.getGraph())).iterator()));
     }
+
+    /**
+     * Applies function to all items using up to threads workers.
+     *
+     * @return results in the same order as items
+     */
+    public static @Nonnull <T, R> List<R> parallelMap(int threads, @Nonnull List<T> items,
+                                                      @Nonnull Function<? super T, ? extends R> function) {
+        List<R> results = new ArrayList<>(items.size());
+        if (threads <= 1 || items.size() <= 1) {
+            for (T item : items) results.add(function.apply(item));
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, items.size()),
+                new ThreadFactoryBuilder().setNameFormat("infer-worker-%d")
+                        .setDaemon(true).build());
+        try {
+            List<Future<? extends R>> futures = new ArrayList<>(items.size());
+            for (T item : items) futures.add(executor.submit(() -> function.apply(item)));
+            for (Future<? extends R> future : futures) results.add(future.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,94 @@
+package com.github.alexishuf.infer.reasoners;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.testng.Assert.assertTrue;
+
+public class PartitionsTest {
+    private static final String PREFIXES = "@prefix : <http://example.org/> .\n" +
+            "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n" +
+            "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n";
+    private static final String SCHEMA = ":A rdfs:subClassOf :B . :p rdfs:domain :A .\n" +
+            ":q owl:inverseOf :r . :f a owl:FunctionalProperty .\n" +
+            ":knows a owl:TransitiveProperty .\n";
+    /* restrictions make owl-fb create blank nodes that only carry schema entailments */
+    private static final String RESTRICTIONS = ":R owl:onProperty :p ; " +
+            "owl:someValuesFrom :B . :S owl:onProperty :q ; owl:allValuesFrom :A .\n" +
+            ":C owl:intersectionOf (:A :R) . :D rdfs:subClassOf :S .\n";
+    private static final String MAIN = ":a :p :b . :c :q :d . :e a :A . :g :f :h .\n" +
+            ":i a :D ; :q :j . :k :p :l . :l a :B . :m a :C .\n";
+
+    private static @Nonnull Model parse(@Nonnull String ttl) {
+        Model model = ModelFactory.createDefaultModel();
+        RDFParser.create().fromString(PREFIXES + ttl).lang(Lang.TURTLE).parse(model.getGraph());
+        return model;
+    }
+
+    private static @Nonnull Model apply(@Nonnull String profile, int partitions,
+                                        boolean echo, @Nonnull String bg,
+                                        @Nonnull String main) {
+        JenaSplitReasoner reasoner = new JenaSplitReasoner();
+        reasoner.setProfile(profile);
+        reasoner.setPartitions(partitions);
+        reasoner.setEchoEnabled(echo);
+        Model out = ModelFactory.createDefaultModel();
+        reasoner.apply(reasoner.bindBackground(parse(bg)), parse(main), out);
+        return out;
+    }
+
+    private static void assertSameOutput(@Nonnull String profile, boolean echo,
+                                         @Nonnull String bg, @Nonnull String main) {
+        Model expected = apply(profile, 1, echo, bg, main);
+        for (int partitions : new int[] {2, 3, 8}) {
+            Model actual = apply(profile, partitions, echo, bg, main);
+            assertTrue(actual.getGraph().isIsomorphicWith(expected.getGraph()),
+                       profile + " with " + partitions + " partitions: " +
+                       actual.difference(expected) + " instead of " +
+                       expected.difference(actual));
+        }
+    }
+
+    @DataProvider
+    public static Object[][] profileData() {
+        return new Object[][] {
+                {"owl-fb", false}, {"owl-fb", true},
+                {"OWL_MEM_MICRO_RULE_INF", false}, {"OWL_MEM_MINI_RULE_INF", true},
+        };
+    }
+
+    @Test(dataProvider = "profileData")
+    public void testMatchesSinglePartition(@Nonnull String profile, boolean echo) {
+        assertSameOutput(profile, echo, SCHEMA, MAIN);
+    }
+
+    @Test(dataProvider = "profileData")
+    public void testRestrictionsMatchSinglePartition(@Nonnull String profile, boolean echo) {
+        assertSameOutput(profile, echo, SCHEMA + RESTRICTIONS, MAIN);
+    }
+
+    @Test(dataProvider = "profileData")
+    public void testBackgroundInstancesJoinPartitions(@Nonnull String profile, boolean echo) {
+        assertSameOutput(profile, echo, SCHEMA + ":x :knows :y . :s :f :t .",
+                         ":a :knows :x . :y :knows :b . :s :f :u . :c :q :d .");
+        Model out = apply(profile, 2, echo, SCHEMA + ":x :knows :y .",
+                          ":a :knows :x . :y :knows :b . :c :q :d .");
+        assertTrue(out.getGraph().contains(parse(":a :knows :b .").getGraph().find().next()));
+    }
+
+    @Test(dataProvider = "profileData")
+    public void testHasValueJoinsPartitions(@Nonnull String profile, boolean echo) {
+        String schema = SCHEMA + ":V owl:onProperty :knows ; owl:hasValue :v .\n";
+        assertSameOutput(profile, echo, schema, ":a a :V . :v :knows :w . :c :q :d .");
+        if (profile.equals("owl-fb")) { // mini and micro do not support owl:hasValue
+            Model out = apply(profile, 8, echo, schema, ":a a :V . :v :knows :w . :c :q :d .");
+            assertTrue(out.getGraph().contains(parse(":a :knows :w .").getGraph().find().next()));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.alexishuf.infer.reasoners;
+
+import com.github.alexishuf.infer.reasoners.rl.RuleSet;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class RLSplitReasonerTest {
+    private static final String PREFIXES = "@prefix : <http://example.org/> .\n" +
+            "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n" +
+            "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n";
+    private static final String BG = ":A rdfs:subClassOf :B . :B rdfs:subClassOf :C .\n" +
+            ":p rdfs:domain :A . :p rdfs:subPropertyOf :q . :q owl:inverseOf :r .\n" +
+            ":t a owl:TransitiveProperty . :X a owl:Class . :k :t :l .\n";
+    private static final String MAIN = ":a :p :b . :b owl:sameAs :c . :c a :B .\n" +
+            ":x :t :y . :y :t :k . :Y a owl:Class . :Y rdfs:subClassOf :X .\n";
+    private static final String ADDED = ":d :p :a . :l :t :m .";
+    private static final String REMOVED = ":a :p :b . :y :t :k . :Y rdfs:subClassOf :X .";
+
+    private static @Nonnull Model parse(@Nonnull String ttl) {
+        Model model = ModelFactory.createDefaultModel();
+        RDFParser.create().fromString(PREFIXES + ttl).lang(Lang.TURTLE).parse(model.getGraph());
+        return model;
+    }
+
+    private static @Nonnull Set<Triple> triples(@Nonnull Model... models) {
+        Set<Triple> set = new HashSet<>();
+        for (Model model : models) set.addAll(model.getGraph().find().toSet());
+        return set;
+    }
+
+    private static @Nonnull Triple triple(@Nonnull String ttl) {
+        return parse(ttl).getGraph().find().next();
+    }
+
+    private static @Nonnull RLSplitReasoner reasoner(@Nonnull String profile) {
+        RLSplitReasoner reasoner = new RLSplitReasoner();
+        reasoner.setProfile(profile);
+        reasoner.setEchoEnabled(true);
+        return reasoner;
+    }
+
+    @DataProvider
+    public static Object[][] profileData() {
+        return new Object[][] {{RuleSet.RDFS}, {RuleSet.OWL_RL}};
+    }
+
+    @Test(dataProvider = "profileData")
+    public void testEntailments(@Nonnull String profile) {
+        Set<Triple> out = triples(reasoner(profile).apply(parse(BG + MAIN)));
+        assertTrue(out.contains(triple(":a a :C .")));
+        assertTrue(out.contains(triple(":a :q :b .")));
+        if (profile.equals(RuleSet.OWL_RL)) {
+            assertTrue(out.contains(triple(":b :r :a .")));
+            assertTrue(out.contains(triple(":x :t :l .")));
+            assertTrue(out.contains(triple(":b a :C .")));
+            assertTrue(out.contains(triple(":a :p :c .")));
+        }
+    }
+
+    @Test(dataProvider = "profileData")
+    public void testSplitMatchesWhole(@Nonnull String profile) {
+        Set<Triple> whole = triples(reasoner(profile).apply(parse(BG + MAIN)));
+        Model outBg = ModelFactory.createDefaultModel();
+        Model outMain = ModelFactory.createDefaultModel();
+        reasoner(profile).apply(parse(BG), parse(MAIN), outBg, outMain);
+        assertEquals(triples(outBg, outMain), whole);
+
+        RLSplitReasoner reasoner = reasoner(profile);
+        BoundBackground bound = reasoner.bindBackground(parse(BG));
+        assertEquals(triples(reasoner.infer(bound, parse(MAIN))), whole);
+        /* bound can be used again */
+        assertEquals(triples(reasoner.infer(bound, parse(MAIN))), whole);
+
+        BoundBackground loaded = reasoner.loadBackground(parse(BG), bound.getClosure());
+        assertEquals(triples(reasoner.infer(loaded, parse(MAIN))), whole);
+    }
+
+    @Test(dataProvider = "profileData")
+    public void testUpdateMatchesRecompute(@Nonnull String profile) {
+        RLSplitReasoner reasoner = reasoner(profile);
+        reasoner.setEchoEnabled(false);
+        BoundBackground bound = reasoner.bindBackground(parse(BG));
+        Model previous = ModelFactory.createDefaultModel();
+        reasoner.apply(bound, parse(MAIN), previous);
+
+        Model next = parse(MAIN).remove(parse(REMOVED)).add(parse(ADDED));
+        Model expected = ModelFactory.createDefaultModel();
+        reasoner.apply(bound, next, expected);
+        Model actual = ModelFactory.createDefaultModel();
+        reasoner.update(bound, parse(MAIN), previous, parse(ADDED), parse(REMOVED), actual);
+        assertEquals(triples(actual), triples(expected));
+    }
+}
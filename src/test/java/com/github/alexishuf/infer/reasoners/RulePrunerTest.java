@@ -0,0 +1,167 @@
+package com.github.alexishuf.infer.reasoners;
+
+import com.github.alexishuf.infer.reasoners.RulePruner.Vocabulary;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.reasoner.TriplePattern;
+import org.apache.jena.reasoner.rulesys.ClauseEntry;
+import org.apache.jena.reasoner.rulesys.FBRuleReasoner;
+import org.apache.jena.reasoner.rulesys.Rule;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.vocabulary.RDF;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public class RulePrunerTest {
+    private static final String PREFIXES = "@prefix : <http://example.org/> .\n" +
+            "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n" +
+            "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n";
+    /* heads with variable predicates (sub-properties, inverses), builtins (owl:unionOf,
+     * owl:intersectionOf), nested backward rules (inverses, restrictions) and rules that
+     * OWLRuleTranslationHook generates (owl:intersectionOf) */
+    private static final String[][] INPUTS = {
+            {":A owl:equivalentClass :B .", ":x a :A ."},
+            {":p rdfs:subPropertyOf rdfs:subClassOf .", ":A :p :B . :x a :A ."},
+            {":C owl:intersectionOf (:A :B) .", ":x a :A , :B . :y a :C ."},
+            {":R owl:onProperty :p ; owl:someValuesFrom :B . :q owl:inverseOf :p .",
+             ":x :p :y . :y a :B . :z :q :w ."},
+            {":R owl:onProperty :p ; owl:hasValue :v . :p a owl:InverseFunctionalProperty .",
+             ":x a :R . :y :p :v ."},
+            {":p a owl:TransitiveProperty , owl:SymmetricProperty .", ":a :p :b . :b :p :c ."},
+            /* main enables more rules than the background */
+            {":A rdfs:domain :B .", ":p owl:inverseOf :q . :a :p :b . :C owl:unionOf (:A :B) ."},
+            {":x :p :y .", ":p a owl:FunctionalProperty . :x :p :z ."},
+            /* owl:FunctionalProperty only comes from the head of inverseOf4 */
+            {":p a owl:InverseFunctionalProperty ; owl:inverseOf :q .", ":a :q :b , :c ."},
+    };
+
+    private static @Nonnull Model parse(@Nonnull String ttl) {
+        Model model = ModelFactory.createDefaultModel();
+        RDFParser.create().fromString(PREFIXES + ttl).lang(Lang.TURTLE).parse(model.getGraph());
+        return model;
+    }
+
+    private static @Nonnull JenaSplitReasoner reasoner(@Nonnull String profile, boolean prune,
+                                                       boolean echo) {
+        JenaSplitReasoner reasoner = new JenaSplitReasoner();
+        reasoner.setProfile(profile);
+        reasoner.setPruneRules(prune);
+        reasoner.setEchoEnabled(echo);
+        return reasoner;
+    }
+
+    /* with echo, apply() may return an InfModel */
+    private static void assertIsomorphic(@Nonnull Model inf, @Nonnull Model expectedInf,
+                                         @Nonnull String message) {
+        Model actual = ModelFactory.createDefaultModel().add(inf);
+        Model expected = ModelFactory.createDefaultModel().add(expectedInf);
+        assertTrue(actual.getGraph().isIsomorphicWith(expected.getGraph()),
+                   message + ": " + actual.difference(expected) + " instead of " +
+                   expected.difference(actual));
+    }
+
+    @DataProvider
+    public static Object[][] inputData() {
+        String[] profiles = {"owl-fb", "OWL_MEM_MICRO_RULE_INF"};
+        Object[][] rows = new Object[profiles.length * INPUTS.length][];
+        for (int i = 0; i < profiles.length; i++) {
+            for (int j = 0; j < INPUTS.length; j++) {
+                rows[i * INPUTS.length + j] = new Object[] {profiles[i], INPUTS[j][0],
+                                                            INPUTS[j][1]};
+            }
+        }
+        return rows;
+    }
+
+    @Test(dataProvider = "inputData")
+    public void testPrunedMatchesUnpruned(@Nonnull String profile, @Nonnull String bg,
+                                          @Nonnull String main) {
+        assertIsomorphic(reasoner(profile, true, true).apply(parse(bg + main)),
+                         reasoner(profile, false, true).apply(parse(bg + main)), "union");
+
+        Model expectedBg = ModelFactory.createDefaultModel();
+        Model expectedMain = ModelFactory.createDefaultModel();
+        reasoner(profile, false, false).apply(parse(bg), parse(main), expectedBg, expectedMain);
+        Model actualBg = ModelFactory.createDefaultModel();
+        Model actualMain = ModelFactory.createDefaultModel();
+        reasoner(profile, true, false).apply(parse(bg), parse(main), actualBg, actualMain);
+        assertIsomorphic(actualBg, expectedBg, "split background");
+        assertIsomorphic(actualMain, expectedMain, "split main");
+
+        /* a bound background reused with a main that enables other rules */
+        JenaSplitReasoner reasoner = reasoner(profile, true, false);
+        BoundBackground bound = reasoner.bindBackground(parse(bg));
+        for (String other : new String[] {main, bg, ":a owl:sameAs :b .", main}) {
+            Model expected = ModelFactory.createDefaultModel();
+            JenaSplitReasoner unpruned = reasoner(profile, false, false);
+            unpruned.apply(unpruned.bindBackground(parse(bg)), parse(other), expected);
+            Model actual = ModelFactory.createDefaultModel();
+            reasoner.apply(bound, parse(other), actual);
+            assertIsomorphic(actual, expected, "bound with " + other);
+        }
+    }
+
+    /* rules whose body uses vocabulary absent from the input, which only the heads of other
+     * kept rules produce, and a triple entailed through them */
+    @DataProvider
+    public static Object[][] chainData() {
+        return new Object[][] {
+                {"owl-fb", INPUTS[0][0] + INPUTS[0][1], "rdfs9", ":x a :B ."},
+                {"owl-fb", INPUTS[8][0] + INPUTS[8][1], "fp1", ":b owl:sameAs :c ."},
+                {"OWL_MEM_MICRO_RULE_INF", INPUTS[0][0] + INPUTS[0][1], "rdfs9-alt",
+                 ":x a :B ."},
+        };
+    }
+
+    @Test(dataProvider = "chainData")
+    public void testSelectsRulesEnabledByHeads(@Nonnull String profile, @Nonnull String ttl,
+                                               @Nonnull String ruleName,
+                                               @Nonnull String entailed) {
+        OntModelSpec spec = profile.equals("owl-fb") ? OntModelSpec.OWL_MEM_RULE_INF
+                                                     : OntModelSpec.OWL_MEM_MICRO_RULE_INF;
+        FBRuleReasoner jena = (FBRuleReasoner) spec.getReasoner();
+        RulePruner pruner = RulePruner.forReasoner(jena);
+        assertNotNull(pruner);
+        Graph input = parse(ttl).getGraph();
+        BitSet selection = pruner.select(new Vocabulary().addAll(input));
+        assertTrue(selection.cardinality() < pruner.getRuleCount());
+
+        List<Rule> rules = jena.getRules();
+        boolean found = false;
+        for (int i = 0; i < rules.size(); i++) {
+            if (!ruleName.equals(rules.get(i).getName())) continue;
+            found = true;
+            assertTrue(selection.get(i), ruleName + " was not selected");
+            assertFalse(canFireOn(rules.get(i), input),
+                        ruleName + " is enabled by the input alone");
+        }
+        assertTrue(found, "no rule named " + ruleName);
+
+        Model out = ModelFactory.createDefaultModel()
+                .add(reasoner(profile, true, true).apply(parse(ttl)));
+        assertTrue(out.getGraph().contains(parse(entailed).getGraph().find().next()));
+    }
+
+    /* whether the URI predicates and rdf:type classes of the body of rule occur in input */
+    private static boolean canFireOn(@Nonnull Rule rule, @Nonnull Graph input) {
+        for (ClauseEntry entry : rule.getBody()) {
+            if (!(entry instanceof TriplePattern)) continue;
+            Node p = ((TriplePattern) entry).getPredicate();
+            Node o = ((TriplePattern) entry).getObject();
+            if (p.isURI() && !input.contains(Node.ANY, p, Node.ANY)) return false;
+            if (p.equals(RDF.type.asNode()) && o.isURI() && !input.contains(Node.ANY, p, o))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.alexishuf.infer.reasoners;
+
+import com.github.alexishuf.infer.reasoners.rl.RuleSet;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class SameAsRewritingReasonerTest {
+    private static final String PREFIXES = "@prefix : <http://example.org/> .\n" +
+            "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n" +
+            "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n";
+    private static final String BG = ":K rdfs:subClassOf :L . :p rdfs:domain :D .\n" +
+            ":f a owl:FunctionalProperty . :q owl:inverseOf :r .\n";
+    private static final String[] MAINS = {
+            ":a owl:sameAs :b . :b owl:sameAs :c . :a :p :x . :c a :K .",
+            ":s :f :a . :s :f :b . :a :q :x . :b a :K .",
+            ":a owl:sameAs :b . :x :q :a . :y :f :b . :y :f :c .",
+    };
+
+    private static @Nonnull Model parse(@Nonnull String ttl) {
+        Model model = ModelFactory.createDefaultModel();
+        RDFParser.create().fromString(PREFIXES + ttl).lang(Lang.TURTLE).parse(model.getGraph());
+        return model;
+    }
+
+    private static @Nonnull Set<Triple> triples(@Nonnull Model model) {
+        Graph graph = GraphFactory.createDefaultGraph();
+        GraphUtil.addInto(graph, model.getGraph());
+        return new HashSet<>(graph.find().toSet());
+    }
+
+    private static @Nonnull SplitReasoner jena() {
+        return new JenaSplitReasoner();
+    }
+
+    private static @Nonnull SplitReasoner rl() {
+        SplitReasoner reasoner = new RLSplitReasoner();
+        reasoner.setProfile(RuleSet.OWL_RL);
+        return reasoner;
+    }
+
+    @DataProvider
+    public static Object[][] inputData() {
+        Supplier<SplitReasoner> jena = SameAsRewritingReasonerTest::jena;
+        Supplier<SplitReasoner> rl = SameAsRewritingReasonerTest::rl;
+        Object[][] rows = new Object[MAINS.length * 2][];
+        for (int i = 0; i < MAINS.length; i++) {
+            rows[2 * i] = new Object[] {jena, MAINS[i]};
+            rows[2 * i + 1] = new Object[] {rl, MAINS[i]};
+        }
+        return rows;
+    }
+
+    @Test(dataProvider = "inputData")
+    public void testInferMatchesPlain(@Nonnull Supplier<SplitReasoner> factory,
+                                      @Nonnull String main) {
+        SameAsRewritingReasoner rewriting = new SameAsRewritingReasoner(factory.get());
+        assertTrue(rewriting.isEqualityReasoning());
+        Model input = parse(BG + main);
+        assertEquals(triples(rewriting.infer(input)), triples(factory.get().infer(input)));
+    }
+
+    @Test(dataProvider = "inputData")
+    public void testSplitMatchesPlain(@Nonnull Supplier<SplitReasoner> factory,
+                                      @Nonnull String main) {
+        SplitReasoner plain = factory.get();
+        SameAsRewritingReasoner rewriting = new SameAsRewritingReasoner(factory.get());
+        Model bg = parse(BG + ":a :f :y . :z :p :w .");
+        Model expected = plain.infer(plain.bindBackground(bg), parse(main));
+        Model actual = rewriting.infer(rewriting.bindBackground(bg), parse(main));
+        assertEquals(triples(actual), triples(expected));
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.alexishuf.infer.reasoners.hierarchy;
+
+import com.github.alexishuf.infer.reasoners.BoundBackground;
+import com.github.alexishuf.infer.reasoners.JenaSplitReasoner;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Compares the trans and rdfs profiles, which use HierarchyClosure, with the Jena reasoners
+ * of the same OntModelSpecs.
+ */
+public class HierarchyClosureTest {
+    private static final String PREFIXES = "@prefix : <http://example.org/> .\n" +
+            "@prefix rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> .\n" +
+            "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n";
+    /* domain and range of super-properties */
+    private static final String SCHEMA = ":A rdfs:subClassOf :B . :B rdfs:subClassOf :C .\n" +
+            ":C rdfs:subClassOf :D . :E rdfs:subClassOf :A .\n" +
+            ":p rdfs:subPropertyOf :q . :q rdfs:subPropertyOf :r .\n" +
+            ":r rdfs:domain :E . :r rdfs:range :D . :s rdfs:subPropertyOf :p .\n" +
+            ":t rdfs:range rdfs:Literal . :F a rdfs:Class . :u a rdf:Property .\n";
+    /* makes A, B, C and p, q equivalent */
+    private static final String CYCLES = ":C rdfs:subClassOf :A . :q rdfs:subPropertyOf :p .\n";
+    private static final String INSTANCES = ":a :s :b . :c a :A . :d :q :e . :e a :E .\n" +
+            ":f :t \"lit\" . :g :r :h . :h a :F . :i :u :j . :k a :G .\n";
+    /* extends the hierarchies of SCHEMA and adds a new cycle */
+    private static final String MAIN_SCHEMA = ":D rdfs:subClassOf :G . :G rdfs:subClassOf :H .\n" +
+            ":H rdfs:subClassOf :G . :v rdfs:subPropertyOf :s . :w rdfs:domain :F .\n";
+    private static final String MAIN = ":l :v :m . :n a :H . :o :w :p . :a :p :l .\n";
+
+    private static @Nonnull Model parse(@Nonnull String ttl) {
+        Model model = ModelFactory.createDefaultModel();
+        RDFParser.create().fromString(PREFIXES + ttl).lang(Lang.TURTLE).parse(model.getGraph());
+        return model;
+    }
+
+    private static @Nonnull Set<Triple> triples(@Nonnull Model... models) {
+        Set<Triple> set = new HashSet<>();
+        for (Model model : models) set.addAll(model.getGraph().find().toSet());
+        return set;
+    }
+
+    /**
+     * Jena's transitive closure misses paths through cycles depending on the order in which
+     * it receives the triples. The union of its outputs for all rotations of the triples of
+     * ttl is still sound and has the paths missed by any single order.
+     */
+    private static @Nonnull Set<Triple> jenaRotations(@Nonnull String jena,
+                                                      @Nonnull String ttl) {
+        List<Triple> list = parse(ttl).getGraph().find().toList();
+        Set<Triple> union = new HashSet<>();
+        for (int i = 0; i < list.size(); i++) {
+            Model model = ModelFactory.createDefaultModel();
+            for (int j = 0; j < list.size(); j++)
+                model.getGraph().add(list.get((i + j) % list.size()));
+            union.addAll(triples(reasoner(jena, true).apply(model)));
+        }
+        return union;
+    }
+
+    private static @Nonnull JenaSplitReasoner reasoner(@Nonnull String profile, boolean echo) {
+        JenaSplitReasoner reasoner = new JenaSplitReasoner();
+        reasoner.setProfile(profile);
+        reasoner.setEchoEnabled(echo);
+        return reasoner;
+    }
+
+    @DataProvider
+    public static Object[][] profileData() {
+        return new Object[][] {
+                {"trans", "OWL_MEM_TRANS_INF", false},
+                {"trans", "OWL_MEM_TRANS_INF", true},
+                {"rdfs", "OWL_MEM_RDFS_INF", false},
+                {"rdfs", "OWL_MEM_RDFS_INF", true},
+        };
+    }
+
+    @DataProvider
+    public static Object[][] splitData() {
+        String[][] inputs = {
+                {SCHEMA, INSTANCES},
+                {SCHEMA + INSTANCES, MAIN},
+                {SCHEMA + INSTANCES, MAIN_SCHEMA + MAIN},
+                {SCHEMA, MAIN_SCHEMA + INSTANCES + MAIN},
+                {INSTANCES, SCHEMA},
+        };
+        Object[][] profiles = profileData();
+        Object[][] rows = new Object[profiles.length * inputs.length][];
+        for (int i = 0; i < profiles.length; i++) {
+            for (int j = 0; j < inputs.length; j++) {
+                rows[i * inputs.length + j] = new Object[] {profiles[i][0], profiles[i][1],
+                        profiles[i][2], inputs[j][0], inputs[j][1]};
+            }
+        }
+        return rows;
+    }
+
+    @Test(dataProvider = "profileData")
+    public void testUnionMatchesJena(@Nonnull String profile, @Nonnull String jena,
+                                     boolean echo) {
+        for (String ttl : new String[] {SCHEMA + INSTANCES, SCHEMA + INSTANCES + MAIN_SCHEMA
+                + MAIN, INSTANCES + MAIN}) {
+            assertEquals(triples(reasoner(profile, echo).apply(parse(ttl))),
+                         triples(reasoner(jena, echo).apply(parse(ttl))));
+        }
+    }
+
+    @Test(dataProvider = "splitData")
+    public void testSplitMatchesJena(@Nonnull String profile, @Nonnull String jena, boolean echo,
+                                     @Nonnull String bg, @Nonnull String main) {
+        Model expectedBg = ModelFactory.createDefaultModel();
+        Model expectedMain = ModelFactory.createDefaultModel();
+        reasoner(jena, echo).apply(parse(bg), parse(main), expectedBg, expectedMain);
+        Model actualBg = ModelFactory.createDefaultModel();
+        Model actualMain = ModelFactory.createDefaultModel();
+        reasoner(profile, echo).apply(parse(bg), parse(main), actualBg, actualMain);
+        assertEquals(triples(actualBg), triples(expectedBg));
+        assertEquals(triples(actualMain), triples(expectedMain));
+
+        /* a bound background, as in --batch, with a closure loaded from a cache */
+        JenaSplitReasoner reasoner = reasoner(profile, echo);
+        BoundBackground bound = reasoner.loadBackground(parse(bg),
+                reasoner.bindBackground(parse(bg)).getClosure());
+        Model reused = ModelFactory.createDefaultModel();
+        reasoner.apply(bound, parse(main), reused);
+        assertEquals(triples(reused), triples(expectedMain));
+    }
+
+    @Test(dataProvider = "profileData")
+    public void testCyclesMatchJena(@Nonnull String profile, @Nonnull String jena,
+                                    boolean echo) {
+        String all = SCHEMA + CYCLES + INSTANCES + MAIN_SCHEMA + MAIN;
+        Set<Triple> expected = jenaRotations(jena, all);
+        if (!echo) expected.removeAll(triples(parse(all)));
+        assertEquals(triples(reasoner(profile, echo).apply(parse(all))), expected);
+
+        String[][] splits = {
+                {SCHEMA + CYCLES, INSTANCES + MAIN_SCHEMA + MAIN},
+                {SCHEMA + INSTANCES, CYCLES + MAIN_SCHEMA + MAIN},
+                {SCHEMA + CYCLES + INSTANCES + MAIN_SCHEMA, MAIN},
+        };
+        for (String[] split : splits) {
+            Model outBg = ModelFactory.createDefaultModel();
+            Model outMain = ModelFactory.createDefaultModel();
+            reasoner(profile, echo).apply(parse(split[0]), parse(split[1]), outBg, outMain);
+            Set<Triple> actual = triples(outBg, outMain);
+            if (!echo) actual.addAll(triples(parse(split[0] + split[1])));
+            assertEquals(actual, jenaRotations(jena, all));
+            assertEquals(triples(outBg), triples(reasoner(profile, echo).apply(parse(split[0]))));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.alexishuf.infer.reasoners.rl;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+
+public class MaterializerTest {
+    private static final String PREFIXES = "@prefix : <http://example.org/> .\n" +
+            "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n" +
+            "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n";
+
+    @DataProvider
+    public static Object[][] removeData() {
+        return new Object[][] {
+                {RuleSet.OWL_RL, ":X a owl:Class . :Y a owl:Class . :Y rdfs:subClassOf :X ."},
+                {RuleSet.OWL_RL, ":p a owl:AnnotationProperty . :q a owl:ObjectProperty .\n" +
+                                 ":q rdfs:subPropertyOf :p . :a :q :b ."},
+                {RuleSet.OWL_RL, ":A owl:equivalentClass owl:Thing . :a a :A ."},
+                {RuleSet.OWL_RL, ":a owl:sameAs :b . :b owl:sameAs :c . :a :p :x . :c a :K ."},
+                {RuleSet.OWL_RL, ":p a owl:TransitiveProperty . :a :p :b . :b :p :c .\n" +
+                                 ":a :p :c . :p rdfs:domain :D . :D rdfs:subClassOf :E ."},
+                {RuleSet.OWL_RL, ":p owl:inverseOf :q . :a :p :b . :b :q :a .\n" +
+                                 ":q rdfs:range owl:Thing ."},
+                {RuleSet.RDFS, ":A rdfs:subClassOf :B . :B rdfs:subClassOf :C . :a a :A .\n" +
+                               ":p rdfs:domain :B . :a :p :b . :b a :B ."},
+        };
+    }
+
+    private static @Nonnull Graph parse(@Nonnull String ttl) {
+        Graph graph = GraphFactory.createDefaultGraph();
+        RDFParser.create().fromString(PREFIXES + ttl).lang(Lang.TURTLE).parse(graph);
+        return graph;
+    }
+
+    private static @Nonnull Set<Triple> closure(@Nonnull Materializer m) {
+        Graph graph = GraphFactory.createDefaultGraph();
+        m.copyTo(0, m.getTable().size(), graph);
+        return new HashSet<>(graph.find().toSet());
+    }
+
+    @Test(dataProvider = "removeData")
+    public void testRemoveMatchesRecompute(@Nonnull String profile, @Nonnull String ttl) {
+        List<Triple> explicit = parse(ttl).find().toList();
+        for (Triple removed : explicit) {
+            Materializer incremental = new Materializer(profile);
+            BitSet explicitRows = new BitSet();
+            for (Triple triple : explicit) explicitRows.set(incremental.add(triple));
+            incremental.run();
+            int row = incremental.find(removed);
+            explicitRows.clear(row);
+            incremental.remove(new int[] {row}, explicitRows::get);
+            incremental.run();
+
+            Materializer full = new Materializer(profile);
+            for (Triple triple : explicit) {
+                if (!triple.equals(removed)) full.add(triple);
+            }
+            full.run();
+            assertEquals(closure(incremental), closure(full), "removed " + removed);
+        }
+    }
+}
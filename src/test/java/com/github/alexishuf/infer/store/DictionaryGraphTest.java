@@ -0,0 +1,104 @@
+package com.github.alexishuf.infer.store;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.apache.jena.graph.Node.ANY;
+import static org.testng.Assert.*;
+
+public class DictionaryGraphTest {
+    private static @Nonnull List<Node> nodes() {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 6; i++) nodes.add(NodeFactory.createURI("http://example.org/" + i));
+        nodes.add(NodeFactory.createBlankNode());
+        nodes.add(NodeFactory.createLiteral("1"));
+        nodes.add(NodeFactory.createLiteral("1", "en"));
+        return nodes;
+    }
+
+    private static void assertSameFind(@Nonnull Graph expected, @Nonnull Graph actual,
+                                       @Nonnull List<Node> nodes) {
+        assertEquals(actual.size(), expected.size());
+        List<Node> terms = new ArrayList<>(nodes);
+        terms.add(ANY);
+        terms.add(NodeFactory.createURI("http://example.org/unknown"));
+        for (Node s : terms) {
+            for (Node p : terms) {
+                for (Node o : terms) {
+                    Triple pattern = Triple.createMatch(s, p, o);
+                    assertEquals(actual.find(pattern).toSet(), expected.find(pattern).toSet(),
+                                 pattern.toString());
+                    assertEquals(actual.contains(pattern), expected.contains(pattern),
+                                 pattern.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesGraphMem() {
+        List<Node> nodes = nodes();
+        Random random = new Random(7);
+        Graph expected = GraphFactory.createGraphMem();
+        DictionaryGraph actual = new DictionaryGraph();
+        List<Triple> triples = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Triple t = Triple.create(nodes.get(random.nextInt(7)), nodes.get(random.nextInt(6)),
+                                     nodes.get(random.nextInt(nodes.size())));
+            triples.add(t);
+            expected.add(t);
+            actual.add(t);
+        }
+        assertSameFind(expected, actual, nodes);
+
+        for (int i = 0; i < triples.size(); i += 3) {
+            expected.delete(triples.get(i));
+            actual.delete(triples.get(i));
+        }
+        assertSameFind(expected, actual, nodes);
+
+        for (int i = 0; i < triples.size(); i += 6) {
+            expected.add(triples.get(i));
+            actual.add(triples.get(i));
+        }
+        assertSameFind(expected, actual, nodes);
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        DictionaryGraph graph = new DictionaryGraph();
+        List<Node> nodes = nodes();
+        for (Node o : nodes) graph.add(Triple.create(nodes.get(0), nodes.get(1), o));
+        graph.add(Triple.create(nodes.get(2), nodes.get(1), nodes.get(3)));
+        ExtendedIterator<Triple> it = graph.find(nodes.get(0), ANY, ANY);
+        while (it.hasNext()) {
+            if (it.next().getObject().isLiteral()) it.remove();
+        }
+        assertEquals(graph.size(), nodes.size() - 2 + 1);
+        assertFalse(graph.find(ANY, ANY, nodes.get(7)).hasNext());
+        assertTrue(graph.contains(nodes.get(2), nodes.get(1), nodes.get(3)));
+    }
+
+    @Test
+    public void testSharedDictionary() {
+        NodeDictionary dictionary = new NodeDictionary();
+        DictionaryGraph a = new DictionaryGraph(dictionary), b = new DictionaryGraph(dictionary);
+        List<Node> nodes = nodes();
+        a.add(Triple.create(nodes.get(0), nodes.get(1), nodes.get(2)));
+        b.add(Triple.create(nodes.get(3), nodes.get(4), nodes.get(5)));
+        assertEquals(a.size(), 1);
+        assertFalse(a.contains(nodes.get(3), nodes.get(4), nodes.get(5)));
+        assertFalse(a.find(nodes.get(3), ANY, ANY).hasNext());
+        assertTrue(b.contains(nodes.get(3), nodes.get(4), nodes.get(5)));
+    }
+}
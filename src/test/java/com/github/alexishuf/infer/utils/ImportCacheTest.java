@@ -0,0 +1,193 @@
+package com.github.alexishuf.infer.utils;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RiotNotFoundException;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class ImportCacheTest {
+    private static final String TTL = "@prefix ex: <http://example.org/> .\n" +
+            "ex:A a <Local> .\n";
+
+    private HttpServer server;
+    private File dir;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        requests.set(0);
+        notModified.set(0);
+        dir = Files.createTempDirectory("infer-import-cache").toFile();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/doc.ttl", this::serveDoc);
+        server.createContext("/sub/doc.ttl", this::serveDoc);
+        server.createContext("/moved", ex -> redirect(ex, "sub/doc.ttl"));
+        server.createContext("/loop", ex -> redirect(ex, "/loop"));
+        server.createContext("/missing", ex -> {
+            requests.incrementAndGet();
+            ex.sendResponseHeaders(404, -1);
+            ex.close();
+        });
+        server.start();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        server.stop(0);
+        MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    private void serveDoc(@Nonnull HttpExchange ex) throws IOException {
+        requests.incrementAndGet();
+        if ("\"v1\"".equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModified.incrementAndGet();
+            ex.sendResponseHeaders(304, -1);
+            ex.close();
+            return;
+        }
+        byte[] body = TTL.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/turtle");
+        ex.getResponseHeaders().set("ETag", "\"v1\"");
+        ex.sendResponseHeaders(200, body.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private void redirect(@Nonnull HttpExchange ex, @Nonnull String path) throws IOException {
+        requests.incrementAndGet();
+        ex.getResponseHeaders().set("Location", path);
+        ex.sendResponseHeaders(301, -1);
+        ex.close();
+    }
+
+    private @Nonnull String url(@Nonnull String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private @Nonnull Graph get(@Nonnull ImportCache cache, @Nonnull String uri) {
+        Graph graph = GraphFactory.createDefaultGraph();
+        assertTrue(cache.get(uri, Lang.TURTLE, StreamRDFLib.graph(graph)));
+        return graph;
+    }
+
+    private void assertDoc(@Nonnull Graph graph, @Nonnull String base) {
+        assertEquals(graph.size(), 1);
+        assertTrue(graph.contains(NodeFactory.createURI("http://example.org/A"), null,
+                NodeFactory.createURI(base.replaceAll("[^/]*$", "") + "Local")));
+    }
+
+    @Test
+    public void testFreshEntryIsNotFetchedAgain() {
+        ImportCache cache = new ImportCache(dir);
+        assertDoc(get(cache, url("/doc.ttl")), url("/doc.ttl"));
+        assertDoc(get(cache, url("/doc.ttl")), url("/doc.ttl"));
+        assertEquals(requests.get(), 1);
+    }
+
+    @Test
+    public void testRevalidatesStaleEntry() {
+        ImportCache cache = new ImportCache(dir).withTTL(0);
+        assertDoc(get(cache, url("/doc.ttl")), url("/doc.ttl"));
+        assertDoc(get(cache, url("/doc.ttl")), url("/doc.ttl"));
+        assertEquals(requests.get(), 2);
+        assertEquals(notModified.get(), 1);
+    }
+
+    @Test
+    public void testFollowsRedirectsWithFinalBase() {
+        ImportCache cache = new ImportCache(dir);
+        assertDoc(get(cache, url("/moved")), url("/sub/doc.ttl"));
+        assertEquals(requests.get(), 2);
+        assertDoc(get(cache, url("/moved")), url("/sub/doc.ttl"));
+        assertEquals(requests.get(), 2);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testRedirectLoopFails() {
+        get(new ImportCache(dir), url("/loop"));
+    }
+
+    @Test(expectedExceptions = RiotNotFoundException.class)
+    public void testNotFound() {
+        get(new ImportCache(dir), url("/missing"));
+    }
+
+    @Test
+    public void testOffline() {
+        assertFalse(new ImportCache(dir).withOffline(true).get(url("/doc.ttl"), Lang.TURTLE,
+                StreamRDFLib.graph(GraphFactory.createDefaultGraph())));
+        assertEquals(requests.get(), 0);
+        get(new ImportCache(dir), url("/doc.ttl"));
+        assertDoc(get(new ImportCache(dir).withTTL(0).withOffline(true), url("/doc.ttl")),
+                  url("/doc.ttl"));
+        assertEquals(requests.get(), 1);
+    }
+
+    @Test
+    public void testStaleCopyOnServerError() {
+        ImportCache cache = new ImportCache(dir).withTTL(0);
+        get(cache, url("/doc.ttl"));
+        server.removeContext("/doc.ttl");
+        server.createContext("/doc.ttl", ex -> {
+            ex.sendResponseHeaders(503, -1);
+            ex.close();
+        });
+        assertDoc(get(cache, url("/doc.ttl")), url("/doc.ttl"));
+    }
+
+    @Test
+    public void testNoStaleCopyAfterPartialDocument() {
+        ImportCache cache = new ImportCache(dir).withTTL(0);
+        get(cache, url("/doc.ttl"));
+        server.removeContext("/doc.ttl");
+        server.createContext("/doc.ttl", ex -> {
+            byte[] body = (TTL + "<http://example.org/B> a <Local> .\n<http://example.org/C>")
+                    .getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "text/turtle");
+            ex.sendResponseHeaders(200, body.length + 100);
+            OutputStream os = ex.getResponseBody();
+            os.write(body);
+            os.flush();
+            ex.getHttpContext().getServer().stop(0);
+        });
+        AtomicInteger triples = new AtomicInteger();
+        StreamRDF sink = new StreamRDFWrapper(StreamRDFLib.sinkNull()) {
+            @Override
+            public void triple(Triple triple) {
+                triples.incrementAndGet();
+            }
+        };
+        try {
+            cache.get(url("/doc.ttl"), Lang.TURTLE, sink);
+            fail("Expected truncated document to fail");
+        } catch (RuntimeException e) {
+            assertTrue(triples.get() <= 2, "stale copy was sent after the partial document");
+        }
+    }
+}
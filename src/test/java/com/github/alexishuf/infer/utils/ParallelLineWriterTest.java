@@ -0,0 +1,68 @@
+package com.github.alexishuf.infer.utils;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.core.Quad;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import static org.testng.Assert.assertEquals;
+
+public class ParallelLineWriterTest {
+    private static final int STATEMENTS = 40000;
+
+    @DataProvider
+    public static Object[][] formatData() {
+        return new Object[][] {
+                {RDFFormat.NTRIPLES, false},
+                {RDFFormat.NTRIPLES, true},
+                {RDFFormat.NQUADS, false},
+                {RDFFormat.NQUADS, true},
+        };
+    }
+
+    private static @Nonnull Node uri(@Nonnull String local, int i) {
+        return NodeFactory.createURI("http://example.org/" + local + i);
+    }
+
+    private static void send(@Nonnull StreamRDF out, boolean quads) {
+        out.start();
+        for (int i = 0; i < STATEMENTS; i++) {
+            Triple triple = Triple.create(uri("s", i), uri("p", i % 7),
+                                          NodeFactory.createLiteral("o" + i));
+            if (quads && i % 3 == 0) out.quad(Quad.create(uri("g", i % 5), triple));
+            else                     out.triple(triple);
+        }
+        out.finish();
+    }
+
+    @Test(dataProvider = "formatData")
+    public void testSameAsSequential(@Nonnull RDFFormat fmt, boolean gzip) throws IOException {
+        boolean quads = fmt.equals(RDFFormat.NQUADS);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        send(StreamRDFWriter.getWriterStream(expected, fmt), quads);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        send(new ParallelLineWriter(actual, fmt, 4, gzip), quads);
+        byte[] bytes = actual.toByteArray();
+        if (gzip) {
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                byte[] buffer = new byte[8192];
+                for (int n; (n = in.read(buffer)) >= 0; ) inflated.write(buffer, 0, n);
+            }
+            bytes = inflated.toByteArray();
+        }
+        assertEquals(new String(bytes, "UTF-8"), new String(expected.toByteArray(), "UTF-8"));
+    }
+}